@@ -34,6 +34,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -42,6 +43,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -470,6 +472,291 @@ public class ClientTest {
     });
   }
 
+  @Test
+  public void testReadMany() throws Exception {
+    final Client client = getClient().client;
+    final String recordType = UUID.randomUUID().toString();
+    final List<UUID> recordIds = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      withTimeout(new AsyncAction() {
+        @Override
+        public void act(CountDownLatch wait) throws Exception {
+          writeRecord(client, recordType, new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+            @Override
+            public void handle(Result<Record> r) {
+              if (r.isError())
+                throw new Error(r.asError().other());
+
+              recordIds.add(r.asValue().meta().recordId());
+            }
+          }));
+        }
+      });
+    }
+
+    // Ask for records in reverse order, with a duplicate, to check ordering and de-duplication,
+    // and an ID with no record, which should be left out.
+    final List<UUID> requested = new ArrayList<>(recordIds);
+    Collections.reverse(requested);
+    requested.add(recordIds.get(0));
+    requested.add(UUID.randomUUID());
+
+    final AtomicReference<List<Record>> records = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        client.readMany(requested, new TestUtilities.ResultWithWaiting<List<Record>>(wait, new ResultHandler<List<Record>>() {
+          @Override
+          public void handle(Result<List<Record>> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            records.set(r.asValue());
+          }
+        }));
+      }
+    });
+
+    assertEquals("Expected one record per unique ID", recordIds.size(), records.get().size());
+    for (int i = 0; i < recordIds.size(); i++) {
+      Record record = records.get().get(i);
+      assertEquals("Records not returned in requested order", requested.get(i), record.meta().recordId());
+      assertEquals("line field did not match", MESSAGE, record.data().get(FIELD));
+    }
+  }
+
+  @Test
+  public void testReadLazily() throws Exception {
+    final Client client = new ClientBuilder()
+            .fromConfig(getClient().clientConfig)
+            .setDecryptLazily(true)
+            .build();
+    final AtomicReference<UUID> recordId = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        writeRecord(client, new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            recordId.set(r.asValue().meta().recordId());
+          }
+        }));
+      }
+    });
+
+    final AtomicReference<Record> record = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        client.read(recordId.get(), new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            record.set(r.asValue());
+          }
+        }));
+      }
+    });
+
+    Map<String, String> data = record.get().data();
+    assertEquals(Collections.singleton(FIELD), data.keySet());
+    assertEquals("line field did not match", MESSAGE, data.get(FIELD));
+    assertEquals(Collections.singletonMap(FIELD, MESSAGE), data);
+  }
+
+  @Test
+  public void testSingleDataKeyPerRecord() throws Exception {
+    final Client client = new ClientBuilder()
+            .fromConfig(getClient().clientConfig)
+            .setSingleDataKeyPerRecord(true)
+            .build();
+    final AtomicReference<UUID> recordId = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        writeRecord(client, new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            recordId.set(r.asValue().meta().recordId());
+          }
+        }));
+      }
+    });
+
+    // Read back with a client that writes the default format; both formats are always readable.
+    final AtomicReference<Record> record = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        getClient().client.read(recordId.get(), new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            record.set(r.asValue());
+          }
+        }));
+      }
+    });
+
+    assertEquals(Collections.singletonMap(FIELD, MESSAGE), record.get().data());
+  }
+
+  @Test
+  public void testFieldCompression() throws Exception {
+    final Client client = new ClientBuilder()
+            .fromConfig(getClient().clientConfig)
+            .setFieldCompressionThreshold(1024)
+            .build();
+    StringBuilder large = new StringBuilder();
+    while (large.length() < 100_000)
+      large.append(MESSAGE).append('\n');
+    final Map<String, String> fields = new HashMap<>();
+    fields.put(FIELD, MESSAGE);
+    fields.put("large", large.toString());
+
+    final AtomicReference<UUID> recordId = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        client.write(TYPE, new RecordData(fields), null, new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            recordId.set(r.asValue().meta().recordId());
+          }
+        }));
+      }
+    });
+
+    // Compressed fields are always readable, whatever the reader's own setting.
+    final AtomicReference<Record> record = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        getClient().client.read(recordId.get(), new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            record.set(r.asValue());
+          }
+        }));
+      }
+    });
+
+    assertEquals(fields, record.get().data());
+  }
+
+  @Test
+  public void testReadProjection() throws Exception {
+    final Client client = getClient().client;
+    final AtomicReference<UUID> recordId = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        writeRecord(client, new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            recordId.set(r.asValue().meta().recordId());
+          }
+        }));
+      }
+    });
+
+    final AtomicReference<Record> included = new AtomicReference<>();
+    final AtomicReference<Record> excluded = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        client.read(recordId.get(), Arrays.asList(FIELD, "missing"), new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            included.set(r.asValue());
+          }
+        }));
+      }
+    });
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        client.read(recordId.get(), Collections.singleton("missing"), new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            excluded.set(r.asValue());
+          }
+        }));
+      }
+    });
+
+    assertEquals(Collections.singletonMap(FIELD, MESSAGE), included.get().data());
+    assertTrue("Unrequested field was returned", excluded.get().data().isEmpty());
+    assertEquals(recordId.get(), excluded.get().meta().recordId());
+  }
+
+  @Test
+  public void testWriteAll() throws Exception {
+    final Client client = getClient().client;
+    final String recordType = UUID.randomUUID().toString();
+    final List<RecordData> records = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Map<String, String> fields = new HashMap<>();
+      fields.put(FIELD, MESSAGE + i);
+      records.add(new RecordData(fields));
+    }
+
+    final Map<Integer, Record> written = new ConcurrentHashMap<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(final CountDownLatch wait) throws Exception {
+        client.writeAll(recordType, records, null, 3, new BulkResultHandler<Integer, Record>() {
+          @Override
+          public void handleItem(Integer item, Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            written.put(item, r.asValue());
+          }
+
+          @Override
+          public void handleComplete(Result<Void> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            wait.countDown();
+          }
+        });
+      }
+    });
+
+    assertEquals("Expected every record to be written", records.size(), written.size());
+    for (int i = 0; i < records.size(); i++) {
+      assertEquals("line field did not match", MESSAGE + i, written.get(i).data().get(FIELD));
+      assertEquals("Record type did not match", recordType, written.get(i).meta().type());
+    }
+  }
+
   @Test
   public void testPaging() throws Exception {
     final Client client = getClient().client;
@@ -908,6 +1195,111 @@ public class ClientTest {
     });
   }
 
+  @Test
+  public void testShareAll() throws Exception {
+    final String recordType = UUID.randomUUID().toString();
+    final String fromProfile = UUID.randomUUID().toString();
+    registerProfile(fromProfile, null);
+    final CI from = getClient(fromProfile);
+
+    final List<CI> readers = new ArrayList<>();
+    final List<UUID> readerIds = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      String readerProfile = UUID.randomUUID().toString();
+      registerProfile(readerProfile, null);
+      CI reader = getClient(readerProfile);
+      readers.add(reader);
+      readerIds.add(reader.client.clientId());
+    }
+
+    final AtomicReference<UUID> recordIdRef = new AtomicReference<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(CountDownLatch wait) throws Exception {
+        writeRecord(from.client, recordType, new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+          @Override
+          public void handle(Result<Record> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+            recordIdRef.set(r.asValue().meta().recordId());
+          }
+        }));
+      }
+    });
+
+    final Map<SharePair, Result<Void>> shared = new ConcurrentHashMap<>();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(final CountDownLatch wait) throws Exception {
+        from.client.shareAll(Arrays.asList(recordType, recordType), readerIds, new BulkResultHandler<SharePair, Void>() {
+          @Override
+          public void handleItem(SharePair item, Result<Void> r) {
+            shared.put(item, r);
+          }
+
+          @Override
+          public void handleComplete(Result<Void> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            wait.countDown();
+          }
+        });
+      }
+    });
+
+    assertEquals("Expected one result per reader (duplicate types are ignored)", readerIds.size(), shared.size());
+    for (UUID readerId : readerIds) {
+      Result<Void> result = shared.get(new SharePair(recordType, readerId));
+      assertNotNull("Missing result for reader " + readerId, result);
+      if (result.isError())
+        throw new Error(result.asError().other());
+    }
+
+    for (final CI reader : readers) {
+      withTimeout(new AsyncAction() {
+        @Override
+        public void act(CountDownLatch wait) throws Exception {
+          reader.client.read(recordIdRef.get(), new TestUtilities.ResultWithWaiting<Record>(wait, new ResultHandler<Record>() {
+            @Override
+            public void handle(Result<Record> r) {
+              if (r.isError())
+                throw new Error(r.asError().other());
+
+              assertEquals("line field did not match", MESSAGE, r.asValue().data().get(FIELD));
+            }
+          }));
+        }
+      });
+    }
+
+    final AtomicInteger revoked = new AtomicInteger();
+    withTimeout(new AsyncAction() {
+      @Override
+      public void act(final CountDownLatch wait) throws Exception {
+        from.client.revokeAll(Collections.singletonList(recordType), readerIds, 1, new BulkResultHandler<SharePair, Void>() {
+          @Override
+          public void handleItem(SharePair item, Result<Void> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            revoked.incrementAndGet();
+          }
+
+          @Override
+          public void handleComplete(Result<Void> r) {
+            if (r.isError())
+              throw new Error(r.asError().other());
+
+            wait.countDown();
+          }
+        });
+      }
+    });
+
+    assertEquals("Expected every reader to be revoked", readerIds.size(), revoked.get());
+  }
+
   @Test
   public void testWritePlain() throws InterruptedException, IOException {
     final AtomicReference<Client> clientRef = new AtomicReference<>();
@@ -0,0 +1,225 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits JDK Flight Recorder events for cryptographic operations (from {@link PlainCrypto}), and,
+ * on behalf of the {@code Client}, for storage calls and cache accesses.
+ *
+ * <p>Events are only created while a recording has them enabled; otherwise each method costs a
+ * flag check. On JVMs without Flight Recorder (such as Java 8 before 8u262), {@link #available()} is
+ * false and nothing else here touches {@code jdk.jfr}: the event classes are only used from {@link Recorder}.
+ *
+ * <p>{@code e3db.jfc}, next to this class, enables all of the events.
+ */
+final class FlightRecorderEvents {
+  private static final boolean AVAILABLE = isAvailable();
+
+  private FlightRecorderEvents() {
+  }
+
+  private static boolean isAvailable() {
+    try {
+      return FlightRecorder.isAvailable();
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return {@code true} if this JVM supports Flight Recorder.
+   */
+  static boolean available() {
+    return AVAILABLE;
+  }
+
+  /**
+   * Starts timing a cryptographic operation.
+   *
+   * @return The event to pass to {@link #endCrypto(Object, String, long)}, or {@code null} if the event is not being recorded.
+   */
+  static Object beginCrypto() {
+    return AVAILABLE ? Recorder.beginCrypto() : null;
+  }
+
+  /**
+   * Records a cryptographic operation begun by {@link #beginCrypto()}.
+   *
+   * @param event As returned by {@link #beginCrypto()}; may be {@code null}.
+   * @param operation Name of the {@code Crypto} method.
+   * @param bytes Size of the input processed.
+   */
+  static void endCrypto(Object event, String operation, long bytes) {
+    if (event != null)
+      Recorder.endCrypto(event, operation, bytes);
+  }
+
+  /**
+   * Starts timing a call to E3DB.
+   *
+   * @return The event to pass to {@link #endStorageCall(Object, String, int, long, long)}, or {@code null}
+   * if the event is not being recorded.
+   */
+  static Object beginStorageCall() {
+    return AVAILABLE ? Recorder.beginStorageCall() : null;
+  }
+
+  /**
+   * Records a call to E3DB begun by {@link #beginStorageCall()}.
+   *
+   * @param event As returned by {@link #beginStorageCall()}; may be {@code null}.
+   * @param endpoint Name of the endpoint called.
+   * @param status HTTP status code of the response, or -1 if there was none.
+   * @param bytesSent Size of the request body.
+   * @param bytesReceived Size of the response body.
+   */
+  static void endStorageCall(Object event, String endpoint, int status, long bytesSent, long bytesReceived) {
+    if (event != null)
+      Recorder.endStorageCall(event, endpoint, status, bytesSent, bytesReceived);
+  }
+
+  /**
+   * Records a lookup in one of the client's caches.
+   *
+   * @param cache Name of the cache ({@code eak} or {@code client_info}).
+   * @param hit {@code true} if the entry was found.
+   */
+  static void cacheAccess(String cache, boolean hit) {
+    if (AVAILABLE)
+      Recorder.cacheAccess(cache, hit);
+  }
+
+  @Name("com.tozny.e3db.Crypto")
+  @Label("E3DB Crypto Operation")
+  @Category({"E3DB", "Crypto"})
+  @StackTrace(false)
+  static final class CryptoEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Bytes")
+    @Description("Size of the input processed")
+    @DataAmount
+    long bytes;
+  }
+
+  @Name("com.tozny.e3db.StorageCall")
+  @Label("E3DB Storage Call")
+  @Category({"E3DB", "Storage"})
+  @StackTrace(false)
+  static final class StorageCallEvent extends Event {
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Status")
+    @Description("HTTP status code, or -1 if no response was received")
+    int status;
+
+    @Label("Bytes Sent")
+    @DataAmount
+    long bytesSent;
+
+    @Label("Bytes Received")
+    @DataAmount
+    long bytesReceived;
+  }
+
+  @Name("com.tozny.e3db.CacheAccess")
+  @Label("E3DB Cache Access")
+  @Category({"E3DB", "Cache"})
+  @StackTrace(false)
+  static final class CacheAccessEvent extends Event {
+    @Label("Cache")
+    String cache;
+
+    @Label("Hit")
+    boolean hit;
+  }
+
+  /**
+   * Holds everything that touches {@code jdk.jfr}, so it is only loaded if Flight Recorder is available.
+   */
+  private static final class Recorder {
+    private static final EventType crypto = EventType.getEventType(CryptoEvent.class);
+    private static final EventType storageCall = EventType.getEventType(StorageCallEvent.class);
+    private static final EventType cacheAccess = EventType.getEventType(CacheAccessEvent.class);
+
+    static Object beginCrypto() {
+      if (!crypto.isEnabled())
+        return null;
+
+      CryptoEvent event = new CryptoEvent();
+      event.begin();
+      return event;
+    }
+
+    static void endCrypto(Object e, String operation, long bytes) {
+      CryptoEvent event = (CryptoEvent) e;
+      event.end();
+      if (event.shouldCommit()) {
+        event.operation = operation;
+        event.bytes = bytes;
+        event.commit();
+      }
+    }
+
+    static Object beginStorageCall() {
+      if (!storageCall.isEnabled())
+        return null;
+
+      StorageCallEvent event = new StorageCallEvent();
+      event.begin();
+      return event;
+    }
+
+    static void endStorageCall(Object e, String endpoint, int status, long bytesSent, long bytesReceived) {
+      StorageCallEvent event = (StorageCallEvent) e;
+      event.end();
+      if (event.shouldCommit()) {
+        event.endpoint = endpoint;
+        event.status = status;
+        event.bytesSent = bytesSent;
+        event.bytesReceived = bytesReceived;
+        event.commit();
+      }
+    }
+
+    static void cacheAccess(String cache, boolean hit) {
+      if (!cacheAccess.isEnabled())
+        return;
+
+      CacheAccessEvent event = new CacheAccessEvent();
+      event.cache = cache;
+      event.hit = hit;
+      event.commit();
+    }
+  }
+}
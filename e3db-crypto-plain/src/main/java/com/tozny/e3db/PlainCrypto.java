@@ -83,11 +83,13 @@ class PlainCrypto implements Crypto {
   public CipherWithNonce encryptSecretBox(byte[] message, byte[] key) throws E3DBEncryptionException {
     checkNotNull(message, "message");
     checkNotEmpty(key, "key");
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] nonce = lazySodium.randomBytesBuf(SecretBox.NONCEBYTES);
     byte[] cipher = new byte[SecretBox.MACBYTES + message.length];
     if (!lazySodium.cryptoSecretBoxEasy(cipher, message, message.length, nonce, key))
       throw new E3DBEncryptionException("Could not encrypt message.");
 
+    FlightRecorderEvents.endCrypto(event, "encryptSecretBox", message.length);
     return new CipherWithNonce(cipher, nonce);
   }
 
@@ -95,9 +97,11 @@ class PlainCrypto implements Crypto {
   public byte[] decryptSecretBox(CipherWithNonce message, byte[] key) throws E3DBDecryptionException {
     checkNotNull(message, "message");
     checkNotEmpty(key, "key");
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] messageBytes = new byte[message.getCipher().length - SecretBox.MACBYTES];
     if (!lazySodium.cryptoSecretBoxOpenEasy(messageBytes, message.getCipher(), message.getCipher().length, message.getNonce(), key))
       throw new E3DBDecryptionException("Could not decrypt message.");
+    FlightRecorderEvents.endCrypto(event, "decryptSecretBox", message.getCipher().length);
     return messageBytes;
   }
 
@@ -107,11 +111,13 @@ class PlainCrypto implements Crypto {
     checkNotEmpty(publicKey, "publicKey");
     checkNotEmpty(privateKey, "privateKey");
 
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] nonce = lazySodium.randomBytesBuf(Box.NONCEBYTES);
     byte[] cipher = new byte[Box.MACBYTES + message.length];
     if (!lazySodium.cryptoBoxEasy(cipher, message, message.length, nonce, publicKey, privateKey))
       throw new E3DBEncryptionException("Unable to encrypt message.");
 
+    FlightRecorderEvents.endCrypto(event, "encryptBox", message.length);
     return new CipherWithNonce(cipher, nonce);
   }
 
@@ -120,10 +126,12 @@ class PlainCrypto implements Crypto {
     checkNotNull(message, "message");
     checkNotNull(publicKey, "publicKey");
     checkNotNull(privateKey, "privateKey");
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] messageBytes = new byte[message.getCipher().length - Box.MACBYTES];
     if (!lazySodium.cryptoBoxOpenEasy(messageBytes, message.getCipher(), message.getCipher().length, message.getNonce(), publicKey, privateKey))
       throw new E3DBDecryptionException("Could not decrypt message.");
 
+    FlightRecorderEvents.endCrypto(event, "decryptBox", message.getCipher().length);
     return messageBytes;
   }
 
@@ -151,11 +159,13 @@ class PlainCrypto implements Crypto {
 
   @Override
   public byte[] signature(byte[] message, byte[] signingKey) throws E3DBCryptoException {
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] signatureBytes = new byte[Sign.BYTES];
 
     if (!lazySodium.cryptoSignDetached(signatureBytes, message, message.length, signingKey))
       throw new E3DBCryptoException("Unable to sign document.");
 
+    FlightRecorderEvents.endCrypto(event, "signature", message.length);
     return signatureBytes;
   }
 
@@ -165,7 +175,10 @@ class PlainCrypto implements Crypto {
     checkNotNull(message, "message");
     checkNotNull(publicSigningKey, "publicSigningKey");
 
-    return lazySodium.cryptoSignVerifyDetached(signature.bytes, message, message.length, publicSigningKey);
+    Object event = FlightRecorderEvents.beginCrypto();
+    boolean verified = lazySodium.cryptoSignVerifyDetached(signature.bytes, message, message.length, publicSigningKey);
+    FlightRecorderEvents.endCrypto(event, "verify", message.length);
+    return verified;
   }
 
   @Override
@@ -188,6 +201,7 @@ class PlainCrypto implements Crypto {
 
   @Override
   public File encryptFile(File file, byte[] secretKey) throws IOException, E3DBCryptoException {
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] dataKey = new byte[SecretStream.KEYBYTES];
     lazySodium.cryptoSecretStreamKeygen(dataKey);
     byte[] header = new byte[SecretStream.HEADERBYTES];
@@ -228,11 +242,13 @@ class PlainCrypto implements Crypto {
       }
     }
 
+    FlightRecorderEvents.endCrypto(event, "encryptFile", file.length());
     return encryptedFile;
   }
 
   @Override
   public void decryptFile(File encrypted, byte[] secretKey, File dest) throws IOException, E3DBCryptoException {
+    Object event = FlightRecorderEvents.beginCrypto();
     try (FileOutputStream out = new FileOutputStream(dest, false); FileInputStream in = new FileInputStream(encrypted)) {
       // Read version
       FileVersion v = FileVersion.fromValue(new String(new byte[]{(byte) in.read()}, UTF8));
@@ -301,16 +317,20 @@ class PlainCrypto implements Crypto {
           throw new E3DBDecryptionException("Invalid file.");
       }
     }
+    FlightRecorderEvents.endCrypto(event, "decryptFile", encrypted.length());
   }
 
   @Override
   public byte[] hashString(String message) throws E3DBCryptoException {
     byte[] out = new byte[GenericHash.BLAKE2B_BYTES];
     byte[] messageBytes = message.getBytes();
+    Object event = FlightRecorderEvents.beginCrypto();
+
     boolean success = lazySodium.cryptoGenericHash(out, out.length, messageBytes, messageBytes.length);
     if (!success) {
       throw new E3DBCryptoException("Failure to hash message");
     }
+    FlightRecorderEvents.endCrypto(event, "hashString", messageBytes.length);
     return out;
   }
 
@@ -321,9 +341,11 @@ class PlainCrypto implements Crypto {
 
   @Override
   public E3DBKeyPair deriveEncryptionKeypair(char[] password, byte[] salt) throws E3DBCryptoException {
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] bytes = derivePBKDF2WithHMACSHA512(password, salt);
     try {
       KeyPair keyPair = lazySodium.cryptoBoxSeedKeypair(bytes);
+      FlightRecorderEvents.endCrypto(event, "deriveEncryptionKeypair", 0);
       return new E3DBKeyPair(keyPair.getPublicKey().getAsBytes(), keyPair.getSecretKey().getAsBytes());
     } catch (SodiumException e) {
       throw new E3DBCryptoException(e);
@@ -341,9 +363,11 @@ class PlainCrypto implements Crypto {
 
   @Override
   public E3DBKeyPair deriveSigningKeyPair(char[] password, byte[] salt) throws E3DBCryptoException {
+    Object event = FlightRecorderEvents.beginCrypto();
     byte[] bytes = derivePBKDF2WithHMACSHA512(password, salt);
     try {
       KeyPair keyPair = lazySodium.cryptoSignSeedKeypair(bytes);
+      FlightRecorderEvents.endCrypto(event, "deriveSigningKeyPair", 0);
       return new E3DBKeyPair(keyPair.getPublicKey().getAsBytes(), keyPair.getSecretKey().getAsBytes());
     } catch (SodiumException e) {
       throw new E3DBCryptoException(e);
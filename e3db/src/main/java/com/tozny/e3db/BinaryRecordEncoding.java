@@ -0,0 +1,303 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The binary form of a {@link LocalEncryptedRecord}, read and written directly (no
+ * intermediate maps or JSON trees).
+ *
+ * <p>Layout, after a version byte: writer ID and user ID (16 bytes each), type, plaintext
+ * metadata, encrypted data, then the signature. Strings are UTF-8, prefixed by their length;
+ * maps are prefixed by their size (plus one for metadata, where zero means {@code null}); all
+ * lengths and sizes are unsigned LEB128 varints.
+ *
+ * <p>Encrypted values and the signature are dot-separated Base64URL parts. Each part that is
+ * canonical Base64URL is stored as the raw bytes it encodes; any other (ASCII) part is stored
+ * as is. Values that are not ASCII are stored as plain strings. Decoding therefore recreates
+ * every value exactly, and a record converts to and from its JSON form without loss.
+ */
+final class BinaryRecordEncoding {
+  static final byte VERSION = 1;
+
+  private static final Charset UTF8 = StandardCharsets.UTF_8;
+  private static final byte NULL_VALUE = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte DOTTED_VALUE = 2;
+
+  private byte[] buffer;
+  private int pos = 0;
+
+  private BinaryRecordEncoding(byte[] buffer) {
+    this.buffer = buffer;
+  }
+
+  static byte[] encode(LocalEncryptedRecord record) {
+    ClientMeta meta = record.meta();
+    Map<String, String> data = record.data();
+    BinaryRecordEncoding out = new BinaryRecordEncoding(new byte[256]);
+    out.writeByte(VERSION);
+    out.writeUUID(meta.writerId());
+    out.writeUUID(meta.userId());
+    out.writeString(meta.type());
+
+    Map<String, String> plain = meta.plain();
+    if (plain == null) {
+      out.writeVarint(0);
+    } else {
+      out.writeVarint(plain.size() + 1);
+      for (Map.Entry<String, String> entry : plain.entrySet()) {
+        out.writeString(entry.getKey());
+        out.writeString(entry.getValue());
+      }
+    }
+
+    out.writeVarint(data.size());
+    for (Map.Entry<String, String> entry : data.entrySet()) {
+      out.writeString(entry.getKey());
+      out.writeValue(entry.getValue());
+    }
+    out.writeValue(record.signature());
+
+    byte[] encoded = new byte[out.pos];
+    System.arraycopy(out.buffer, 0, encoded, 0, out.pos);
+    return encoded;
+  }
+
+  static LocalEncryptedRecord decode(byte[] encoded, int offset, int length) throws IOException {
+    BinaryRecordEncoding in = new BinaryRecordEncoding(encoded);
+    in.pos = offset;
+    int end = offset + length;
+    try {
+      if (in.readByte(end) != VERSION)
+        throw new IOException("Unsupported record encoding.");
+
+      UUID writerId = in.readUUID(end);
+      UUID userId = in.readUUID(end);
+      String type = in.readString(end);
+
+      Map<String, String> plain = null;
+      int plainSize = in.readSize(end);
+      if (plainSize > 0) {
+        plain = new HashMap<>(plainSize * 2);
+        for (int i = 1; i < plainSize; i++)
+          plain.put(in.readString(end), in.readString(end));
+      }
+
+      int dataSize = in.readSize(end);
+      Map<String, String> data = new HashMap<>(dataSize * 2);
+      for (int i = 0; i < dataSize; i++)
+        data.put(in.readString(end), in.readValue(end));
+      String signature = in.readValue(end);
+
+      if (in.pos != end)
+        throw new IOException("Unexpected data after record.");
+      return new LocalEncryptedRecord(data, new LocalMeta(writerId, userId, type, plain), signature);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("A field could not be decoded.", e);
+    }
+  }
+
+  private void ensure(int length) {
+    if (buffer.length - pos < length) {
+      byte[] larger = new byte[Math.max(buffer.length * 2, pos + length)];
+      System.arraycopy(buffer, 0, larger, 0, pos);
+      buffer = larger;
+    }
+  }
+
+  private void writeByte(int value) {
+    ensure(1);
+    buffer[pos++] = (byte) value;
+  }
+
+  private void writeVarint(int value) {
+    ensure(5);
+    while ((value & ~0x7f) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+  }
+
+  private void writeUUID(UUID id) {
+    ensure(16);
+    writeLong(id.getMostSignificantBits());
+    writeLong(id.getLeastSignificantBits());
+  }
+
+  private void writeLong(long value) {
+    for (int shift = 56; shift >= 0; shift -= 8)
+      buffer[pos++] = (byte) (value >>> shift);
+  }
+
+  private void writeString(String value) {
+    byte[] bytes = value.getBytes(UTF8);
+    writeVarint(bytes.length);
+    ensure(bytes.length);
+    System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+    pos += bytes.length;
+  }
+
+  private void writeValue(String value) {
+    if (value == null) {
+      writeByte(NULL_VALUE);
+      return;
+    }
+
+    int length = value.length();
+    int parts = 1;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        writeByte(STRING_VALUE);
+        writeString(value);
+        return;
+      }
+      if (c == '.')
+        parts++;
+    }
+
+    writeByte(DOTTED_VALUE);
+    writeVarint(parts);
+    for (int start = 0; start <= length; ) {
+      int end = value.indexOf('.', start);
+      if (end < 0)
+        end = length;
+
+      // The low bit of each part's header tells raw bytes (1) from ASCII text (0).
+      if (FieldEnvelope.isCanonicalURL(value, start, end)) {
+        int size = (end - start) * 3 / 4;
+        writeVarint(size << 1 | 1);
+        ensure(size);
+        pos = FieldEnvelope.decodeURL(value, start, end, buffer, pos);
+      } else {
+        writeVarint((end - start) << 1);
+        ensure(end - start);
+        for (int i = start; i < end; i++)
+          buffer[pos++] = (byte) value.charAt(i);
+      }
+      start = end + 1;
+    }
+  }
+
+  private void require(int length, int end) throws IOException {
+    if (length < 0 || end - pos < length)
+      throw new IOException("Record is truncated.");
+  }
+
+  private byte readByte(int end) throws IOException {
+    require(1, end);
+    return buffer[pos++];
+  }
+
+  private int readVarint(int end) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = readByte(end);
+      value |= (b & 0x7f) << shift;
+      if (b >= 0)
+        return value;
+    }
+    throw new IOException("Malformed length.");
+  }
+
+  /**
+   * Reads a count of items, each taking at least one byte.
+   */
+  private int readSize(int end) throws IOException {
+    int size = readVarint(end);
+    if (size < 0 || size - 1 > end - pos)
+      throw new IOException("Record is truncated.");
+    return size;
+  }
+
+  private UUID readUUID(int end) throws IOException {
+    require(16, end);
+    return new UUID(readLong(), readLong());
+  }
+
+  private long readLong() {
+    long value = 0;
+    for (int i = 0; i < 8; i++)
+      value = value << 8 | (buffer[pos++] & 0xff);
+    return value;
+  }
+
+  private String readString(int end) throws IOException {
+    int length = readVarint(end);
+    require(length, end);
+    String value = new String(buffer, pos, length, UTF8);
+    pos += length;
+    return value;
+  }
+
+  private String readValue(int end) throws IOException {
+    byte kind = readByte(end);
+    switch (kind) {
+      case NULL_VALUE:
+        return null;
+      case STRING_VALUE:
+        return readString(end);
+      case DOTTED_VALUE:
+        break;
+      default:
+        throw new IOException("Unknown value kind: " + kind);
+    }
+
+    int parts = readSize(end);
+    // First pass: size the value.
+    int start = pos;
+    int chars = parts - 1;
+    for (int i = 0; i < parts; i++) {
+      int header = readVarint(end);
+      int length = header >>> 1;
+      require(length, end);
+      chars += (header & 1) == 1 ? FieldEnvelope.encodedLength(length) : length;
+      pos += length;
+    }
+
+    // Second pass: fill it in.
+    pos = start;
+    char[] value = new char[chars];
+    int at = 0;
+    for (int i = 0; i < parts; i++) {
+      if (i > 0)
+        value[at++] = '.';
+      int header = readVarint(end);
+      int length = header >>> 1;
+      if ((header & 1) == 1) {
+        at = FieldEnvelope.encodeURL(buffer, pos, length, value, at);
+      } else {
+        for (int j = 0; j < length; j++)
+          value[at++] = (char) (buffer[pos + j] & 0xff);
+      }
+      pos += length;
+    }
+    return new String(value);
+  }
+}
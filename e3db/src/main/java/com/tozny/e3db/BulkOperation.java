@@ -0,0 +1,137 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the items of a bulk operation that are in flight, and delivers
+ * their results to a {@link BulkResultHandler}.
+ *
+ * <p>A single coordinating thread calls {@link #begin()} before starting
+ * each item, which blocks while {@code maxInFlight} items are outstanding. Each
+ * item is finished (from any thread) by calling {@link #succeeded(Object, Object)}
+ * or {@link #failed(Object, Throwable)}. Once the coordinator has started
+ * every item, it calls {@link #done()} (or {@link #abort(Throwable)}); the completion
+ * result is delivered after the last item finishes.
+ *
+ * <p>Results are delivered under {@code callback} children of the operation's span, which is
+ * held until the completion result has been delivered, as items outlive the coordinating thread.
+ */
+class BulkOperation<K, R> {
+  private final Semaphore inFlight;
+  // Starts at one, which is held by the coordinating thread until it calls done or abort.
+  private final AtomicInteger pending = new AtomicInteger(1);
+  private final Executor resultExecutor;
+  private final BulkResultHandler<K, R> handler;
+  private final Tracing span;
+  private volatile Throwable failure = null;
+
+  BulkOperation(int maxInFlight, Executor resultExecutor, BulkResultHandler<K, R> handler) {
+    this(maxInFlight, resultExecutor, handler, Tracing.NONE);
+  }
+
+  /**
+   * @param span The operation's span, held until the completion result is delivered.
+   */
+  BulkOperation(int maxInFlight, Executor resultExecutor, BulkResultHandler<K, R> handler, Tracing span) {
+    if (maxInFlight < 1)
+      throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+    this.inFlight = new Semaphore(maxInFlight);
+    this.resultExecutor = resultExecutor;
+    this.handler = handler;
+    this.span = span.hold();
+  }
+
+  /**
+   * Waits until another item can be started.
+   */
+  void begin() throws InterruptedException {
+    inFlight.acquire();
+    pending.incrementAndGet();
+  }
+
+  void succeeded(K item, R value) {
+    finish(item, new ValueResult<R>(value));
+  }
+
+  void failed(K item, Throwable error) {
+    finish(item, new ErrorResult<R>(error));
+  }
+
+  /**
+   * Indicates all items have been started.
+   */
+  void done() {
+    complete();
+  }
+
+  /**
+   * Indicates no more items will be started, due to the given error.
+   */
+  void abort(Throwable error) {
+    failure = error;
+    complete();
+  }
+
+  private void finish(final K item, final Result<R> result) {
+    inFlight.release();
+    final Tracing callback = span.child("callback");
+    resultExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        Tracing previous = callback.activate();
+        try {
+          handler.handleItem(item, result);
+        } finally {
+          Tracing.restore(previous);
+          callback.end();
+        }
+      }
+    });
+    complete();
+  }
+
+  private void complete() {
+    if (pending.decrementAndGet() == 0) {
+      final Throwable error = failure;
+      if (error != null)
+        span.setError(error);
+      final Tracing callback = span.child("callback");
+      // Item results were queued before this one, so once it has been delivered, so have they.
+      resultExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          Tracing previous = callback.activate();
+          try {
+            handler.handleComplete(error == null ? new ValueResult<Void>(null) : new ErrorResult<Void>(error));
+          } finally {
+            Tracing.restore(previous);
+            callback.end();
+            span.end();
+          }
+        }
+      });
+    }
+  }
+}
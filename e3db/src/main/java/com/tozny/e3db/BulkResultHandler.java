@@ -0,0 +1,56 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+/**
+ * A callback for receiving the results of an asynchronous operation over many items.
+ *
+ * <p>Bulk operations (such as {@link Client#writeAll(String, Iterable, java.util.Map, int, BulkResultHandler)})
+ * report the result for each item as soon as it is available, rather than waiting for every item
+ * to finish. Items may complete in any order, and (outside of Android) results for different items
+ * may be delivered on different threads at the same time, so implementations must be thread-safe.
+ *
+ * <p>Once the result for every item attempted has been delivered, {@link #handleComplete(Result)} is called
+ * exactly once.
+ *
+ * @param <K> The type used to identify each item.
+ * @param <R> The type of value returned when an item completes successfully.
+ */
+public interface BulkResultHandler<K, R> {
+  /**
+   * Receives the result for a single item.
+   *
+   * @param item Identifies the item the result belongs to.
+   * @param r    result.
+   */
+  void handleItem(K item, Result<R> r);
+
+  /**
+   * Called after the results for all items have been delivered.
+   *
+   * <p>The result will be an error if the operation as a whole could not complete; for example,
+   * if it was not possible to retrieve the access key needed by every item. In that case some items
+   * may never be attempted, and will not be passed to {@link #handleItem(Object, Result)}.
+   *
+   * @param r result.
+   */
+  void handleComplete(Result<Void> r);
+}
@@ -24,13 +24,18 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.TokenFilter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.module.kotlin.KotlinModule;
+import com.tozny.e3db.crypto.Crypto;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -50,21 +55,34 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -80,6 +98,7 @@ import javax.net.ssl.X509TrustManager;
 import okhttp3.CertificatePinner;
 import okhttp3.ConnectionSpec;
 import okhttp3.HttpUrl;
+import okhttp3.EventListener;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -89,6 +108,7 @@ import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okhttp3.TlsVersion;
 import okio.ByteString;
+import retrofit2.Call;
 import retrofit2.Retrofit;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
@@ -144,10 +164,12 @@ import static com.tozny.e3db.Checks.checkNotNull;
  * <p>
  * Records can be written with the {@link #write(String, RecordData, Map, ResultHandler)} method,
  * updated with {@link #update(UpdateMeta, RecordData, Map, ResultHandler)}, and deleted with {@link #delete(UUID, String, ResultHandler)}.
+ * Many records of the same type can be written concurrently with {@link #writeAll(String, Iterable, Map, int, BulkResultHandler)}.
  *
  * <h1>Reading &amp; Querying Records</h1>
  * <p>
- * You can read a single record with the {@link #read(UUID, ResultHandler)} method.
+ * You can read a single record with the {@link #read(UUID, ResultHandler)} method. Many records can be read at once, by ID,
+ * with the {@link #readMany(Collection, ResultHandler)} method.
  *
  * <p>Multiple records (matching some criteria) can be read using the {@link #query(QueryParams, ResultHandler)} method. You must pass a {@link QueryParams} instance
  * to specify the selection critera for records; use the {@link QueryParamsBuilder} object to build the query.
@@ -163,6 +185,8 @@ import static com.tozny.e3db.Checks.checkNotNull;
  * implement such support out of band.
  *
  * <p>To share records, use the {@link #share(String, UUID, ResultHandler)} method. To remove sharing access, use the {@link #revoke(String, UUID, ResultHandler)}} method.
+ * Many record types can be shared with (or revoked from) many clients at once using
+ * {@link #shareAll(Collection, Collection, int, BulkResultHandler)} and {@link #revokeAll(Collection, Collection, int, BulkResultHandler)}.
  *
  * <h1>Authorizers</h1>
  * This client can allow another client to share records on its behalf. That is, a client that writes records (the "writer") can allow
@@ -262,15 +286,52 @@ public class Client {
   private static final MediaType APPLICATION_OCTET = MediaType.parse("application/octet-stream");
   // UUIDv5 TFSP1;ED25519;BLAKE2B
   private static final String SIGNATURE_VERSION = "e7737e7c-1637-511e-8bab-93c4f3e26fd9";
+  /**
+   * The format of timestamps sent by E3DB, in UTC.
+   *
+   * @deprecated No longer used by {@code Client}. {@code SimpleDateFormat} is not thread-safe,
+   * so subclasses sharing this instance must synchronize on it.
+   */
+  @Deprecated
   protected static final SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'");
   private static final MediaType PLAIN_TEXT = MediaType.parse("text/plain");
   protected static final Executor backgroundExecutor;
+  protected static final ExecutorService cryptoExecutor;
+  protected static final ExecutorService bulkExecutor;
   protected static final Executor uiExecutor;
+  // Number of record IDs sent in each multi-record read request.
+  private static final int READ_MANY_BATCH_SIZE = 50;
+  // Number of records written concurrently by writeAll, unless otherwise specified.
+  private static final int DEFAULT_WRITES_IN_FLIGHT = 8;
+  // Number of reader/type pairs shared or revoked concurrently, unless otherwise specified.
+  private static final int DEFAULT_SHARES_IN_FLIGHT = 8;
+  // Number of other clients whose public keys are cached, unless configured otherwise.
+  static final int DEFAULT_CLIENT_INFO_CACHE_SIZE = 256;
+  // Data field holding the data key shared by all fields of a record, for records written
+  // with one data key per record. Other fields then hold just "EF.EFN". Records written in the
+  // default format can have a field of this name too (see hasRecordKey).
+  static final String RECORD_KEY_FIELD = "_e3db_record_key";
+  // Format version that prefixes the value of RECORD_KEY_FIELD.
+  private static final String RECORD_KEY_VERSION = "2.";
   private static final String allowRead = "{\"allow\" : [ { \"read\": {} } ] }";
   private static final String denyRead = "{\"deny\" : [ { \"read\": {} } ] }";
   private static final String denyAuthorizer = "{\"deny\" : [ { \"authorizer\": {} } ] }";
   private static final String allowAuthorizer = "{\"allow\" : [ { \"authorizer\": {} } ] }";
+  private static final AnonymousNoteClients anonymousNoteClients = new AnonymousNoteClients();
   private final ConcurrentMap<EAKCacheKey, EAKEntry> eakCache = new ConcurrentHashMap<>();
+  private final ClientInfoCache clientInfoCache;
+  private final boolean decryptLazily;
+  private final boolean singleDataKey;
+  // Fields at least this many bytes long are compressed before encryption; 0 disables compression.
+  private final int fieldCompressionThreshold;
+  // Where writeFile puts compressed copies of files; null for the file's own directory.
+  private final File fileTempDirectory;
+  // Null unless metrics were requested, so that nothing is measured by default.
+  private final ClientMetrics metrics;
+  // Likewise null unless tracing was requested.
+  private final Tracer tracer;
+  // Platform.crypto, wrapped to report to metrics if necessary.
+  private final Crypto crypto;
   private final String apiKey;
   private final String apiSecret;
   private final UUID clientId;
@@ -283,6 +344,8 @@ public class Client {
   private final SearchAPI searchClient;
   private final ShareAPI shareClient;
   private final StorageV2API notesClient;
+  // Serializes notes as notesClient does.
+  private final ObjectMapper notesMapper;
 
   private static final Charset UTF8 = Charset.forName("UTF-8");
 
@@ -318,6 +381,36 @@ public class Client {
               }
             });
 
+    // CPU-bound work (such as decrypting a batch of records) is spread over
+    // this pool, so it never competes with network calls for the bounded
+    // background queue.
+    cryptoExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            new ThreadFactory() {
+              private int threadCount = 1;
+
+              @Override
+              public Thread newThread(Runnable runnable) {
+                final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setDaemon(true);
+                thread.setName("E3DB crypto " + threadCount++);
+                return thread;
+              }
+            });
+
+    // Runs the blocking network calls made by bulk operations. Each operation bounds
+    // how many tasks it has outstanding, so the pool itself is unbounded.
+    bulkExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private int threadCount = 1;
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        thread.setName("E3DB bulk " + threadCount++);
+        return thread;
+      }
+    });
+
     if (Platform.isAndroid()) {
       // Post results to UI thread
       uiExecutor = new Executor() {
@@ -458,7 +551,19 @@ public class Client {
   }
 
   Client(String apiKey, String apiSecret, UUID clientId, URI host, byte[] privateKey, byte[] privateSigningKey, CertificatePinner certificatePinner) throws E3DBCryptoException {
+    this(apiKey, apiSecret, clientId, host, privateKey, privateSigningKey, certificatePinner, new ClientInfoCache(DEFAULT_CLIENT_INFO_CACHE_SIZE, 0), false, false, 0, null, null, null);
+  }
+
+  Client(String apiKey, String apiSecret, UUID clientId, URI host, byte[] privateKey, byte[] privateSigningKey, CertificatePinner certificatePinner, ClientInfoCache clientInfoCache, boolean decryptLazily, boolean singleDataKey, int fieldCompressionThreshold, File fileTempDirectory, ClientMetrics metrics, Tracer tracer) throws E3DBCryptoException {
     this.apiKey = apiKey;
+    this.clientInfoCache = clientInfoCache;
+    this.decryptLazily = decryptLazily;
+    this.singleDataKey = singleDataKey;
+    this.fieldCompressionThreshold = fieldCompressionThreshold;
+    this.fileTempDirectory = fileTempDirectory;
+    this.metrics = metrics;
+    this.tracer = tracer;
+    this.crypto = metrics == null ? Platform.crypto : new MeteredCrypto(Platform.crypto, metrics);
     this.apiSecret = apiSecret;
     this.clientId = clientId;
     this.privateEncryptionKey = privateKey;
@@ -470,9 +575,11 @@ public class Client {
     else
       publicSigningKey = null;
 
+    EventListener.Factory events = metrics != null || tracer != null || Platform.flightRecorder ? HttpEventListener.factory(metrics) : null;
+
     OkHttpClient.Builder clientBuilder = enableTLSv12(new OkHttpClient.Builder()
 //            .addInterceptor(loggingInterceptor)
-            .addInterceptor(new TokenInterceptor(apiKey, apiSecret, host, certificatePinner)));
+            .addInterceptor(new TokenInterceptor(apiKey, apiSecret, host, certificatePinner, events)));
 
     OkHttpClient.Builder tsv1ClientBuilder = enableTLSv12(new OkHttpClient.Builder()
             .addInterceptor(new TSV1Interceptor(privateSigningKey, publicSigningKey, clientId.toString())));
@@ -482,6 +589,14 @@ public class Client {
       tsv1ClientBuilder.certificatePinner(certificatePinner);
     }
 
+    if (events != null) {
+      clientBuilder.eventListenerFactory(events);
+      tsv1ClientBuilder.eventListenerFactory(events);
+    }
+
+    // Both Retrofit instances share one OkHttpClient (and so one connection pool).
+    OkHttpClient httpClient = clientBuilder.build();
+
     ObjectMapper mapper = new ObjectMapper()
             .registerModule(new Jdk8Module())
             .registerModule(new KotlinModule());
@@ -495,17 +610,18 @@ public class Client {
 
     Retrofit build = new Retrofit.Builder()
             .callbackExecutor(uiExecutor)
-            .client(clientBuilder.build())
+            .client(httpClient)
             .baseUrl(host.resolve("/").toString())
             .build();
 
     Retrofit converterBuild = new Retrofit.Builder()
             .callbackExecutor(uiExecutor)
-            .client(clientBuilder.build())
+            .client(httpClient)
             .addConverterFactory(JacksonConverterFactory.create(mapper))
             .baseUrl(host.resolve("/").toString())
             .build();
 
+    notesMapper = mapper;
     storageClient = build.create(StorageAPI.class);
     shareClient = build.create(ShareAPI.class);
     notesClient = tsv1Build.create(StorageV2API.class);
@@ -595,6 +711,12 @@ public class Client {
       return new EAKCacheKey(meta.writerId(), meta.userId(), meta.type());
     }
 
+    public static EAKCacheKey fromRawMeta(JsonNode rawMeta) {
+      return new EAKCacheKey(UUID.fromString(rawMeta.get("writer_id").asText()),
+              UUID.fromString(rawMeta.get("user_id").asText()),
+              rawMeta.get("type").asText());
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) return true;
@@ -637,18 +759,6 @@ public class Client {
     }
   }
 
-  private static class ER {
-    public final CipherWithNonce edk; // encrypted data key
-
-    public final CipherWithNonce ef; // encrypted field
-
-    public ER(String quad) {
-      int split = quad.indexOf(".", quad.indexOf(".") + 1);
-      edk = CipherWithNonce.decode(quad.substring(0, split));
-      ef = CipherWithNonce.decode(quad.substring(split + 1));
-    }
-  }
-
   private static class AP implements AuthorizerPolicy {
     private final UUID authorizerId;
     private final UUID writerId;
@@ -690,8 +800,33 @@ public class Client {
     }
   }
 
-  private void onBackground(Runnable runnable) {
-    backgroundExecutor.execute(runnable);
+  /**
+   * Runs an operation on the {@link #backgroundExecutor}, measuring how long it waits there
+   * and tracing it as a span named {@code operation}, if so configured.
+   */
+  private void onBackground(String operation, final Runnable runnable) {
+    if (metrics == null && tracer == null) {
+      backgroundExecutor.execute(runnable);
+      return;
+    }
+
+    final long queued = System.nanoTime();
+    final Tracing span = Tracing.start(tracer, operation);
+    backgroundExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (metrics != null)
+          metrics.recordQueueWait(System.nanoTime() - queued);
+        Tracing previous = span.activate();
+        try {
+          runnable.run();
+        } finally {
+          Tracing.restore(previous);
+          // Results delivered, and bulk operations, hold the span until they finish.
+          span.end();
+        }
+      }
+    });
   }
 
   private LocalEncryptedRecord makeEncryptedRecord(EAKInfo eakInfo, Map<String, String> data, ClientMeta clientMeta) throws E3DBCryptoException, JsonProcessingException {
@@ -699,27 +834,69 @@ public class Client {
       throw new IllegalStateException("Client must have a signing key to encrypt locally.");
 
     byte[] ak = decryptLocalEAKInfo(eakInfo);
-    return new LocalEncryptedRecord(encryptObject(ak, data), clientMeta, sign(new LocalRecord(data, clientMeta)).signature());
+    return new LocalEncryptedRecord(encryptObject(crypto, ak, data, singleDataKey, fieldCompressionThreshold), clientMeta, sign(new LocalRecord(data, clientMeta)).signature());
   }
 
   private static <R> void executeError(Executor executor, final ResultHandler<R> handler, final Throwable e) {
-    if (handler != null)
-      executor.execute(new Runnable() {
-        @Override
-        public void run() {
-          handler.handle(new ErrorResult<R>(e));
-        }
-      });
+    Tracing.current().setError(e);
+    deliver(executor, handler, new ErrorResult<R>(e));
   }
 
   private static <R> void executeValue(Executor executor, final ResultHandler<R> handler, final R value) {
-    if (handler != null)
+    deliver(executor, handler, new ValueResult<R>(value));
+  }
+
+  /**
+   * Passes a result to its handler on the given executor, traced as a {@code callback} span.
+   * The operation's span is held until the handler returns.
+   */
+  private static <R> void deliver(Executor executor, final ResultHandler<R> handler, final Result<R> result) {
+    if (handler != null) {
+      final Tracing operation = Tracing.current().hold();
+      final Tracing span = operation.child("callback");
       executor.execute(new Runnable() {
         @Override
         public void run() {
-          handler.handle(new ValueResult<R>(value));
+          Tracing previous = span.activate();
+          try {
+            handler.handle(result);
+          } finally {
+            Tracing.restore(previous);
+            span.end();
+            operation.end();
+          }
         }
       });
+    }
+  }
+
+  /**
+   * Runs the given tasks on the {@link #cryptoExecutor} and returns their results, in the
+   * same order as the tasks given. If any task fails, the first failure (in task order) is
+   * thrown.
+   *
+   * <p>Must not be called from a thread belonging to {@code cryptoExecutor}.
+   */
+  private static <T> List<T> inParallel(List<Callable<T>> tasks) throws Exception {
+    if (tasks.size() == 1)
+      return Collections.singletonList(tasks.get(0).call());
+
+    List<Callable<T>> traced = new ArrayList<>(tasks.size());
+    for (Callable<T> task : tasks)
+      traced.add(Tracing.propagate(task));
+
+    List<T> results = new ArrayList<>(tasks.size());
+    for (Future<T> future : cryptoExecutor.invokeAll(traced)) {
+      try {
+        results.add(future.get());
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception)
+          throw (Exception) e.getCause();
+        else
+          throw e;
+      }
+    }
+    return results;
   }
 
   /**
@@ -727,24 +904,12 @@ public class Client {
    */
 
   private static <R> void uiError(final ResultHandler<R> handleError, final Throwable e) {
-    if (handleError != null)
-      uiExecutor.execute(new Runnable() {
-        @Override
-        public void run() {
-          handleError.handle(new ErrorResult<R>(e));
-        }
-      });
+    executeError(uiExecutor, handleError, e);
   }
 
 
   private static <R> void uiValue(final ResultHandler<R> handleResult, final R r) {
-    if (handleResult != null)
-      uiExecutor.execute(new Runnable() {
-        @Override
-        public void run() {
-          handleResult.handle(new ValueResult<R>(r));
-        }
-      });
+    executeValue(uiExecutor, handleResult, r);
   }
 
 
@@ -761,9 +926,8 @@ public class Client {
       UUID recordId = UUID.fromString(rawMeta.get("record_id").asText());
       UUID writerId = UUID.fromString(rawMeta.get("writer_id").asText());
       UUID userId = UUID.fromString(rawMeta.get("user_id").asText());
-      iso8601.setTimeZone(TimeZone.getTimeZone("UTC"));
-      Date created = iso8601.parse(rawMeta.get("created").asText());
-      Date lastModified = iso8601.parse(rawMeta.get("last_modified").asText());
+      Date created = Timestamps.parse(rawMeta.get("created").asText());
+      Date lastModified = Timestamps.parse(rawMeta.get("last_modified").asText());
       String version = rawMeta.get("version").asText();
       String type = rawMeta.get("type").asText();
       JsonNode plain = rawMeta.has("plain") ? rawMeta.get("plain") : mapper.createObjectNode();
@@ -784,19 +948,28 @@ public class Client {
       return new R(new HashMap<String, String>(), getRecordMeta(rawMeta));
     }
 
-    private static Record makeLocal(byte[] accessKey, JsonNode rawMeta, JsonNode fields, byte[] signature, byte[] publicSigningKey) throws ParseException, E3DBVerificationException, E3DBDecryptionException, JsonProcessingException {
+    private static Record makeLocal(Crypto crypto, byte[] accessKey, JsonNode rawMeta, JsonNode fields, byte[] signature, byte[] publicSigningKey, boolean lazy) throws ParseException, E3DBVerificationException, E3DBDecryptionException, JsonProcessingException {
       RecordMeta meta = getRecordMeta(rawMeta);
       Map<String, String> encryptedFields = new HashMap<>();
-      Iterator<String> keys = fields.fieldNames();
+      // A projection can leave no fields at all.
+      Iterator<String> keys = fields != null ? fields.fieldNames() : Collections.<String>emptyIterator();
       while (keys.hasNext()) {
         String key = keys.next();
         encryptedFields.put(key, fields.get(key).asText());
       }
 
-      R record = new R(decryptObject(accessKey, encryptedFields), meta);
+      // Verifying a signature needs every field, so there is nothing to gain by deferring.
+      if (lazy && (signature == null || publicSigningKey == null)) {
+        byte[] recordKey = decryptRecordKey(crypto, accessKey, encryptedFields);
+        if (recordKey != null)
+          encryptedFields.remove(RECORD_KEY_FIELD);
+        return new R(new LazyData(crypto, accessKey, recordKey, encryptedFields), meta);
+      }
+
+      R record = new R(decryptObject(crypto, accessKey, encryptedFields), meta);
 
       if (signature != null && publicSigningKey != null) {
-        boolean verified = Platform.crypto.verify(new Signature(signature),
+        boolean verified = crypto.verify(new Signature(signature),
                 record.toSerialized().getBytes(UTF8),
                 publicSigningKey);
 
@@ -827,8 +1000,150 @@ public class Client {
     return R.makeLocal(rawMeta);
   }
 
-  private static Record makeR(byte[] accessKey, JsonNode rawMeta, JsonNode fields, byte[] signature, byte[] publicSigningKey) throws ParseException, E3DBVerificationException, E3DBDecryptionException, JsonProcessingException {
-    return R.makeLocal(accessKey, rawMeta, fields, signature, publicSigningKey);
+  private Record makeR(byte[] accessKey, JsonNode rawMeta, JsonNode fields, byte[] signature, byte[] publicSigningKey) throws ParseException, E3DBVerificationException, E3DBDecryptionException, JsonProcessingException {
+    return R.makeLocal(crypto, accessKey, rawMeta, fields, signature, publicSigningKey, false);
+  }
+
+  private Record makeR(byte[] accessKey, JsonNode rawMeta, JsonNode fields, boolean lazy) throws ParseException, E3DBVerificationException, E3DBDecryptionException, JsonProcessingException {
+    return R.makeLocal(crypto, accessKey, rawMeta, fields, null, null, lazy);
+  }
+
+  /**
+   * Parses a response body, keeping only the given record fields (or all of them, if
+   * {@code fields} is {@code null}). Other fields are skipped while parsing, so they
+   * are never decoded into strings.
+   */
+  private static JsonNode readTree(ResponseBody body, Set<String> fields) throws IOException {
+    if (fields == null)
+      return mapper.readTree(body.string());
+
+    JsonParser parser = new FilteringParserDelegate(mapper.getFactory().createParser(body.byteStream()),
+            new FieldProjection(fields, false), TokenFilter.Inclusion.INCLUDE_ALL_AND_PATH, true);
+    try {
+      return mapper.readTree(parser);
+    } finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Filters the "data" (or, in search results, "record_data") object of each record in a
+   * response down to the given fields. Everything else, including record meta, is kept.
+   */
+  private static class FieldProjection extends TokenFilter {
+    private final Set<String> fields;
+    private final boolean inData;
+
+    FieldProjection(Set<String> fields, boolean inData) {
+      this.fields = fields;
+      this.inData = inData;
+    }
+
+    @Override
+    public TokenFilter includeProperty(String name) {
+      if (inData)
+        return fields.contains(name) || RECORD_KEY_FIELD.equals(name) ? TokenFilter.INCLUDE_ALL : null;
+
+      switch (name) {
+        case "data":
+        case "record_data":
+          return new FieldProjection(fields, true);
+        case "results":
+          return this;
+        default:
+          return TokenFilter.INCLUDE_ALL;
+      }
+    }
+  }
+
+  /**
+   * Record data that decrypts each field the first time it is read, and keeps the
+   * plaintext. Listing keys or the size does not decrypt anything; iterating entries
+   * or values decrypts every field.
+   *
+   * <p>A field that fails to decrypt causes an {@code IllegalStateException} when read.
+   */
+  private static class LazyData extends AbstractMap<String, String> {
+    private final Crypto crypto;
+    private final byte[] accessKey;
+    private final byte[] recordKey;
+    private final Map<String, String> encrypted;
+    private final ConcurrentMap<String, String> decrypted;
+
+    LazyData(Crypto crypto, byte[] accessKey, byte[] recordKey, Map<String, String> encrypted) {
+      this.crypto = crypto;
+      this.accessKey = accessKey;
+      this.recordKey = recordKey;
+      this.encrypted = encrypted;
+      this.decrypted = new ConcurrentHashMap<>(encrypted.size());
+    }
+
+    @Override
+    public String get(Object key) {
+      String value = decrypted.get(key);
+      if (value != null)
+        return value;
+
+      String field = encrypted.get(key);
+      if (field == null)
+        return null;
+
+      try {
+        value = decryptField(crypto, accessKey, recordKey, field);
+      } catch (E3DBDecryptionException | RuntimeException e) {
+        // Includes malformed fields, which fail while decoding.
+        throw new IllegalStateException("Could not decrypt field " + key, e);
+      }
+      String existing = decrypted.putIfAbsent((String) key, value);
+      return existing != null ? existing : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return encrypted.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+      return encrypted.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+      return Collections.unmodifiableSet(encrypted.keySet());
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+      return new AbstractSet<Entry<String, String>>() {
+        @Override
+        public Iterator<Entry<String, String>> iterator() {
+          final Iterator<String> keys = encrypted.keySet().iterator();
+          return new Iterator<Entry<String, String>>() {
+            @Override
+            public boolean hasNext() {
+              return keys.hasNext();
+            }
+
+            @Override
+            public Entry<String, String> next() {
+              String key = keys.next();
+              return new SimpleImmutableEntry<>(key, get(key));
+            }
+
+            @Override
+            public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return encrypted.size();
+        }
+      };
+    }
   }
 
   private static class QR implements QueryResponse {
@@ -881,6 +1196,26 @@ public class Client {
     }
   }
 
+  private static class SyncR implements SyncResponse {
+    private final List<Record> records;
+    private final SyncCursor cursor;
+
+    private SyncR(List<Record> records, SyncCursor cursor) {
+      this.records = records;
+      this.cursor = cursor;
+    }
+
+    @Override
+    public List<Record> records() {
+      return records;
+    }
+
+    @Override
+    public SyncCursor cursor() {
+      return cursor;
+    }
+  }
+
   private static class TokenInterceptor implements Interceptor {
     private final URI host;
     private final AuthAPI authClient;
@@ -889,10 +1224,10 @@ public class Client {
     private Date replaceAfter = new Date(0L);
 
     private TokenInterceptor(String apiKey, String apiSecret, URI host) throws E3DBCryptoException {
-      this(apiKey, apiSecret, host, null);
+      this(apiKey, apiSecret, host, null, null);
     }
 
-    private TokenInterceptor(String apiKey, String apiSecret, URI host, CertificatePinner certificatePinner) throws E3DBCryptoException {
+    private TokenInterceptor(String apiKey, String apiSecret, URI host, CertificatePinner certificatePinner, EventListener.Factory events) throws E3DBCryptoException {
       this.host = host;
       this.basic = new StringBuffer("Basic ").append(ByteString.of(new StringBuffer(apiKey).append(":").append(apiSecret).toString().getBytes(UTF8)).base64()).toString();
 
@@ -901,6 +1236,9 @@ public class Client {
       if (certificatePinner != null) {
         clientBuilder.certificatePinner(certificatePinner);
       }
+      if (events != null) {
+        clientBuilder.eventListenerFactory(events);
+      }
 
       this.authClient = new Retrofit.Builder()
               .client(clientBuilder.build())
@@ -916,15 +1254,25 @@ public class Client {
         return chain.proceed(req);
       } else {
         if (replaceAfter.before(new Date())) {
-          retrofit2.Response<ResponseBody> response = authClient.getToken(basic, RequestBody.create(PLAIN_TEXT, "grant_type=client_credentials")).execute();
-          if (response.code() != 200)
-            throw new IOException("Unable to renew token.");
-
-          JsonNode token = mapper.readTree(response.body().string());
-          Calendar c = Calendar.getInstance();
-          c.add(Calendar.SECOND, Math.max(60, Math.min(15 * 60, token.get("expires_in").asInt() - 60)));
-          replaceAfter = c.getTime();
-          this.token = token.get("access_token").asText();
+          Tracing span = HttpEventListener.startChild(chain.call(), "refreshToken");
+          Tracing previous = span.activate();
+          try {
+            retrofit2.Response<ResponseBody> response = authClient.getToken(basic, RequestBody.create(PLAIN_TEXT, "grant_type=client_credentials")).execute();
+            if (response.code() != 200)
+              throw new IOException("Unable to renew token.");
+
+            JsonNode token = mapper.readTree(response.body().string());
+            Calendar c = Calendar.getInstance();
+            c.add(Calendar.SECOND, Math.max(60, Math.min(15 * 60, token.get("expires_in").asInt() - 60)));
+            replaceAfter = c.getTime();
+            this.token = token.get("access_token").asText();
+          } catch (IOException | RuntimeException e) {
+            span.setError(e);
+            throw e;
+          } finally {
+            Tracing.restore(previous);
+            span.end();
+          }
         }
 
         return chain.proceed(req.newBuilder().addHeader("Authorization", "Bearer " + token).build());
@@ -939,24 +1287,19 @@ public class Client {
     private final Map<String, String> headers;
 
     TSV1Interceptor(byte[] privateSigningKey, byte[] publicSigningKey, String clientId, Map<String, String> headers) {
-      this.privateSigningKey = privateSigningKey;
-      this.publicSigningKey = publicSigningKey;
+      // Copied, so that callers clearing their keys afterwards do not change the ones used here.
+      this.privateSigningKey = privateSigningKey == null ? null : privateSigningKey.clone();
+      this.publicSigningKey = publicSigningKey == null ? null : publicSigningKey.clone();
       this.clientId = clientId;
       this.headers = headers;
     }
 
     TSV1Interceptor(byte[] privateSigningKey, byte[] publicSigningKey, String clientId) {
-      this.privateSigningKey = privateSigningKey;
-      this.publicSigningKey = publicSigningKey;
-      this.clientId = clientId;
-      headers = new HashMap<>();
+      this(privateSigningKey, publicSigningKey, clientId, new HashMap<String, String>());
     }
 
     TSV1Interceptor(byte[] privateSigningKey, byte[] publicSigningKey) {
-      this.privateSigningKey = privateSigningKey;
-      this.publicSigningKey = publicSigningKey;
-      this.clientId = "";
-      headers = new HashMap<>();
+      this(privateSigningKey, publicSigningKey, "");
     }
 
     @Override
@@ -967,7 +1310,13 @@ public class Client {
       String method = req.method();
       String queryString = sortQueryParams(url);
       try {
-        String signature = createTsv1Signature(privateSigningKey, publicSigningKey, clientId, queryString, canonicalURI, method);
+        Tracing span = HttpEventListener.startChild(chain.call(), "signRequest");
+        String signature;
+        try {
+          signature = createTsv1Signature(privateSigningKey, publicSigningKey, clientId, queryString, canonicalURI, method);
+        } finally {
+          span.end();
+        }
         Request.Builder builder = req.newBuilder();
         for (String s : headers.keySet()) {
           String s1 = headers.get(s);
@@ -1109,14 +1458,13 @@ public class Client {
             throw new IllegalStateException("Encryption key type " + Platform.crypto.suite().getEncryptionKeyType() + " not supported.");
         }
 
-        record = makeR(Platform.crypto.decryptBox(
+        record = makeR(crypto.decryptBox(
                 CipherWithNonce.decode(access_key.get("eak").asText()),
                 decodeURL(authorizerPublicKey),
                 privateEncryptionKey),
                 queryRecord.get("meta"),
                 queryRecord.get("record_data"),
-                null,
-                null
+                decryptLazily
         );
       } else {
         record = makeR(queryRecord.get("meta"));
@@ -1134,7 +1482,7 @@ public class Client {
     if (execute.code() != 200)
       throw E3DBException.find(execute.code(), execute.message());
 
-    JsonNode results = mapper.readTree(execute.body().string());
+    JsonNode results = readTree(execute.body(), params.fields);
     long totalResults = results.get("total_results").asLong();
     String searchID = results.get("search_id").asText();
     long lastIndex = results.get("last_index").asLong();
@@ -1153,16 +1501,42 @@ public class Client {
     return objects;
   }
 
-  private static Map<String, String> encryptObject(byte[] accessKey, Map<String, String> fields) throws E3DBEncryptionException {
-    Map<String, String> encFields = new HashMap<>();
-    for (Map.Entry<String, String> entry : fields.entrySet()) {
-      byte[] dk = Platform.crypto.newSecretKey();
+  private static Map<String, String> encryptObject(Crypto crypto, byte[] accessKey, Map<String, String> fields, boolean singleDataKey, int compressionThreshold) throws E3DBEncryptionException {
+    Tracing span = Tracing.startChild("encryptObject");
+    span.setAttribute("fields", fields.size());
+    try {
+      Map<String, String> encFields = new HashMap<>();
+      if (singleDataKey) {
+        if (fields.containsKey(RECORD_KEY_FIELD))
+          throw new IllegalArgumentException(RECORD_KEY_FIELD + " is a reserved field name when writing one data key per record.");
+
+        // One data key for the whole record; each field still gets its own nonce.
+        byte[] dk = crypto.newSecretKey();
+        encFields.put(RECORD_KEY_FIELD, RECORD_KEY_VERSION + FieldEnvelope.format(crypto.encryptSecretBox(dk, accessKey)));
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+          byte[] value = entry.getValue().getBytes(UTF8);
+          byte[] compressed = FieldCompression.compress(value, compressionThreshold);
+          encFields.put(entry.getKey(), compressed == null
+                  ? FieldEnvelope.format(crypto.encryptSecretBox(value, dk))
+                  : FieldEnvelope.format(FieldEnvelope.COMPRESSED, crypto.encryptSecretBox(compressed, dk)));
+        }
+        return encFields;
+      }
+
+      for (Map.Entry<String, String> entry : fields.entrySet()) {
+        byte[] dk = crypto.newSecretKey();
+        byte[] value = entry.getValue().getBytes(UTF8);
+        byte[] compressed = FieldCompression.compress(value, compressionThreshold);
 
-      String encField = new StringBuilder(Platform.crypto.encryptSecretBox(dk, accessKey).toMessage()).append(".")
-              .append(Platform.crypto.encryptSecretBox(entry.getValue().getBytes(UTF8), dk).toMessage()).toString();
-      encFields.put(entry.getKey(), encField);
+        String encField = compressed == null
+                ? FieldEnvelope.format(crypto.encryptSecretBox(dk, accessKey), crypto.encryptSecretBox(value, dk))
+                : FieldEnvelope.format(FieldEnvelope.COMPRESSED, crypto.encryptSecretBox(dk, accessKey), crypto.encryptSecretBox(compressed, dk));
+        encFields.put(entry.getKey(), encField);
+      }
+      return encFields;
+    } finally {
+      span.end();
     }
-    return encFields;
   }
 
   private static Map<String, String> encryptObjectWithSignedFields(byte[] accessKey, byte[] signingKey, UUID salt, Map<String, String> data) throws E3DBCryptoException {
@@ -1170,8 +1544,8 @@ public class Client {
     for (Map.Entry<String, String> entry : data.entrySet()) {
       byte[] dk = Platform.crypto.newSecretKey();
       String signedField = signField(entry.getKey(), entry.getValue(), signingKey, salt);
-      String encField = new StringBuilder(Platform.crypto.encryptSecretBox(dk, accessKey).toMessage()).append(".")
-              .append(Platform.crypto.encryptSecretBox(signedField.getBytes(UTF8), dk).toMessage()).toString();
+      String encField = FieldEnvelope.format(Platform.crypto.encryptSecretBox(dk, accessKey),
+              Platform.crypto.encryptSecretBox(signedField.getBytes(UTF8), dk));
       encryptedFields.put(entry.getKey(), encField);
     }
     return encryptedFields;
@@ -1191,22 +1565,76 @@ public class Client {
 
   }
 
-  private static Map<String, String> decryptObject(byte[] accessKey, Map<String, String> record) throws E3DBDecryptionException {
-    Map<String, String> decryptedFields = new HashMap<>();
-    for (Map.Entry<String, String> entry : record.entrySet()) {
-      ER er = new ER(entry.getValue());
-      byte[] dk = Platform.crypto.decryptSecretBox(er.edk, accessKey);
-      String value = new String(Platform.crypto.decryptSecretBox(er.ef, dk), UTF8);
-      decryptedFields.put(entry.getKey(), value);
+  private static Map<String, String> decryptObject(Crypto crypto, byte[] accessKey, Map<String, String> record) throws E3DBDecryptionException {
+    Tracing span = Tracing.startChild("decryptObject");
+    span.setAttribute("fields", record.size());
+    try {
+      byte[] recordKey = decryptRecordKey(crypto, accessKey, record);
+      Map<String, String> decryptedFields = new HashMap<>();
+      for (Map.Entry<String, String> entry : record.entrySet()) {
+        if (recordKey == null || !RECORD_KEY_FIELD.equals(entry.getKey()))
+          decryptedFields.put(entry.getKey(), decryptField(crypto, accessKey, recordKey, entry.getValue()));
+      }
+      return decryptedFields;
+    } finally {
+      span.end();
     }
-    return decryptedFields;
+  }
+
+  /**
+   * Decrypts the data key shared by all fields of a record (the value of {@link #RECORD_KEY_FIELD}).
+   * Returns {@code null} if there is none, meaning each field carries its own data key.
+   */
+  private static byte[] decryptRecordKey(Crypto crypto, byte[] accessKey, Map<String, String> fields) throws E3DBDecryptionException {
+    if (!hasRecordKey(fields))
+      return null;
+    String recordKey = fields.get(RECORD_KEY_FIELD);
+    if (!recordKey.startsWith(RECORD_KEY_VERSION))
+      throw new E3DBDecryptionException("Unsupported record format.");
+
+    return crypto.decryptSecretBox(FieldEnvelope.parseCipher(recordKey, RECORD_KEY_VERSION.length()), accessKey);
+  }
+
+  /**
+   * Whether the fields of a record share one data key. Records in the default format may have a
+   * user field named {@link #RECORD_KEY_FIELD}, so it must hold a versioned key ({@code V.EK.EKN}) and
+   * every other field must be in the shorter form; a field in the default format
+   * ({@code EDK.EDKN.EF.EFN}) never is.
+   */
+  private static boolean hasRecordKey(Map<String, String> fields) {
+    String recordKey = fields.get(RECORD_KEY_FIELD);
+    if (recordKey == null || !FieldEnvelope.isCipher(recordKey, recordKey.indexOf('.') + 1))
+      return false;
+
+    for (Map.Entry<String, String> entry : fields.entrySet()) {
+      String field = entry.getValue();
+      int start = field.startsWith(FieldEnvelope.COMPRESSED) ? FieldEnvelope.COMPRESSED.length() : 0;
+      if (!RECORD_KEY_FIELD.equals(entry.getKey()) && !FieldEnvelope.isCipher(field, start))
+        return false;
+    }
+    return true;
+  }
+
+  private static String decryptField(Crypto crypto, byte[] accessKey, byte[] recordKey, String field) throws E3DBDecryptionException {
+    boolean compressed = field.startsWith(FieldEnvelope.COMPRESSED);
+    int start = compressed ? FieldEnvelope.COMPRESSED.length() : 0;
+    byte[] value;
+    if (recordKey != null) {
+      value = crypto.decryptSecretBox(FieldEnvelope.parseCipher(field, start), recordKey);
+    } else {
+      FieldEnvelope er = FieldEnvelope.parse(field, start);
+      byte[] dk = crypto.decryptSecretBox(er.edk, accessKey);
+      value = crypto.decryptSecretBox(er.ef, dk);
+    }
+    FieldCompression.check(compressed, value);
+    return new String(compressed ? FieldCompression.decompress(value) : value, UTF8);
   }
 
 
   private static Map<String, String> decryptObjectWithSignedFields(byte[] accessKey, Map<String, String> record, byte[] publicSigningKey, UUID signatureSalt) throws E3DBException, E3DBCryptoException {
     Map<String, String> decryptedFields = new HashMap<>();
     for (Map.Entry<String, String> entry : record.entrySet()) {
-      ER er = new ER(entry.getValue());
+      FieldEnvelope er = FieldEnvelope.parse(entry.getValue());
       byte[] dk = Platform.crypto.decryptSecretBox(er.edk, accessKey);
       String verifiedValue = verifyField(
               entry.getKey(),
@@ -1238,7 +1666,7 @@ public class Client {
     } else {
       // Create new AK
       try {
-        setAccessKey(this.clientId, this.clientId, this.clientId, type, Platform.crypto.getPublicKey(this.privateEncryptionKey), Platform.crypto.newSecretKey(), this.clientId, this.publicSigningKey);
+        setAccessKey(this.clientId, this.clientId, this.clientId, type, this.publicEncryptionKey, crypto.newSecretKey(), this.clientId, this.publicSigningKey);
       } catch (E3DBConflictException ex) {
       }
 
@@ -1268,65 +1696,80 @@ public class Client {
   private EAKEntry getEAK(UUID writerId, UUID userId, UUID readerId, String type) throws IOException, E3DBException, E3DBDecryptionException {
     EAKCacheKey cacheEntry = new EAKCacheKey(writerId, userId, type);
     EAKEntry cachedEak = eakCache.get(cacheEntry);
+    if (metrics != null)
+      metrics.recordCacheAccess("eak", cachedEak != null);
+    if (Platform.flightRecorder)
+      FlightRecorderEvents.cacheAccess("eak", cachedEak != null);
 
     if (cachedEak != null)
       return cachedEak;
     else {
-      retrofit2.Response<ResponseBody> response = storageClient.getAccessKey(writerId.toString(), userId.toString(), readerId.toString(), type).execute();
-      if (response.code() == 404) {
-        return null;
-      } else if (response.code() != 200) {
-        throw E3DBException.find(response.code(), response.message());
-      } else {
-        JsonNode eakResponse = mapper.readTree(response.body().string());
-        String eak = eakResponse.get("eak").asText();
-        final String publicKey;
-        {
-          switch (Platform.crypto.suite().getEncryptionKeyType()) {
-            case Curve25519:
-              publicKey = eakResponse.get("authorizer_public_key").get("curve25519").asText();
-              break;
-            case P384:
-              publicKey = eakResponse.get("authorizer_public_key").get("p384").asText();
-              break;
-            default:
-              throw new IllegalStateException("Encryption key type " + Platform.crypto.suite().getEncryptionKeyType() + " not supported.");
+      // Only misses are traced, as hits do no work worth timing (see ClientMetrics for hit rates).
+      Tracing span = Tracing.startChild("getEAK");
+      Tracing previous = span.activate();
+      try {
+        retrofit2.Response<ResponseBody> response = storageClient.getAccessKey(writerId.toString(), userId.toString(), readerId.toString(), type).execute();
+        if (response.code() == 404) {
+          return null;
+        } else if (response.code() != 200) {
+          throw E3DBException.find(response.code(), response.message());
+        } else {
+          JsonNode eakResponse = mapper.readTree(response.body().string());
+          String eak = eakResponse.get("eak").asText();
+          final String publicKey;
+          {
+            switch (Platform.crypto.suite().getEncryptionKeyType()) {
+              case Curve25519:
+                publicKey = eakResponse.get("authorizer_public_key").get("curve25519").asText();
+                break;
+              case P384:
+                publicKey = eakResponse.get("authorizer_public_key").get("p384").asText();
+                break;
+              default:
+                throw new IllegalStateException("Encryption key type " + Platform.crypto.suite().getEncryptionKeyType() + " not supported.");
+            }
           }
-        }
-        UUID authorizerId = UUID.fromString(eakResponse.get("authorizer_id").asText());
-
-        JsonNode signer_signing_key = eakResponse.get("signer_signing_key");
-        UUID signerId = null;
-        final String signerPublicKey;
-        if (!signer_signing_key.isNull()) {
-          signerId = UUID.fromString(eakResponse.get("signer_id").asText());
-          switch (Platform.crypto.suite().getSigningKeyType()) {
-            case Ed25519:
-              signerPublicKey = signer_signing_key.get("ed25519").asText();
-              break;
-            case P384:
-              signerPublicKey = signer_signing_key.get("p384").asText();
-              break;
-            default:
-              throw new IllegalStateException("Signing key type " + Platform.crypto.suite().getSigningKeyType() + " not supported.");
+          UUID authorizerId = UUID.fromString(eakResponse.get("authorizer_id").asText());
+
+          JsonNode signer_signing_key = eakResponse.get("signer_signing_key");
+          UUID signerId = null;
+          final String signerPublicKey;
+          if (!signer_signing_key.isNull()) {
+            signerId = UUID.fromString(eakResponse.get("signer_id").asText());
+            switch (Platform.crypto.suite().getSigningKeyType()) {
+              case Ed25519:
+                signerPublicKey = signer_signing_key.get("ed25519").asText();
+                break;
+              case P384:
+                signerPublicKey = signer_signing_key.get("p384").asText();
+                break;
+              default:
+                throw new IllegalStateException("Signing key type " + Platform.crypto.suite().getSigningKeyType() + " not supported.");
+            }
+          } else {
+            signerPublicKey = null;
           }
-        } else {
-          signerPublicKey = null;
-        }
 
-        byte[] ak = Platform.crypto.decryptBox(CipherWithNonce.decode(eak),
-                decodeURL(publicKey),
-                this.privateEncryptionKey);
-        EAKEntry entry = new EAKEntry(ak, new LocalEAKInfo(eak, publicKey, authorizerId, signerId, signerPublicKey));
-        eakCache.put(cacheEntry, entry);
-        return entry;
+          byte[] ak = crypto.decryptBox(CipherWithNonce.decode(eak),
+                  decodeURL(publicKey),
+                  this.privateEncryptionKey);
+          EAKEntry entry = new EAKEntry(ak, new LocalEAKInfo(eak, publicKey, authorizerId, signerId, signerPublicKey));
+          eakCache.put(cacheEntry, entry);
+          return entry;
+        }
+      } catch (Throwable e) {
+        span.setError(e);
+        throw e;
+      } finally {
+        Tracing.restore(previous);
+        span.end();
       }
     }
   }
 
   private void setAccessKey(UUID writerId, UUID userId, UUID readerId, String type, byte[] readerKey, byte[] ak, UUID signerId, byte[] signerPublicKey) throws E3DBException, E3DBEncryptionException, IOException {
     EAKCacheKey cacheEntry = new EAKCacheKey(writerId, userId, type);
-    String encryptedAk = Platform.crypto.encryptBox(ak, readerKey, this.privateEncryptionKey).toMessage();
+    String encryptedAk = crypto.encryptBox(ak, readerKey, this.privateEncryptionKey).toMessage();
 
     Map<String, String> doc = new HashMap<>();
     doc.put("eak", encryptedAk);
@@ -1341,7 +1784,7 @@ public class Client {
   }
 
   private byte[] decryptLocalEAKInfo(EAKInfo eakInfo) throws E3DBDecryptionException {
-    return Platform.crypto.decryptBox(CipherWithNonce.decode(eakInfo.getKey()), decodeURL(eakInfo.getPublicKey()), this.privateEncryptionKey);
+    return crypto.decryptBox(CipherWithNonce.decode(eakInfo.getKey()), decodeURL(eakInfo.getPublicKey()), this.privateEncryptionKey);
   }
 
   private static ClientMeta clientMeta(RecordMeta meta) {
@@ -1422,6 +1865,14 @@ public class Client {
   }
 
   protected ClientInfo getClientInfo(UUID clientId) throws IOException, E3DBException {
+    ClientInfo cachedInfo = clientInfoCache.get(clientId);
+    if (metrics != null)
+      metrics.recordCacheAccess("client_info", cachedInfo != null);
+    if (Platform.flightRecorder)
+      FlightRecorderEvents.cacheAccess("client_info", cachedInfo != null);
+    if (cachedInfo != null)
+      return cachedInfo;
+
     final retrofit2.Response<ResponseBody> clientInfo = shareClient.lookupClient(clientId).execute();
     if (clientInfo.code() == 404) {
       throw new E3DBClientNotFoundException(clientId.toString());
@@ -1457,11 +1908,35 @@ public class Client {
         signingKey = null;
     }
     String cId = info.get("client_id").asText();
-    return new ClientInfo(Base64.decodeURL(publicKey), signingKey == null ? null : Base64.decodeURL(signingKey), UUID.fromString(cId));
+    ClientInfo result = new ClientInfo(Base64.decodeURL(publicKey), signingKey == null ? null : Base64.decodeURL(signingKey), UUID.fromString(cId));
+    clientInfoCache.put(clientId, result);
+    return result;
+  }
+
+  /**
+   * Remove any cached public keys for the given client.
+   *
+   * <p>The public encryption and signing keys of other clients are cached when looked up (for example,
+   * while sharing). Call this method if a client's keys are known to have changed.
+   *
+   * @param clientId ID of the client to remove from the cache.
+   */
+  public void invalidateClientInfo(UUID clientId) {
+    checkNotNull(clientId, "clientId");
+    clientInfoCache.invalidate(clientId);
+  }
+
+  /**
+   * Remove all cached public keys of other clients.
+   *
+   * <p>See {@link #invalidateClientInfo(UUID)}.
+   */
+  public void clearClientInfoCache() {
+    clientInfoCache.clear();
   }
 
   private void sharing(final String type, final UUID readerId, final UUID writerId, final ResultHandler<Void> handleResult) {
-    onBackground(new Runnable() {
+    onBackground("share", new Runnable() {
       public void run() {
         try {
           final byte[] readerKey = getClientInfo(readerId).getEncryptionKey();
@@ -1478,7 +1953,7 @@ public class Client {
           try {
             byte[] ak = getAccessKey(writerId, writerId, Client.this.clientId, type);
             if (ak == null) {
-              setAccessKey(writerId, writerId, Client.this.clientId, type, readerKey, Platform.crypto.newSecretKey(), writerId, writerSigningKey);
+              setAccessKey(writerId, writerId, Client.this.clientId, type, readerKey, crypto.newSecretKey(), writerId, writerSigningKey);
               ak = getAccessKey(writerId, writerId, Client.this.clientId, type);
             }
             setAccessKey(writerId, writerId, readerId, type, readerKey, ak, writerId, writerSigningKey);
@@ -1505,7 +1980,7 @@ public class Client {
   }
 
   private void revoking(final String type, final UUID writerId, final UUID readerId, final ResultHandler<Void> handleResult) {
-    onBackground(new Runnable() {
+    onBackground("revoke", new Runnable() {
       public void run() {
         try {
           removeAccessKey(writerId, writerId, readerId, type);
@@ -1527,6 +2002,70 @@ public class Client {
     });
   }
 
+  /**
+   * Looks up each reader at most once, even when called concurrently for the same reader.
+   */
+  private class ReaderKeys {
+    private final ConcurrentMap<UUID, FutureTask<byte[]>> lookups = new ConcurrentHashMap<>();
+
+    byte[] get(final UUID readerId) throws Exception {
+      FutureTask<byte[]> lookup = new FutureTask<>(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          return getClientInfo(readerId).getEncryptionKey();
+        }
+      });
+      FutureTask<byte[]> existing = lookups.putIfAbsent(readerId, lookup);
+      if (existing == null)
+        lookup.run();
+      else
+        lookup = existing;
+
+      try {
+        return lookup.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception)
+          throw (Exception) e.getCause();
+        else
+          throw e;
+      }
+    }
+  }
+
+  private void shareOne(SharePair pair, byte[] ak, ReaderKeys readerKeys) throws Exception {
+    try {
+      setAccessKey(clientId, clientId, pair.getReaderId(), pair.getType(), readerKeys.get(pair.getReaderId()), ak, clientId, publicSigningKey);
+    } catch (E3DBConflictException ex) {
+      // no-op
+    }
+
+    putPolicy(pair, allowRead);
+  }
+
+  private void revokeOne(SharePair pair) throws Exception {
+    removeAccessKey(clientId, clientId, pair.getReaderId(), pair.getType());
+    putPolicy(pair, denyRead);
+  }
+
+  private void putPolicy(SharePair pair, String policy) throws IOException, E3DBException {
+    retrofit2.Response<ResponseBody> shareResponse = shareClient.putPolicy(
+            clientId.toString(),
+            clientId.toString(),
+            pair.getReaderId().toString(),
+            pair.getType(),
+            RequestBody.create(APPLICATION_JSON, policy)).execute();
+
+    if (shareResponse.code() != 201)
+      throw E3DBException.find(shareResponse.code(), shareResponse.message());
+  }
+
+  private static <T> List<T> distinct(Collection<T> items, String name) {
+    checkNotNull(items, name);
+    for (T item : items)
+      checkNotNull(item, name);
+    return new ArrayList<>(new LinkedHashSet<>(items));
+  }
+
   /**
    * @return A Base64URL-encoded string representing the new private key.
    * @deprecated Use {@link #generateKey()}  instead.
@@ -1827,7 +2366,7 @@ public class Client {
 
   /**
    * Write the given file to E3DB. Intended for files from 5MB up to 5GB in size. The contents of the file are
-   * encrypted before being uploaded.
+   * encrypted before being uploaded, without compression.
    *
    * @param type         Type of the record. Cannot be {@code null} or blank.
    * @param file         Path to the file to upload. Cannot be {@code null}.
@@ -1835,19 +2374,52 @@ public class Client {
    * @param handleResult Handles the result of the write.
    */
   public void writeFile(final String type, final File file, final Map<String, String> plain, final ResultHandler<RecordMeta> handleResult) {
+    writeFile(type, file, plain, Compression.RAW, handleResult);
+  }
+
+  /**
+   * Write the given file to E3DB. Intended for files from 5MB up to 5GB in size. The contents of the file are
+   * compressed as given, then encrypted before being uploaded. The compression used is recorded in the file's
+   * {@link FileMeta#compression()}, and {@link #readFile(UUID, File, ResultHandler)} reverses it.
+   *
+   * <p>Only clients that decompress files (this SDK from this version on) can read compressed files.
+   *
+   * <p>A compressed file is first written to a temporary file, in the file's directory unless configured
+   * otherwise with {@link ClientBuilder#setFileTempDirectory(File)}, then encrypted to another beside it.
+   *
+   * @param type         Type of the record. Cannot be {@code null} or blank.
+   * @param file         Path to the file to upload. Cannot be {@code null}.
+   * @param plain        Plaintext meta associated with the file. Can be {@code null}.
+   * @param compression  Compression to apply to the file. If {@code null}, {@link Compression#GZIP} is chosen if
+   *                     samples of the file compress well, and {@link Compression#RAW} otherwise.
+   * @param handleResult Handles the result of the write.
+   */
+  public void writeFile(final String type, final File file, final Map<String, String> plain, final Compression compression, final ResultHandler<RecordMeta> handleResult) {
     checkNotEmpty(type, "type");
     checkNotNull(file, "file");
     if (plain != null && plain.size() > 0)
       checkMap(plain, "plain");
 
     final File absFile = file.getAbsoluteFile();
-    onBackground(new Runnable() {
+    onBackground("writeFile", new Runnable() {
       @Override
       public void run() {
         try {
           final byte[] ownAK = getOwnAccessKey(type);
-          File encryptedFile = Platform.crypto.encryptFile(absFile, ownAK);
-          FileMeta fileMeta = makeFileMeta(getMD5(encryptedFile), encryptedFile.length(), Compression.RAW, absFile.getName());
+          Compression fileCompression = compression == null ? FileCompression.choose(absFile) : compression;
+          File encryptedFile;
+          if (fileCompression == Compression.RAW) {
+            encryptedFile = crypto.encryptFile(absFile, ownAK);
+          } else {
+            // The encrypted copy is written alongside the compressed one.
+            File compressedFile = FileCompression.compress(absFile, fileCompression, fileTempDirectory == null ? absFile.getParentFile() : fileTempDirectory);
+            try {
+              encryptedFile = crypto.encryptFile(compressedFile, ownAK);
+            } finally {
+              compressedFile.delete();
+            }
+          }
+          FileMeta fileMeta = makeFileMeta(getMD5(encryptedFile), encryptedFile.length(), fileCompression, absFile.getName());
           Map<String, Object> meta = makeRecordMetaMap(type, plain, fileMeta);
 
           Map<String, Object> record = new HashMap<>();
@@ -1901,7 +2473,8 @@ public class Client {
    * @param recordId     ID of the record. Cannot be {@code null}.
    * @param dest         Destination to write the decrypted file to. Cannot be {@code null}. If the file exists, it will be truncated.
    * @param handleResult Handles the result of the operation. If the operation completes successfully, the
-   *                     destination will hold the contents of the unencrypted file.
+   *                     destination will hold the contents of the unencrypted (and, if it was compressed when
+   *                     written, decompressed) file.
    *
    *                     <p>If an error occurs, be sure to truncate the destination file, as it may contain partially
    *                     decrypted result.
@@ -1914,7 +2487,7 @@ public class Client {
       if (!absDest.canWrite())
         throw new IOException("Can't write to " + dest);
 
-      onBackground(new Runnable() {
+      onBackground("readFile", new Runnable() {
         @Override
         public void run() {
           try {
@@ -1939,6 +2512,7 @@ public class Client {
             }
 
             JsonNode fileMeta = meta.get("file_meta");
+            Compression compression = fileMeta.has("compression") ? Compression.fromType(fileMeta.get("compression").asText()) : Compression.RAW;
             String signedUrl = fileMeta.get("file_url").asText();
             Response getFileResponse = anonymousClient.newCall(new Request.Builder()
                     .url(signedUrl)
@@ -1963,8 +2537,21 @@ public class Client {
               fileBody.close();
             }
 
-            Platform.crypto.decryptFile(encrypted, eak.ak, absDest);
-            encrypted.delete();
+            try {
+              if (compression == Compression.RAW) {
+                crypto.decryptFile(encrypted, eak.ak, absDest);
+              } else {
+                File compressed = File.createTempFile("gz-", ".bin", new File(absDest.getParent()));
+                try {
+                  crypto.decryptFile(encrypted, eak.ak, compressed);
+                  FileCompression.decompress(compressed, compression, absDest);
+                } finally {
+                  compressed.delete();
+                }
+              }
+            } finally {
+              encrypted.delete();
+            }
             uiValue(handleResult, R.getRecordMeta(meta));
           } catch (Throwable e) {
             uiError(handleResult, e);
@@ -1999,7 +2586,9 @@ public class Client {
             recipientEncryptionKey,
             recipientSigningKey,
             this.privateSigningKey,
+            this.publicSigningKey,
             this.privateEncryptionKey,
+            this.publicEncryptionKey,
             this.notesClient,
             handleResult);
   }
@@ -2015,12 +2604,43 @@ public class Client {
           final byte[] privateEncryptionKey,
           final StorageV2API notesClient,
           final ResultHandler<Note> handleResult) throws IllegalArgumentException {
+    checkNotNull(writerSigningKey, "Writer Signing Key");
+    checkNotNull(privateEncryptionKey, "Private Encryption Key");
+
+    final byte[] writerPublicSigningKey;
+    final byte[] publicEncryptionKey;
+    try {
+      writerPublicSigningKey = PublicKeys.signingKey(writerSigningKey);
+      publicEncryptionKey = PublicKeys.encryptionKey(privateEncryptionKey);
+    } catch (E3DBCryptoException e) {
+      uiError(handleResult, e);
+      return;
+    }
+
+    internalWriteNote(clientId, fields, noteOptions, recipientEncryptionKey, recipientSigningKey,
+            writerSigningKey, writerPublicSigningKey, privateEncryptionKey, publicEncryptionKey, notesClient, handleResult);
+  }
+
+  protected static void internalWriteNote(
+          final UUID clientId,
+          final RecordData fields,
+          NoteOptions noteOptions,
+          final byte[] recipientEncryptionKey,
+          final byte[] recipientSigningKey,
+          final byte[] writerSigningKey,
+          final byte[] writerPublicSigningKey,
+          final byte[] privateEncryptionKey,
+          final byte[] publicEncryptionKey,
+          final StorageV2API notesClient,
+          final ResultHandler<Note> handleResult) throws IllegalArgumentException {
     checkNotNull(fields, "fields");
     final NoteOptions options = (noteOptions == null) ? new NoteOptions() : noteOptions;
     checkNotNull(recipientEncryptionKey, "Recipient Encryption Key");
     checkNotNull(recipientSigningKey, "Recipient Signing Key");
     checkNotNull(writerSigningKey, "Writer Signing Key");
+    checkNotNull(writerPublicSigningKey, "Writer Public Signing Key");
     checkNotNull(privateEncryptionKey, "Private Encryption Key");
+    checkNotNull(publicEncryptionKey, "Public Encryption Key");
 
 
     backgroundExecutor.execute(new Runnable() {
@@ -2037,8 +2657,8 @@ public class Client {
                   clientId.toString(),
                   Platform.crypto.suite().toString(),
                   encodeURL(recipientSigningKey),
-                  encodeURL(Platform.crypto.getPublicSigningKey(writerSigningKey)),
-                  encodeURL(Platform.crypto.getPublicKey(privateEncryptionKey)),
+                  encodeURL(writerPublicSigningKey),
+                  encodeURL(publicEncryptionKey),
                   eak,
                   options.noteType,
                   encFields,
@@ -2091,8 +2711,8 @@ public class Client {
                   clientId.toString(),
                   Platform.crypto.suite().toString(),
                   encodeURL(recipientSigningKey),
-                  encodeURL(Platform.crypto.getPublicSigningKey(writerSigningKey)),
-                  encodeURL(Platform.crypto.getPublicKey(privateEncryptionKey)),
+                  encodeURL(publicSigningKey),
+                  encodeURL(publicEncryptionKey),
                   eak,
                   options.noteType,
                   encFields,
@@ -2120,25 +2740,142 @@ public class Client {
   }
 
   protected static StorageV2API getAnonymousNoteClient(byte[] privateSigningKey, byte[] publicSigningKey, URI host, Map<String, String> additionalHeaders, CertificatePinner certificatePinner) throws E3DBCryptoException {
-    additionalHeaders = additionalHeaders != null ? additionalHeaders : new HashMap<String, String>();
-    OkHttpClient.Builder tsv1ClientBuilder = enableTLSv12(new OkHttpClient.Builder()
-            .addInterceptor(new TSV1Interceptor(privateSigningKey, publicSigningKey, "", additionalHeaders)));
+    return anonymousNoteClients.get(privateSigningKey, publicSigningKey, host, additionalHeaders, certificatePinner);
+  }
 
-    if (certificatePinner != null) {
-      tsv1ClientBuilder.certificatePinner(certificatePinner);
-    }
+  /**
+   * Discards the note clients cached for reading anonymous notes (see
+   * {@link #readAnonymousNote(UUID, String, byte[], byte[], byte[], ResultHandler)}) and for identities,
+   * along with the signing keys they hold. Clients are otherwise discarded once unused for five minutes.
+   */
+  public static void clearAnonymousNoteClients() {
+    anonymousNoteClients.clear();
+  }
 
-    ObjectMapper mapper = new ObjectMapper()
+  /**
+   * Caches the note clients used to read and write anonymous notes, so repeated
+   * calls with the same host, keys, headers and pinner reuse one client (and the
+   * Retrofit proxy it holds).
+   *
+   * <p>All clients are derived from {@link #anonymousClient}, and so share its connection
+   * pool and dispatcher; connections (and TLS sessions) are reused across calls, even for
+   * different signing keys.
+   *
+   * <p>Each client holds a copy of the private signing key it signs with. Clients are looked up
+   * by public signing key, and only reused for a caller giving the same private key (compared
+   * by digest); those unused for {@link #IDLE_MILLIS} are discarded.
+   */
+  private static class AnonymousNoteClients {
+    private static final int MAX_CLIENTS = 32;
+    private static final long IDLE_MILLIS = 5 * 60 * 1000;
+
+    private final LinkedHashMap<Key, Cached> clients = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+        return size() > MAX_CLIENTS;
+      }
+    };
+    private final JacksonConverterFactory converterFactory = JacksonConverterFactory.create(new ObjectMapper()
             .registerModule(new Jdk8Module())
-            .registerModule(new KotlinModule());
+            .registerModule(new KotlinModule()));
 
-    Retrofit tsv1Build = new Retrofit.Builder()
-            .callbackExecutor(uiExecutor)
-            .client(tsv1ClientBuilder.build())
-            .addConverterFactory(JacksonConverterFactory.create(mapper))
-            .baseUrl(host.resolve("/").toString())
-            .build();
-    return tsv1Build.create(StorageV2API.class);
+    private static final class Cached {
+      private final StorageV2API client;
+      private final byte[] privateKeyDigest;
+      private long lastUsed;
+
+      private Cached(StorageV2API client, byte[] privateKeyDigest) {
+        this.client = client;
+        this.privateKeyDigest = privateKeyDigest;
+      }
+    }
+
+    synchronized StorageV2API get(byte[] privateSigningKey, byte[] publicSigningKey, URI host, Map<String, String> additionalHeaders, CertificatePinner certificatePinner) throws E3DBCryptoException {
+      long now = System.currentTimeMillis();
+      expire(now);
+
+      Map<String, String> headers = additionalHeaders != null ? new HashMap<>(additionalHeaders) : new HashMap<String, String>();
+      Key key = new Key(publicSigningKey, host.resolve("/").toString(), headers, certificatePinner);
+      byte[] digest = digest(privateSigningKey);
+      Cached cached = clients.get(key);
+      if (cached == null || !MessageDigest.isEqual(digest, cached.privateKeyDigest)) {
+        OkHttpClient.Builder tsv1ClientBuilder = anonymousClient.newBuilder()
+                .addInterceptor(new TSV1Interceptor(privateSigningKey, publicSigningKey, "", headers));
+
+        if (certificatePinner != null) {
+          tsv1ClientBuilder.certificatePinner(certificatePinner);
+        }
+
+        Retrofit tsv1Build = new Retrofit.Builder()
+                .callbackExecutor(uiExecutor)
+                .client(tsv1ClientBuilder.build())
+                .addConverterFactory(converterFactory)
+                .baseUrl(key.baseUrl)
+                .build();
+        cached = new Cached(tsv1Build.create(StorageV2API.class), digest);
+        clients.put(key, cached);
+      }
+      cached.lastUsed = now;
+      return cached.client;
+    }
+
+    synchronized void clear() {
+      clients.clear();
+    }
+
+    private void expire(long now) {
+      // In access order, so the least recently used come first.
+      Iterator<Cached> entries = clients.values().iterator();
+      while (entries.hasNext()) {
+        if (now - entries.next().lastUsed < IDLE_MILLIS)
+          break;
+        entries.remove();
+      }
+    }
+
+    private static byte[] digest(byte[] privateSigningKey) throws E3DBCryptoException {
+      try {
+        return MessageDigest.getInstance("SHA-256").digest(privateSigningKey);
+      } catch (NoSuchAlgorithmException e) {
+        throw new E3DBCryptoException(e);
+      }
+    }
+
+    private static class Key {
+      private final byte[] publicSigningKey;
+      private final String baseUrl;
+      private final Map<String, String> headers;
+      private final CertificatePinner certificatePinner;
+
+      private Key(byte[] publicSigningKey, String baseUrl, Map<String, String> headers, CertificatePinner certificatePinner) {
+        this.publicSigningKey = publicSigningKey.clone();
+        this.baseUrl = baseUrl;
+        this.headers = headers;
+        this.certificatePinner = certificatePinner;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Key key = (Key) o;
+
+        if (!Arrays.equals(publicSigningKey, key.publicSigningKey)) return false;
+        if (!baseUrl.equals(key.baseUrl)) return false;
+        if (!headers.equals(key.headers)) return false;
+        return certificatePinner != null ? certificatePinner.equals(key.certificatePinner) : key.certificatePinner == null;
+      }
+
+      @Override
+      public int hashCode() {
+        int result = Arrays.hashCode(publicSigningKey);
+        result = 31 * result + baseUrl.hashCode();
+        result = 31 * result + headers.hashCode();
+        result = 31 * result + (certificatePinner != null ? certificatePinner.hashCode() : 0);
+        return result;
+      }
+    }
   }
 
   /**
@@ -2300,7 +3037,7 @@ public class Client {
 
   private void internalDeleteNote(final UUID noteID, final ResultHandler<Void> handleResult) throws IllegalArgumentException {
     checkNotNull(noteID, "noteID");
-    onBackground(new Runnable() {
+    onBackground("deleteNote", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2334,12 +3071,12 @@ public class Client {
     if (plain != null && plain.size() > 0)
       checkMap(plain, "plain");
 
-    onBackground(new Runnable() {
+    onBackground("write", new Runnable() {
       @Override
       public void run() {
         try {
           final byte[] ownAK = getOwnAccessKey(type);
-          Map<String, String> encFields = encryptObject(ownAK, fields.getCleartext());
+          Map<String, String> encFields = encryptObject(crypto, ownAK, fields.getCleartext(), singleDataKey, fieldCompressionThreshold);
           Map<String, Object> meta = makeRecordMetaMap(type, plain, null);
 
           Map<String, Object> record = new HashMap<>();
@@ -2368,6 +3105,112 @@ public class Client {
   }
 
 
+  /**
+   * Write many records of the same type.
+   *
+   * <p>Equivalent to calling {@link #writeAll(String, Iterable, Map, int, BulkResultHandler)} with
+   * a default number of writes in flight.
+   *
+   * @param type          Type of the records. Cannot be {@code null} or blank.
+   * @param records       Fields of each record to write. Cannot be {@code null}.
+   * @param plain         Plaintext metadata added to every record. Can be {@code null}.
+   * @param handleResults Receives the result of each write, identified by the position of the record in {@code records}.
+   */
+  public void writeAll(final String type, final Iterable<RecordData> records, final Map<String, String> plain, final BulkResultHandler<Integer, Record> handleResults) {
+    writeAll(type, records, plain, DEFAULT_WRITES_IN_FLIGHT, handleResults);
+  }
+
+  /**
+   * Write many records of the same type.
+   *
+   * <p>The access key for {@code type} is retrieved (or created) once, records are encrypted in parallel,
+   * and at most {@code maxInFlight} writes are outstanding at any time. {@code records} is only iterated
+   * as fast as records can be written, so it may produce records lazily.
+   *
+   * <p>The result of each write is delivered to {@link BulkResultHandler#handleItem(Object, Result)} as soon as it
+   * completes, identified by the (zero-based) position of the record in {@code records}. A failed write does not
+   * stop other records from being written.
+   *
+   * @param type          Type of the records. Cannot be {@code null} or blank.
+   * @param records       Fields of each record to write. Cannot be {@code null}.
+   * @param plain         Plaintext metadata added to every record. Can be {@code null}.
+   * @param maxInFlight   Maximum number of writes outstanding at once. Must be at least 1.
+   * @param handleResults Receives the result of each write, identified by the position of the record in {@code records}.
+   */
+  public void writeAll(final String type, final Iterable<RecordData> records, final Map<String, String> plain, final int maxInFlight, final BulkResultHandler<Integer, Record> handleResults) {
+    checkNotEmpty(type, "type");
+    checkNotNull(records, "records");
+    checkNotNull(handleResults, "handleResults");
+    if (plain != null && plain.size() > 0)
+      checkMap(plain, "plain");
+    if (maxInFlight < 1)
+      throw new IllegalArgumentException("maxInFlight must be at least 1.");
+
+    onBackground("writeAll", new Runnable() {
+      @Override
+      public void run() {
+        final BulkOperation<Integer, Record> bulk = new BulkOperation<>(maxInFlight, uiExecutor, handleResults, Tracing.current());
+        try {
+          final byte[] ownAK = getOwnAccessKey(type);
+          final Map<String, Object> meta = makeRecordMetaMap(type, plain, null);
+          int index = 0;
+          for (final RecordData fields : records) {
+            final int item = index++;
+            bulk.begin();
+            cryptoExecutor.execute(Tracing.propagate(new Runnable() {
+              @Override
+              public void run() {
+                writeOne(bulk, item, ownAK, meta, fields);
+              }
+            }));
+          }
+          bulk.done();
+        } catch (final Throwable e) {
+          bulk.abort(e);
+        }
+      }
+    });
+  }
+
+  private void writeOne(final BulkOperation<Integer, Record> bulk, final Integer item, byte[] ownAK, Map<String, Object> meta, RecordData fields) {
+    final Call<ResponseBody> call;
+    final Map<String, String> cleartext;
+    try {
+      if (fields == null)
+        throw new IllegalArgumentException("fields: cannot be null.");
+
+      cleartext = fields.getCleartext();
+      Map<String, Object> record = new HashMap<>();
+      record.put("meta", meta);
+      record.put("data", encryptObject(crypto, ownAK, cleartext, singleDataKey, fieldCompressionThreshold));
+      call = storageClient.writeRecord(RequestBody.create(APPLICATION_JSON, mapper.writeValueAsString(record)));
+    } catch (Throwable e) {
+      bulk.failed(item, e);
+      return;
+    }
+
+    // Retrofit would deliver the response on uiExecutor (the main thread, on Android); reading it
+    // on a bulk thread keeps the main thread, and the writes waiting for this one, free.
+    bulkExecutor.execute(Tracing.propagate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          retrofit2.Response<ResponseBody> response = call.execute();
+          if (response.code() == 201) {
+            // The record written holds the same data we encrypted, so there's no need to decrypt it again.
+            JsonNode result = mapper.readTree(response.body().string());
+            bulk.succeeded(item, new R(cleartext, R.getRecordMeta(result.get("meta"))));
+          } else {
+            bulk.failed(item, E3DBException.find(response.code(), response.message()));
+          }
+        } catch (Throwable e) {
+          bulk.failed(item, e);
+        }
+      }
+    }));
+  }
+
+
   /**
    * Replace the given record with new data and plaintext metadata.
    *
@@ -2396,13 +3239,13 @@ public class Client {
     if (plain != null && plain.size() > 0)
       checkMap(plain, "plain");
 
-    onBackground(new Runnable() {
+    onBackground("update", new Runnable() {
       @Override
       public void run() {
         try {
           UUID id = updateMeta.getRecordId();
           final byte[] ownAK = getOwnAccessKey(updateMeta.getType());
-          Map<String, String> encFields = encryptObject(ownAK, fields.getCleartext());
+          Map<String, String> encFields = encryptObject(crypto, ownAK, fields.getCleartext(), singleDataKey, fieldCompressionThreshold);
           Map<String, Object> meta = makeRecordMetaMap(updateMeta.getType(), plain, null);
 
           Map<String, Object> fields = new HashMap<>();
@@ -2442,7 +3285,7 @@ public class Client {
     checkNotNull(recordId, "recordId");
     checkNotEmpty(version, "version");
 
-    onBackground(new Runnable() {
+    onBackground("delete", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2469,8 +3312,24 @@ public class Client {
    * @param handleResult If successful, return the record read.
    */
   public void read(final UUID recordId, final ResultHandler<Record> handleResult) {
+    read(recordId, null, handleResult);
+  }
+
+  /**
+   * Read some fields of a record.
+   *
+   * <p>Only the requested fields are decrypted; other fields are skipped while the response is
+   * parsed. This saves considerable time and memory when only a few fields of large records are needed.
+   *
+   * @param recordId     ID of the record to read.
+   * @param fields       Names of the fields to read. If {@code null}, all fields are read. Requested fields
+   *                     that the record does not have are omitted from {@link Record#data()}.
+   * @param handleResult If successful, return the record read.
+   */
+  public void read(final UUID recordId, Collection<String> fields, final ResultHandler<Record> handleResult) {
     checkNotNull(recordId, "recordId");
-    onBackground(new Runnable() {
+    final Set<String> projection = fields == null ? null : new HashSet<>(fields);
+    onBackground("read", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2483,7 +3342,7 @@ public class Client {
             return;
           }
 
-          JsonNode result = mapper.readTree(response.body().string());
+          JsonNode result = readTree(response.body(), projection);
           JsonNode meta = result.get("meta");
           EAKEntry eak = getEAK(UUID.fromString(meta.get("writer_id").asText()),
                   UUID.fromString(meta.get("user_id").asText()),
@@ -2495,7 +3354,53 @@ public class Client {
           }
 
           uiValue(handleResult,
-                  makeR(eak.ak, meta, result.get("data"), null, null));
+                  makeR(eak.ak, meta, result.get("data"), decryptLazily));
+        } catch (final Throwable e) {
+          uiError(handleResult, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Read a set of records.
+   *
+   * <p>Record IDs are sent to E3DB in batches, so reading many records takes far fewer requests
+   * than calling {@link #read(UUID, ResultHandler)} for each one. The access key for each distinct
+   * writer, user and record type is only retrieved once, and records are decrypted in parallel.
+   *
+   * @param recordIds    IDs of the records to read. Cannot be {@code null}, or contain {@code null}. Duplicate
+   *                     IDs are only read once.
+   * @param handleResult If successful, returns the records read, in the order their IDs were given. IDs with no
+   *                     record (such as those of deleted records) are omitted from the list. If the client cannot read
+   *                     one of the records, an {@link E3DBUnauthorizedException} is returned instead.
+   */
+  public void readMany(final Collection<UUID> recordIds, final ResultHandler<List<Record>> handleResult) {
+    readMany(recordIds, null, handleResult);
+  }
+
+  /**
+   * Read some fields of a set of records.
+   *
+   * <p>Behaves like {@link #readMany(Collection, ResultHandler)}, but only the requested fields are
+   * decrypted; see {@link #read(UUID, Collection, ResultHandler)}.
+   *
+   * @param recordIds    IDs of the records to read. Cannot be {@code null}, or contain {@code null}.
+   * @param fields       Names of the fields to read. If {@code null}, all fields are read.
+   * @param handleResult If successful, returns the records read, in the order their IDs were given.
+   */
+  public void readMany(final Collection<UUID> recordIds, Collection<String> fields, final ResultHandler<List<Record>> handleResult) {
+    checkNotNull(recordIds, "recordIds");
+    for (UUID recordId : recordIds)
+      checkNotNull(recordId, "recordId");
+
+    final List<UUID> uniqueIds = new ArrayList<>(new LinkedHashSet<>(recordIds));
+    final Set<String> projection = fields == null ? null : new HashSet<>(fields);
+    onBackground("readMany", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          uiValue(handleResult, doReadMany(uniqueIds, projection));
         } catch (final Throwable e) {
           uiError(handleResult, e);
         }
@@ -2503,6 +3408,82 @@ public class Client {
     });
   }
 
+  /**
+   * Reads the records with the given IDs in one request, adding them to {@code results}. E3DB fails the
+   * whole request if any of the records does not exist, so then the batch is split in two and each half
+   * read again, until the missing records are isolated and left out.
+   */
+  private void readBatch(List<UUID> batch, Set<String> fields, List<JsonNode> results) throws IOException, E3DBException {
+    StringBuilder ids = new StringBuilder();
+    for (UUID id : batch) {
+      if (ids.length() > 0)
+        ids.append(",");
+      ids.append(id.toString());
+    }
+
+    final retrofit2.Response<ResponseBody> response = storageClient.getRecord(ids.toString()).execute();
+    if (response.code() == 404) {
+      if (response.errorBody() != null)
+        response.errorBody().close();
+      if (batch.size() > 1) {
+        int half = batch.size() / 2;
+        readBatch(batch.subList(0, half), fields, results);
+        readBatch(batch.subList(half, batch.size()), fields, results);
+      }
+      return;
+    }
+    if (response.code() != 200)
+      throw E3DBException.find(response.code(), response.message());
+
+    JsonNode result = readTree(response.body(), fields);
+    if (result.isArray()) {
+      for (JsonNode record : result)
+        results.add(record);
+    } else {
+      results.add(result);
+    }
+  }
+
+  private List<Record> doReadMany(List<UUID> recordIds, Set<String> fields) throws Exception {
+    List<JsonNode> results = new ArrayList<>(recordIds.size());
+    for (int start = 0; start < recordIds.size(); start += READ_MANY_BATCH_SIZE)
+      readBatch(recordIds.subList(start, Math.min(recordIds.size(), start + READ_MANY_BATCH_SIZE)), fields, results);
+
+    Map<EAKCacheKey, EAKEntry> eaks = new HashMap<>();
+    List<Callable<Record>> decrypts = new ArrayList<>(results.size());
+    for (final JsonNode result : results) {
+      final JsonNode meta = result.get("meta");
+      EAKCacheKey cacheKey = EAKCacheKey.fromRawMeta(meta);
+      EAKEntry eak = eaks.get(cacheKey);
+      if (eak == null) {
+        eak = getEAK(cacheKey.writerId, cacheKey.userId, clientId, cacheKey.type);
+        if (eak == null)
+          throw new E3DBUnauthorizedException("Can't read records of type " + cacheKey.type);
+        eaks.put(cacheKey, eak);
+      }
+
+      final byte[] ak = eak.ak;
+      decrypts.add(new Callable<Record>() {
+        @Override
+        public Record call() throws Exception {
+          return makeR(ak, meta, result.get("data"), decryptLazily);
+        }
+      });
+    }
+
+    Map<UUID, Record> byId = new HashMap<>();
+    for (Record record : inParallel(decrypts))
+      byId.put(record.meta().recordId(), record);
+
+    List<Record> records = new ArrayList<>(byId.size());
+    for (UUID recordId : recordIds) {
+      Record record = byId.get(recordId);
+      if (record != null)
+        records.add(record);
+    }
+    return records;
+  }
+
   /**
    * Get a list of records matching some criteria.
    *
@@ -2518,7 +3499,7 @@ public class Client {
   public void query(final QueryParams params, final ResultHandler<QueryResponse> handleResult) {
     checkNotNull(params, "params");
 
-    onBackground(new Runnable() {
+    onBackground("query", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2545,7 +3526,7 @@ public class Client {
    */
   public void search(final SearchRequest params, final ResultHandler<SearchResponse> handleResult) {
     checkNotNull(params, "params");
-    onBackground(() -> {
+    onBackground("search", () -> {
       try {
         SearchResponse searchResponse = doSearchV2Request(params);
         uiValue(handleResult, searchResponse);
@@ -2557,6 +3538,119 @@ public class Client {
     });
   }
 
+  /**
+   * Get the records matching some criteria that have been created or modified since the given cursor.
+   *
+   * <p>Each sync searches for records modified after the cursor, pages through all the results, and returns
+   * the records in the order they were last modified, along with a cursor from which to continue. Store the
+   * cursor (see {@link SyncCursor#encode()}) to continue syncing after the application restarts. Each version
+   * of a record is returned at most once, even when it appears on more than one page or in more than one sync.
+   *
+   * <p>Deleted records are not reported, as search does not find them.
+   *
+   * @param cursor       Where to continue from. Use {@link SyncCursor#start()} to get every matching record.
+   * @param query        The criteria to filter records by. Any range and next token it has are replaced. Use a
+   *                     limit to set how many records are requested per page.
+   * @param handleResult If successful, returns the changed records and the cursor to continue from.
+   */
+  public void sync(final SyncCursor cursor, final SearchRequest query, final ResultHandler<SyncResponse> handleResult) {
+    checkNotNull(cursor, "cursor");
+    checkNotNull(query, "query");
+    onBackground("sync", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          uiValue(handleResult, doSync(cursor, query));
+        } catch (final Throwable e) {
+          uiError(handleResult, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Sync continuously, repeating {@link #sync(SyncCursor, SearchRequest, ResultHandler)} from the cursor each
+   * sync returns until stopped.
+   *
+   * <p>The handler is called with each sync that returns records, and with each error. After an error, syncing
+   * retries from the same cursor at the next poll. Syncs run on a thread of their own, one at a time.
+   *
+   * @param cursor             Where to start from.
+   * @param query              The criteria to filter records by (see {@link #sync(SyncCursor, SearchRequest, ResultHandler)}).
+   * @param pollIntervalMillis Time to wait between syncs. Must be positive.
+   * @param handleResult       Called with the records changed by each sync, and with any errors.
+   * @return Closing this stops syncing. A sync in progress is abandoned and its result not delivered.
+   */
+  public Closeable syncContinuously(final SyncCursor cursor, final SearchRequest query, final long pollIntervalMillis, final ResultHandler<SyncResponse> handleResult) {
+    checkNotNull(cursor, "cursor");
+    checkNotNull(query, "query");
+    checkNotNull(handleResult, "handleResult");
+    if (pollIntervalMillis <= 0)
+      throw new IllegalArgumentException("pollIntervalMillis must be positive.");
+
+    final Thread poller = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        SyncCursor current = cursor;
+        while (!Thread.currentThread().isInterrupted()) {
+          try {
+            SyncResponse changes = doSync(current, query);
+            if (Thread.currentThread().isInterrupted())
+              return;
+            current = changes.cursor();
+            if (!changes.records().isEmpty())
+              uiValue(handleResult, changes);
+          } catch (final Throwable e) {
+            if (Thread.currentThread().isInterrupted())
+              return;
+            uiError(handleResult, e);
+          }
+
+          try {
+            Thread.sleep(pollIntervalMillis);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, "E3DB sync");
+    poller.setDaemon(true);
+    poller.start();
+
+    return new Closeable() {
+      @Override
+      public void close() {
+        poller.interrupt();
+      }
+    };
+  }
+
+  private SyncResponse doSync(SyncCursor cursor, SearchRequest query) throws IOException, E3DBException, E3DBDecryptionException, ParseException {
+    Date searchFrom = cursor.searchFrom();
+    SearchRequestBuilder builder = query.buildOn()
+      .setRange(searchFrom == null ? null : new SearchRequest.SearchRange(SearchRequest.SearchRangeType.MODIFIED, searchFrom, null));
+
+    SyncCursor.Progress progress = cursor.progress(System.currentTimeMillis());
+    List<Record> changed = new ArrayList<>();
+    long nextToken = 0;
+    do {
+      SearchResponse page = doSearchV2Request(builder.setNextToken(nextToken).build());
+      for (Record record : page.records()) {
+        if (progress.add(record.meta()))
+          changed.add(record);
+      }
+      nextToken = page.records().isEmpty() ? 0 : page.last();
+    } while (nextToken != 0);
+
+    Collections.sort(changed, new Comparator<Record>() {
+      @Override
+      public int compare(Record a, Record b) {
+        return a.meta().lastModified().compareTo(b.meta().lastModified());
+      }
+    });
+    return new SyncR(Collections.unmodifiableList(changed), progress.cursor());
+  }
+
   /**
    * Share records written by the given writer with the given reader.
    *
@@ -2631,6 +3725,158 @@ public class Client {
     revoking(type, writerId.getWriterId(), readerId, handleResult);
   }
 
+  /**
+   * Give many clients the ability to read records of many types.
+   *
+   * <p>Equivalent to calling {@link #shareAll(Collection, Collection, int, BulkResultHandler)} with
+   * a default number of shares in flight.
+   *
+   * @param types         The types of records to grant access to. Cannot be {@code null}.
+   * @param readerIds     IDs of clients which will be allowed to read the records. Cannot be {@code null}.
+   * @param handleResults Receives the result of sharing each type with each reader.
+   */
+  public void shareAll(final Collection<String> types, final Collection<UUID> readerIds, final BulkResultHandler<SharePair, Void> handleResults) {
+    shareAll(types, readerIds, DEFAULT_SHARES_IN_FLIGHT, handleResults);
+  }
+
+  /**
+   * Give many clients the ability to read records of many types.
+   *
+   * <p>This operation gives read access for records of every type in {@code types}, written by this client,
+   * to every client in {@code readerIds}. It has the same effect as calling {@link #share(String, UUID, ResultHandler)}
+   * for each pair, but each reader's public key is looked up only once, the access key for each type is only
+   * retrieved (or created) once, and up to {@code maxInFlight} pairs are shared concurrently.
+   *
+   * <p>Duplicate types and readers are ignored. The result for each pair is delivered to
+   * {@link BulkResultHandler#handleItem(Object, Result)} as soon as it completes; a failure for one pair
+   * does not stop others from being shared.
+   *
+   * @param types         The types of records to grant access to. Cannot be {@code null}.
+   * @param readerIds     IDs of clients which will be allowed to read the records. Cannot be {@code null}.
+   * @param maxInFlight   Maximum number of pairs being shared at once. Must be at least 1.
+   * @param handleResults Receives the result of sharing each type with each reader.
+   */
+  public void shareAll(final Collection<String> types, final Collection<UUID> readerIds, final int maxInFlight, final BulkResultHandler<SharePair, Void> handleResults) {
+    final List<String> uniqueTypes = distinct(types, "types");
+    for (String type : uniqueTypes)
+      checkNotEmpty(type, "type");
+    final List<UUID> uniqueReaders = distinct(readerIds, "readerIds");
+    checkNotNull(handleResults, "handleResults");
+    if (maxInFlight < 1)
+      throw new IllegalArgumentException("maxInFlight must be at least 1.");
+
+    onBackground("shareAll", new Runnable() {
+      @Override
+      public void run() {
+        final BulkOperation<SharePair, Void> bulk = new BulkOperation<>(maxInFlight, uiExecutor, handleResults, Tracing.current());
+        final ReaderKeys readerKeys = new ReaderKeys();
+        try {
+          // Iterate by type first, so pairs in flight at the same time usually
+          // name different readers and their lookups run concurrently.
+          for (String type : uniqueTypes) {
+            byte[] typeAK = null;
+            Throwable typeError = null;
+            try {
+              typeAK = getOwnAccessKey(type);
+            } catch (Throwable e) {
+              typeError = e;
+            }
+
+            for (UUID readerId : uniqueReaders) {
+              final SharePair pair = new SharePair(type, readerId);
+              bulk.begin();
+              if (typeError != null) {
+                bulk.failed(pair, typeError);
+                continue;
+              }
+
+              final byte[] ak = typeAK;
+              bulkExecutor.execute(Tracing.propagate(new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    shareOne(pair, ak, readerKeys);
+                    bulk.succeeded(pair, null);
+                  } catch (Throwable e) {
+                    bulk.failed(pair, e);
+                  }
+                }
+              }));
+            }
+          }
+          bulk.done();
+        } catch (Throwable e) {
+          bulk.abort(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Remove permission for many clients to read records of many types.
+   *
+   * <p>Equivalent to calling {@link #revokeAll(Collection, Collection, int, BulkResultHandler)} with
+   * a default number of revocations in flight.
+   *
+   * @param types         The types of records to remove access to. Cannot be {@code null}.
+   * @param readerIds     IDs of clients to remove access from. Cannot be {@code null}.
+   * @param handleResults Receives the result of revoking each type from each reader.
+   */
+  public void revokeAll(final Collection<String> types, final Collection<UUID> readerIds, final BulkResultHandler<SharePair, Void> handleResults) {
+    revokeAll(types, readerIds, DEFAULT_SHARES_IN_FLIGHT, handleResults);
+  }
+
+  /**
+   * Remove permission for many clients to read records of many types.
+   *
+   * <p>This operation has the same effect as calling {@link #revoke(String, UUID, ResultHandler)} for every
+   * type in {@code types} and every reader in {@code readerIds}, but up to {@code maxInFlight} pairs are
+   * revoked concurrently. Duplicate types and readers are ignored.
+   *
+   * @param types         The types of records to remove access to. Cannot be {@code null}.
+   * @param readerIds     IDs of clients to remove access from. Cannot be {@code null}.
+   * @param maxInFlight   Maximum number of pairs being revoked at once. Must be at least 1.
+   * @param handleResults Receives the result of revoking each type from each reader.
+   */
+  public void revokeAll(final Collection<String> types, final Collection<UUID> readerIds, final int maxInFlight, final BulkResultHandler<SharePair, Void> handleResults) {
+    final List<String> uniqueTypes = distinct(types, "types");
+    for (String type : uniqueTypes)
+      checkNotEmpty(type, "type");
+    final List<UUID> uniqueReaders = distinct(readerIds, "readerIds");
+    checkNotNull(handleResults, "handleResults");
+    if (maxInFlight < 1)
+      throw new IllegalArgumentException("maxInFlight must be at least 1.");
+
+    onBackground("revokeAll", new Runnable() {
+      @Override
+      public void run() {
+        final BulkOperation<SharePair, Void> bulk = new BulkOperation<>(maxInFlight, uiExecutor, handleResults, Tracing.current());
+        try {
+          for (String type : uniqueTypes) {
+            for (UUID readerId : uniqueReaders) {
+              final SharePair pair = new SharePair(type, readerId);
+              bulk.begin();
+              bulkExecutor.execute(Tracing.propagate(new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    revokeOne(pair);
+                    bulk.succeeded(pair, null);
+                  } catch (Throwable e) {
+                    bulk.failed(pair, e);
+                  }
+                }
+              }));
+            }
+          }
+          bulk.done();
+        } catch (Throwable e) {
+          bulk.abort(e);
+        }
+      }
+    });
+  }
+
   /**
    * Get a list of record types shared with this client.
    *
@@ -2640,7 +3886,7 @@ public class Client {
    * @param handleResult If successful, returns a list of records types shared with this client. The resulting list may be empty but never null.
    */
   public void getIncomingSharing(final ResultHandler<List<IncomingSharingPolicy>> handleResult) {
-    onBackground(new Runnable() {
+    onBackground("getIncomingSharing", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2678,7 +3924,7 @@ public class Client {
    * @param handleResult If successful, returns a list of record types that this client has shared. The resulting list may be empty but will never be null.
    */
   public void getOutgoingSharing(final ResultHandler<List<OutgoingSharingPolicy>> handleResult) {
-    onBackground(new Runnable() {
+    onBackground("getOutgoingSharing", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2714,7 +3960,7 @@ public class Client {
    * @param handleResult Handle the LocalEAKInfo object retrieved.
    */
   public void createWriterKey(final String type, final ResultHandler<LocalEAKInfo> handleResult) {
-    onBackground(new Runnable() {
+    onBackground("createWriterKey", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2723,8 +3969,8 @@ public class Client {
                     Client.this.clientId,
                     Client.this.clientId,
                     type,
-                    Platform.crypto.getPublicKey(Client.this.privateEncryptionKey),
-                    Platform.crypto.newSecretKey(),
+                    Client.this.publicEncryptionKey,
+                    crypto.newSecretKey(),
                     Client.this.clientId,
                     Client.this.publicSigningKey);
           } catch (E3DBConflictException e) {
@@ -2752,7 +3998,7 @@ public class Client {
    * @param handleResult Handle the LocalEAKInfo object retrieved.
    */
   public void getReaderKey(final UUID writerId, final UUID userId, final String type, final ResultHandler<LocalEAKInfo> handleResult) {
-    onBackground(new Runnable() {
+    onBackground("getReaderKey", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2780,9 +4026,11 @@ public class Client {
     if (eakInfo.getSignerSigningKey() == null || eakInfo.getSignerSigningKey().isEmpty())
       throw new IllegalStateException("eakInfo cannot be used to verify the record as it has no public signing key.");
 
-    byte[] ak = decryptLocalEAKInfo(eakInfo);
+    return decryptExisting(record, eakInfo, decryptLocalEAKInfo(eakInfo));
+  }
 
-    Map<String, String> plainRecord = decryptObject(ak, record.document().data());
+  private LocalRecord decryptExisting(EncryptedRecord record, EAKInfo eakInfo, byte[] ak) throws E3DBVerificationException, E3DBDecryptionException, JsonProcessingException {
+    Map<String, String> plainRecord = decryptObject(crypto, ak, record.document().data());
 
     if (!verify(new SD<>(new LocalRecord(plainRecord, record.document().meta()),
             record.signature()), eakInfo.getSignerSigningKey()))
@@ -2791,6 +4039,179 @@ public class Client {
     return new LocalRecord(plainRecord, record.document().meta());
   }
 
+  /**
+   * Reads records from a local store and decrypts them in parallel, for {@link LocalRecordStore#readAll(Client, Collection, EAKInfo, ResultHandler)}.
+   * The access key is only decrypted once.
+   */
+  void readLocal(final LocalRecordStore store, final List<UUID> ids, final EAKInfo eakInfo, final ResultHandler<Map<UUID, LocalRecord>> handleResult) {
+    if (eakInfo.getSignerSigningKey() == null || eakInfo.getSignerSigningKey().isEmpty())
+      throw new IllegalStateException("eakInfo cannot be used to verify the record as it has no public signing key.");
+
+    onBackground("readLocal", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final byte[] ak = decryptLocalEAKInfo(eakInfo);
+          Map<UUID, LocalEncryptedRecord> encrypted = store.getAll(ids);
+          List<Callable<LocalRecord>> decrypts = new ArrayList<>(encrypted.size());
+          for (final LocalEncryptedRecord record : encrypted.values()) {
+            decrypts.add(new Callable<LocalRecord>() {
+              @Override
+              public LocalRecord call() throws Exception {
+                return decryptExisting(record, eakInfo, ak);
+              }
+            });
+          }
+
+          Map<UUID, LocalRecord> records = new LinkedHashMap<>(encrypted.size() * 2);
+          Iterator<UUID> recordIds = encrypted.keySet().iterator();
+          for (LocalRecord record : inParallel(decrypts))
+            records.put(recordIds.next(), record);
+          uiValue(handleResult, records);
+        } catch (Throwable e) {
+          uiError(handleResult, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Encrypts a record and queues it for writing, for {@link Outbox#write(String, RecordData, Map, ResultHandler)}.
+   * Runs on the outbox's thread.
+   */
+  void outboxWrite(final Outbox outbox, final String type, final RecordData fields, final Map<String, String> plain, final ResultHandler<Record> handleResult) {
+    try {
+      Map<String, String> cleartext = fields.getCleartext();
+      Map<String, Object> record = new HashMap<>();
+      record.put("meta", makeRecordMetaMap(type, plain, null));
+      record.put("data", encryptObject(crypto, getOwnAccessKey(type), cleartext, singleDataKey, fieldCompressionThreshold));
+      outbox.enqueue(new Outbox.Entry(Outbox.WRITE, null, null, mapper.writeValueAsBytes(record),
+              outboxRecordCompletion(201, null, cleartext, handleResult)));
+    } catch (Throwable e) {
+      uiError(handleResult, e);
+    }
+  }
+
+  /**
+   * Encrypts a record update and queues it, for {@link Outbox#update(UpdateMeta, RecordData, Map, ResultHandler)}.
+   * Runs on the outbox's thread.
+   */
+  void outboxUpdate(final Outbox outbox, final UpdateMeta updateMeta, final RecordData fields, final Map<String, String> plain, final ResultHandler<Record> handleResult) {
+    try {
+      Map<String, String> cleartext = fields.getCleartext();
+      Map<String, Object> record = new HashMap<>();
+      record.put("meta", makeRecordMetaMap(updateMeta.getType(), plain, null));
+      record.put("data", encryptObject(crypto, getOwnAccessKey(updateMeta.getType()), cleartext, singleDataKey, fieldCompressionThreshold));
+      outbox.enqueue(new Outbox.Entry(Outbox.UPDATE, updateMeta.getRecordId(), updateMeta.getVersion(), mapper.writeValueAsBytes(record),
+              outboxRecordCompletion(200, updateMeta, cleartext, handleResult)));
+    } catch (Throwable e) {
+      uiError(handleResult, e);
+    }
+  }
+
+  /**
+   * Handles the response to a queued write ({@code updateMeta} is null) or update.
+   */
+  private static Outbox.Completion outboxRecordCompletion(final int success, final UpdateMeta updateMeta, final Map<String, String> cleartext, final ResultHandler<Record> handleResult) {
+    return new Outbox.Completion() {
+      @Override
+      public void complete(retrofit2.Response<ResponseBody> response) {
+        try {
+          if (response.code() == success) {
+            // The record written holds the same data we encrypted, so there's no need to decrypt it again.
+            JsonNode result = mapper.readTree(response.body().string());
+            uiValue(handleResult, new R(cleartext, R.getRecordMeta(result.get("meta"))));
+          } else if (updateMeta != null && response.code() == 409) {
+            uiError(handleResult, new E3DBVersionException(updateMeta.getRecordId(), updateMeta.getVersion()));
+          } else {
+            uiError(handleResult, E3DBException.find(response.code(), response.message()));
+          }
+        } catch (Throwable e) {
+          uiError(handleResult, e);
+        }
+      }
+
+      @Override
+      public void fail(Throwable error) {
+        uiError(handleResult, error);
+      }
+    };
+  }
+
+  /**
+   * Encrypts a note and queues it for writing, for {@link Outbox#writeNote(RecordData, byte[], byte[], NoteOptions, ResultHandler)}.
+   * Runs on the outbox's thread.
+   */
+  void outboxWriteNote(final Outbox outbox, final RecordData fields, final byte[] recipientEncryptionKey, final byte[] recipientSigningKey, final NoteOptions noteOptions, final ResultHandler<Note> handleResult) {
+    final NoteOptions options = (noteOptions == null) ? new NoteOptions() : noteOptions;
+    final byte[] writerSigningKey = this.privateSigningKey;
+    try {
+      final byte[] ak = Platform.crypto.newSecretKey();
+      String eak = Platform.crypto.encryptBox(ak, recipientEncryptionKey, privateEncryptionKey).toMessage();
+      UUID signatureSalt = UUID.randomUUID();
+      String signature = signField("signature", signatureSalt.toString(), writerSigningKey);
+      Map<String, String> encFields = encryptObjectWithSignedFields(ak, writerSigningKey, signatureSalt, fields.getCleartext());
+      Note note = new Note(
+              options.noteName,
+              clientId.toString(),
+              Platform.crypto.suite().toString(),
+              encodeURL(recipientSigningKey),
+              encodeURL(publicSigningKey),
+              encodeURL(publicEncryptionKey),
+              eak,
+              options.noteType,
+              encFields,
+              options.plain,
+              options.fileMeta,
+              signature,
+              options.maxViews,
+              options.expiration,
+              options.expires,
+              options.eacp
+      );
+      outbox.enqueue(new Outbox.Entry(Outbox.NOTE, null, null, notesMapper.writeValueAsBytes(note), new Outbox.Completion() {
+        @Override
+        public void complete(retrofit2.Response<ResponseBody> response) {
+          try {
+            if (response.isSuccessful()) {
+              Note retrievedNote = notesMapper.readValue(response.body().string(), Note.class);
+              internalDecryptNoteWithAK(retrievedNote, ak, publicSigningKey);
+              uiValue(handleResult, retrievedNote);
+            } else {
+              uiError(handleResult, E3DBException.find(response.code(), response.message()));
+            }
+          } catch (Throwable e) {
+            uiError(handleResult, e);
+          }
+        }
+
+        @Override
+        public void fail(Throwable error) {
+          uiError(handleResult, error);
+        }
+      }));
+    } catch (Throwable e) {
+      uiError(handleResult, e);
+    }
+  }
+
+  /**
+   * Sends a queued operation, for {@link Outbox}, returning the response without interpreting it.
+   */
+  retrofit2.Response<ResponseBody> sendOutbox(Outbox.Entry entry) throws IOException {
+    RequestBody body = RequestBody.create(APPLICATION_JSON, entry.body);
+    switch (entry.kind) {
+      case Outbox.WRITE:
+        return storageClient.writeRecord(body).execute();
+      case Outbox.UPDATE:
+        return storageClient.updateRecord(entry.recordId.toString(), entry.version, body).execute();
+      case Outbox.NOTE:
+        return notesClient.writeNote(body).execute();
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + entry.kind);
+    }
+  }
+
   /**
    * Sign &amp; encrypt an existing record for local storage.
    *
@@ -2841,7 +4262,7 @@ public class Client {
       throw new IllegalStateException("Client must have a signing key.");
 
     return new SD<>(document, Base64.encodeURL(
-            Platform.crypto.signature(
+            crypto.signature(
                     document.toSerialized().getBytes(UTF8), this.privateSigningKey
             )
     ));
@@ -2870,7 +4291,7 @@ public class Client {
     checkNotNull(signature, "signature");
     checkNotNull(document, "document");
 
-    return Platform.crypto.verify(new Signature(Base64.decodeURL(signature)), document.toSerialized().getBytes(UTF8), Base64.decodeURL(publicSigningKey));
+    return crypto.verify(new Signature(Base64.decodeURL(signature)), document.toSerialized().getBytes(UTF8), Base64.decodeURL(publicSigningKey));
   }
 
   /**
@@ -2890,7 +4311,7 @@ public class Client {
     checkNotNull(authorizer, "authorizer");
     checkNotEmpty(recordType, "recordType");
 
-    onBackground(new Runnable() {
+    onBackground("addAuthorizer", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2932,7 +4353,7 @@ public class Client {
    */
   public void removeAuthorizer(final UUID authorizer, final ResultHandler<Void> handler) {
     checkNotNull(authorizer, "authorizer");
-    onBackground(new Runnable() {
+    onBackground("removeAuthorizer", new Runnable() {
       @Override
       public void run() {
         try {
@@ -2968,7 +4389,7 @@ public class Client {
     checkNotNull(authorizer, "authorizer");
     checkNotEmpty(recordType, "recordType");
 
-    onBackground(new Runnable() {
+    onBackground("removeAuthorizer", new Runnable() {
       @Override
       public void run() {
         try {
@@ -3000,7 +4421,7 @@ public class Client {
    * @param handler Handles result of the call.
    */
   public void getAuthorizers(final ResultHandler<List<AuthorizerPolicy>> handler) {
-    onBackground(new Runnable() {
+    onBackground("getAuthorizers", new Runnable() {
       @Override
       public void run() {
         try {
@@ -3028,7 +4449,7 @@ public class Client {
    * @param handler Handles result of the call.
    */
   public void getAuthorizedBy(final ResultHandler<List<AuthorizerPolicy>> handler) {
-    onBackground(new Runnable() {
+    onBackground("getAuthorizedBy", new Runnable() {
       @Override
       public void run() {
         try {
@@ -23,9 +23,11 @@ package com.tozny.e3db;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.CertificatePinner;
 import okio.ByteString;
@@ -60,6 +62,14 @@ public class ClientBuilder {
   private CertificatePinner certificatePinner = null;
   private byte[] privateKey;
   private byte[] privateSigningKey;
+  private int clientInfoCacheSize = Client.DEFAULT_CLIENT_INFO_CACHE_SIZE;
+  private long clientInfoCacheTtlMillis = 0;
+  private boolean decryptLazily = false;
+  private boolean singleDataKey = false;
+  private int fieldCompressionThreshold = 0;
+  private File fileTempDirectory = null;
+  private ClientMetrics metrics = null;
+  private Tracer tracer = null;
 
   public ClientBuilder() {
   }
@@ -180,6 +190,144 @@ public class ClientBuilder {
     return this;
   }
 
+  /**
+   * Configure how many other clients' public keys are cached by this instance.
+   *
+   * <p>Public keys looked up while sharing are cached, so repeated operations involving the
+   * same client do not need to look the keys up again. Defaults to 256; use 0 to disable the cache.
+   *
+   * @param maxEntries Maximum number of clients to cache.
+   * @return This instance.
+   */
+  public ClientBuilder setClientInfoCacheSize(int maxEntries) {
+    if (maxEntries < 0)
+      throw new IllegalArgumentException("maxEntries cannot be negative.");
+    this.clientInfoCacheSize = maxEntries;
+    return this;
+  }
+
+  /**
+   * Configure how long other clients' public keys are cached by this instance.
+   *
+   * <p>Not normally necessary, as public keys rarely change; by default, cached keys do not expire.
+   * See also {@link Client#invalidateClientInfo(UUID)}.
+   *
+   * @param duration How long each entry remains cached. Use 0 for no expiry. Cached entries are timed in
+   *                 milliseconds; shorter durations are rounded up to one.
+   * @param unit     Unit of {@code duration}.
+   * @return This instance.
+   */
+  public ClientBuilder setClientInfoCacheTtl(long duration, TimeUnit unit) {
+    checkNotNull(unit, "unit");
+    if (duration < 0)
+      throw new IllegalArgumentException("duration cannot be negative.");
+    // 0 means no expiry, so a positive TTL must not round down to it.
+    this.clientInfoCacheTtlMillis = duration > 0 ? Math.max(1, unit.toMillis(duration)) : 0;
+    return this;
+  }
+
+  /**
+   * Configure whether records returned by {@code read}, {@code readMany}, {@code query} and {@code search}
+   * decrypt their fields up front (the default) or as each field is first read from {@link Record#data()}.
+   *
+   * <p>Lazy decryption saves work when callers only look at some fields of wide records. The returned data
+   * is read-only, and because {@code Map} methods cannot throw checked exceptions, a field that fails to
+   * decrypt throws an {@code IllegalStateException} when it is read instead of failing the whole operation.
+   *
+   * @param decryptLazily {@code true} to decrypt fields on first access.
+   * @return This instance.
+   */
+  public ClientBuilder setDecryptLazily(boolean decryptLazily) {
+    this.decryptLazily = decryptLazily;
+    return this;
+  }
+
+  /**
+   * Configure whether records written by this client use one data key for the whole record, rather than
+   * one per field (the default).
+   *
+   * <p>With one data key, a record with many fields is noticeably faster to encrypt and decrypt, and smaller,
+   * as the key is generated, encrypted and stored only once. Fields are still encrypted individually, with
+   * their own nonces. Records in this format carry an extra {@code _e3db_record_key} data field, so cannot have a
+   * field of their own by that name, and can only be read by clients that support it (this client reads both
+   * formats regardless of this setting).
+   *
+   * @param singleDataKey {@code true} to write records with one data key.
+   * @return This instance.
+   */
+  public ClientBuilder setSingleDataKeyPerRecord(boolean singleDataKey) {
+    this.singleDataKey = singleDataKey;
+    return this;
+  }
+
+  /**
+   * Configure records written by this client to have the value of each field compressed before it is
+   * encrypted, if the value is at least {@code threshold} bytes long (as UTF-8) and compression makes it
+   * smaller. By default, no field is compressed.
+   *
+   * <p>Large text and JSON values typically shrink several times over, reducing the size of records sent and
+   * stored. Small values gain little, and pay the cost of compression on every write and read, so the
+   * threshold should be at least a few kilobytes. Compressed fields are marked as such, and can only be read
+   * by clients that support them (this client reads them regardless of this setting).
+   *
+   * <p>Compressing before encrypting makes the length of the ciphertext depend on the content of the value,
+   * not just its length. Do not enable it where a field combines secret values with text an attacker can
+   * influence and observe the size of, as the change in size can reveal the secret (as in the CRIME and
+   * BREACH attacks).
+   *
+   * @param threshold Size, in bytes, from which field values are compressed. Use {@code 0} to compress no fields.
+   * @return This instance.
+   */
+  public ClientBuilder setFieldCompressionThreshold(int threshold) {
+    if (threshold < 0)
+      throw new IllegalArgumentException("threshold cannot be negative.");
+    this.fieldCompressionThreshold = threshold;
+    return this;
+  }
+
+  /**
+   * Report measurements of the client's work (queueing, HTTP calls, cryptography and caching) to the
+   * given listener. See {@link HistogramMetrics} for a ready-made implementation.
+   *
+   * <p>By default, nothing is measured.
+   *
+   * @param metrics Receives measurements. Use {@code null} to measure nothing.
+   * @return This instance.
+   */
+  public ClientBuilder setMetrics(ClientMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Configure where {@link Client#writeFile(String, File, Map, Compression, ResultHandler)} keeps the compressed
+   * copy of a file it uploads, and the encrypted copy made from that, until the upload finishes.
+   *
+   * <p>By default, both are written to the directory holding the file, as is the encrypted copy of a file uploaded
+   * without compression. The compressed copy is plaintext, so the directory should be as private as the file.
+   *
+   * @param directory Directory for temporary files. Use {@code null} for the uploaded file's own directory.
+   * @return This instance.
+   */
+  public ClientBuilder setFileTempDirectory(File directory) {
+    this.fileTempDirectory = directory;
+    return this;
+  }
+
+  /**
+   * Report a span for each operation of the client, and for the steps it takes (HTTP calls,
+   * authentication, encryption and so on), to the given tracer.
+   *
+   * <p>By default, nothing is traced.
+   *
+   * @param tracer Receives spans. Use {@code null} to trace nothing.
+   * @return This instance.
+   */
+  public ClientBuilder setTracer(Tracer tracer) {
+    this.tracer = tracer;
+    return this;
+  }
+
   /**
    * Create an E3DB Client instance based on configured parameters.
    *
@@ -187,9 +335,7 @@ public class ClientBuilder {
    */
   public Client build() throws E3DBCryptoException {
     checkState();
-    if (certificatePinner == null)
-      return new Client(apiKey, apiSecret, clientId, host, privateKey, privateSigningKey);
-    else
-      return new Client(apiKey, apiSecret, clientId, host, privateKey, privateSigningKey, certificatePinner);
+    return new Client(apiKey, apiSecret, clientId, host, privateKey, privateSigningKey, certificatePinner,
+      new ClientInfoCache(clientInfoCacheSize, clientInfoCacheTtlMillis), decryptLazily, singleDataKey, fieldCompressionThreshold, fileTempDirectory, metrics, tracer);
   }
 }
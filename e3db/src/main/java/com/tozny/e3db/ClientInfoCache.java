@@ -0,0 +1,101 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, least-recently-used cache of the public keys of other clients,
+ * as returned by {@link Client#getClientInfo(UUID)}.
+ *
+ * <p>Entries optionally expire a fixed time after they are added. All methods are
+ * thread-safe.
+ */
+class ClientInfoCache {
+  private final int maxEntries;
+  private final long ttlNanos;
+  private final LinkedHashMap<UUID, Entry> entries;
+
+  private static class Entry {
+    private final Client.ClientInfo info;
+    private final long expiresAt;
+
+    private Entry(Client.ClientInfo info, long expiresAt) {
+      this.info = info;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * @param maxEntries Maximum number of clients to hold. If 0, nothing is cached.
+   * @param ttlMillis  How long an entry remains valid after being added. If 0, entries do not expire.
+   */
+  ClientInfoCache(final int maxEntries, long ttlMillis) {
+    if (maxEntries < 0)
+      throw new IllegalArgumentException("maxEntries cannot be negative: " + maxEntries);
+    if (ttlMillis < 0)
+      throw new IllegalArgumentException("ttlMillis cannot be negative: " + ttlMillis);
+
+    this.maxEntries = maxEntries;
+    // Saturates rather than overflowing; expiry is checked by difference, so even
+    // Long.MAX_VALUE added to System.nanoTime() compares correctly.
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.entries = new LinkedHashMap<UUID, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached information for the given client, or {@code null} if
+   * the client is not cached (or its entry has expired).
+   */
+  synchronized Client.ClientInfo get(UUID clientId) {
+    Entry entry = entries.get(clientId);
+    if (entry == null)
+      return null;
+
+    if (ttlNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+      entries.remove(clientId);
+      return null;
+    }
+
+    return entry.info;
+  }
+
+  synchronized void put(UUID clientId, Client.ClientInfo info) {
+    if (maxEntries > 0)
+      entries.put(clientId, new Entry(info, System.nanoTime() + ttlNanos));
+  }
+
+  synchronized void invalidate(UUID clientId) {
+    entries.remove(clientId);
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+}
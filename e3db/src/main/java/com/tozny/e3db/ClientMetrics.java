@@ -0,0 +1,72 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+/**
+ * Receives measurements of the work done by a {@link Client}, broken down by phase, so that
+ * the time taken by an operation can be attributed to queueing, the network, cryptography or
+ * cache misses.
+ *
+ * <p>Register an implementation with {@link ClientBuilder#setMetrics(ClientMetrics)}. The
+ * {@link HistogramMetrics} class records every measurement in lock-free histograms and counters,
+ * and can be used directly or as a starting point for reporting to another metrics library.
+ *
+ * <p>Methods are called on the threads doing the work, often concurrently, so implementations
+ * must be thread-safe and should return quickly. All durations are in nanoseconds.
+ */
+public interface ClientMetrics {
+  /**
+   * Records how long an operation waited for a background thread before it started running.
+   *
+   * @param nanos Time spent queued.
+   */
+  void recordQueueWait(long nanos);
+
+  /**
+   * Records a completed (or failed) HTTP call.
+   *
+   * @param endpoint      Name of the API method called, such as {@code getRecord} or {@code getToken}. Calls that are
+   *                      not part of the E3DB API (such as file transfers) are named by HTTP method and host.
+   * @param status        HTTP status code, or -1 if no response was received.
+   * @param nanos         Time from the start of the call until the response body was read (or the call failed).
+   * @param bytesSent     Size of the request body.
+   * @param bytesReceived Size of the response body.
+   */
+  void recordHttpCall(String endpoint, int status, long nanos, long bytesSent, long bytesReceived);
+
+  /**
+   * Records a cryptographic operation.
+   *
+   * @param operation Name of the primitive, such as {@code encryptSecretBox} or {@code signature}.
+   * @param nanos     Time taken.
+   * @param bytes     Size of the input (0 if the operation has none, such as key generation).
+   */
+  void recordCrypto(String operation, long nanos, long bytes);
+
+  /**
+   * Records a lookup in one of the client's caches.
+   *
+   * @param cache Name of the cache: {@code eak} for access keys, or {@code client_info} for other clients' public keys.
+   * @param hit   {@code true} if the value was found in the cache.
+   */
+  void recordCacheAccess(String cache, boolean hit);
+}
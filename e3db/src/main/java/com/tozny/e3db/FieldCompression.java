@@ -0,0 +1,130 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the values of record fields before they are encrypted, for clients configured
+ * with {@link ClientBuilder#setFieldCompressionThreshold(int)}. Values are compressed with raw
+ * DEFLATE (no header or checksum; the ciphertext is already authenticated), and the envelope of
+ * a compressed field is marked with {@link FieldEnvelope#COMPRESSED}.
+ *
+ * <p>The envelope prefix is not covered by the ciphertext's authentication, so the compressed value
+ * also starts with {@link #MARKER}, inside the ciphertext. That byte never starts a UTF-8 value, so
+ * adding or removing the prefix is detected when the field is decrypted (see {@link #check(boolean, byte[])}).
+ */
+final class FieldCompression {
+  /**
+   * First byte of every compressed value. 0xFF does not occur in UTF-8.
+   */
+  static final byte MARKER = (byte) 0xFF;
+
+  /**
+   * Largest value that {@link #decompress(byte[])} will produce, so that a small field written by
+   * another client cannot expand to exhaust memory.
+   */
+  static final int MAX_DECOMPRESSED_SIZE = 32 * 1024 * 1024;
+
+  private FieldCompression() {
+  }
+
+  /**
+   * Compresses a value, if it is at least {@code threshold} bytes long and compression makes it smaller.
+   *
+   * @param value     The value (UTF-8).
+   * @param threshold Size below which values are not compressed. Zero means no value is compressed.
+   * @return The compressed value, starting with {@link #MARKER}, or {@code null} if it should be stored as is.
+   */
+  static byte[] compress(byte[] value, int threshold) {
+    if (threshold == 0 || value.length < threshold)
+      return null;
+
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(value);
+      deflater.finish();
+      // Anything not smaller than the value is of no use, so stop there.
+      byte[] out = new byte[value.length];
+      out[0] = MARKER;
+      int length = 1;
+      while (!deflater.finished() && length < out.length)
+        length += deflater.deflate(out, length, out.length - length);
+      if (!deflater.finished())
+        return null;
+
+      byte[] compressed = new byte[length];
+      System.arraycopy(out, 0, compressed, 0, length);
+      return compressed;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Checks that a decrypted value is compressed exactly when its envelope says so.
+   *
+   * @param compressed Whether the envelope starts with {@link FieldEnvelope#COMPRESSED}.
+   * @param value      The decrypted value.
+   * @throws E3DBDecryptionException if the envelope's prefix has been added or removed.
+   */
+  static void check(boolean compressed, byte[] value) throws E3DBDecryptionException {
+    boolean marked = value.length > 0 && value[0] == MARKER;
+    if (compressed != marked)
+      throw new E3DBDecryptionException(compressed ? "Field is marked compressed but is not." : "Compressed field is not marked.");
+  }
+
+  /**
+   * Reverses {@link #compress(byte[], int)}.
+   *
+   * @throws E3DBDecryptionException if the value is not validly compressed, or would decompress to
+   * more than {@link #MAX_DECOMPRESSED_SIZE} bytes.
+   */
+  static byte[] decompress(byte[] compressed) throws E3DBDecryptionException {
+    return decompress(compressed, MAX_DECOMPRESSED_SIZE);
+  }
+
+  static byte[] decompress(byte[] compressed, int maxSize) throws E3DBDecryptionException {
+    check(true, compressed);
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed, 1, compressed.length - 1);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(compressed.length * 4, maxSize));
+      byte[] buffer = new byte[Math.max(1024, Math.min(compressed.length * 4, 65_536))];
+      while (!inflater.finished()) {
+        int length = inflater.inflate(buffer);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          throw new E3DBDecryptionException("Compressed field is truncated.");
+        if (out.size() + length > maxSize)
+          throw new E3DBDecryptionException("Compressed field expands to more than " + maxSize + " bytes.");
+        out.write(buffer, 0, length);
+      }
+      return out.toByteArray();
+    } catch (DataFormatException e) {
+      throw new E3DBDecryptionException("Compressed field is invalid.", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+/**
+ * Reads and writes the envelope that holds each encrypted record field:
+ * {@code EDK.EDKN.EF.EFN}, where {@code EDK} is the field's data key encrypted
+ * with the access key, {@code EF} is the field encrypted with the data key, and
+ * {@code EDKN} and {@code EFN} are their nonces, all Base64URL-encoded.
+ *
+ * <p>Parsing decodes each part straight from the field into an exactly sized
+ * array, and formatting encodes all four parts into a single buffer, so no
+ * intermediate strings are created either way.
+ *
+ * <p>Envelopes of fields whose value was compressed before encryption are
+ * prefixed with {@link #COMPRESSED}. The prefix is not authenticated; the
+ * compressed value carries its own marker (see {@link FieldCompression}).
+ */
+final class FieldEnvelope {
+  /**
+   * Prefixes the envelope of a field whose value was compressed (see
+   * {@link FieldCompression}) before it was encrypted. An uncompressed envelope
+   * never starts this way, as its first part is much longer than one character.
+   */
+  static final String COMPRESSED = "z.";
+
+  private static final char[] ENCODE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+  private static final byte[] DECODE = new byte[128];
+
+  static {
+    for (int i = 0; i < DECODE.length; i++)
+      DECODE[i] = -1;
+    for (int i = 0; i < ENCODE.length; i++)
+      DECODE[ENCODE[i]] = (byte) i;
+    // Accept the standard alphabet as well, as Base64.decodeURL does.
+    DECODE['+'] = 62;
+    DECODE['/'] = 63;
+  }
+
+  /**
+   * The field's data key, encrypted with the access key.
+   */
+  final CipherWithNonce edk;
+  /**
+   * The field's value, encrypted with the data key.
+   */
+  final CipherWithNonce ef;
+
+  private FieldEnvelope(CipherWithNonce edk, CipherWithNonce ef) {
+    this.edk = edk;
+    this.ef = ef;
+  }
+
+  /**
+   * Parses an encrypted field.
+   *
+   * @param field Field to parse.
+   * @return The encrypted data key and value.
+   * @throws IllegalArgumentException if the field is not a valid envelope.
+   */
+  static FieldEnvelope parse(CharSequence field) {
+    return parse(field, 0);
+  }
+
+  /**
+   * Parses an encrypted field, from {@code start} to the end of {@code field}.
+   *
+   * @param field Field to parse.
+   * @param start Position of the first character to parse.
+   * @return The encrypted data key and value.
+   * @throws IllegalArgumentException if the field is not a valid envelope.
+   */
+  static FieldEnvelope parse(CharSequence field, int start) {
+    int length = field.length();
+    int first = indexOfDot(field, start, length);
+    int second = indexOfDot(field, first + 1, length);
+    int third = indexOfDot(field, second + 1, length);
+    if (third == length || indexOfDot(field, third + 1, length) != length)
+      throw new IllegalArgumentException("Can't decode ciphertext.");
+
+    return new FieldEnvelope(
+            new CipherWithNonce(decodeURL(field, start, first), decodeURL(field, first + 1, second)),
+            new CipherWithNonce(decodeURL(field, second + 1, third), decodeURL(field, third + 1, length)));
+  }
+
+  /**
+   * Parses a single encrypted value and its nonce ({@code C.N}), from {@code start}
+   * to the end of {@code value}. This is the form {@link CipherWithNonce#toMessage()}
+   * writes; fields of records that share one data key are stored this way.
+   *
+   * @param value Value to parse.
+   * @param start Position of the first character to parse.
+   * @return The encrypted value.
+   * @throws IllegalArgumentException if the value is not valid.
+   */
+  static CipherWithNonce parseCipher(CharSequence value, int start) {
+    int length = value.length();
+    int dot = indexOfDot(value, start, length);
+    if (dot == length || indexOfDot(value, dot + 1, length) != length)
+      throw new IllegalArgumentException("Can't decode ciphertext.");
+
+    return new CipherWithNonce(decodeURL(value, start, dot), decodeURL(value, dot + 1, length));
+  }
+
+  /**
+   * Whether {@code value}, from {@code start}, has the form read by
+   * {@link #parseCipher(CharSequence, int)}: two parts separated by a single dot.
+   * The characters of each part are not checked.
+   */
+  static boolean isCipher(CharSequence value, int start) {
+    int length = value.length();
+    int dot = indexOfDot(value, start, length);
+    return dot != length && indexOfDot(value, dot + 1, length) == length;
+  }
+
+  /**
+   * Formats a single encrypted value and its nonce. Gives the same result as
+   * {@link CipherWithNonce#toMessage()}.
+   *
+   * @param cipher The encrypted value.
+   * @return The formatted value.
+   */
+  static String format(CipherWithNonce cipher) {
+    return format("", cipher);
+  }
+
+  /**
+   * As {@link #format(CipherWithNonce)}, preceded by {@code prefix}.
+   */
+  static String format(String prefix, CipherWithNonce cipher) {
+    char[] out = new char[prefix.length() + encodedLength(cipher.getCipher().length) + encodedLength(cipher.getNonce().length) + 1];
+    prefix.getChars(0, prefix.length(), out, 0);
+    int pos = encodeURL(cipher.getCipher(), out, prefix.length());
+    out[pos++] = '.';
+    encodeURL(cipher.getNonce(), out, pos);
+    return new String(out);
+  }
+
+  /**
+   * Formats an encrypted field. Gives the same result as joining the
+   * {@link CipherWithNonce#toMessage()} of each part with a dot.
+   *
+   * @param edk The field's encrypted data key.
+   * @param ef The field's encrypted value.
+   * @return The envelope.
+   */
+  static String format(CipherWithNonce edk, CipherWithNonce ef) {
+    return format("", edk, ef);
+  }
+
+  /**
+   * As {@link #format(CipherWithNonce, CipherWithNonce)}, preceded by {@code prefix}.
+   */
+  static String format(String prefix, CipherWithNonce edk, CipherWithNonce ef) {
+    char[] out = new char[prefix.length() + encodedLength(edk.getCipher().length) + encodedLength(edk.getNonce().length)
+            + encodedLength(ef.getCipher().length) + encodedLength(ef.getNonce().length) + 3];
+    prefix.getChars(0, prefix.length(), out, 0);
+    int pos = encodeURL(edk.getCipher(), out, prefix.length());
+    out[pos++] = '.';
+    pos = encodeURL(edk.getNonce(), out, pos);
+    out[pos++] = '.';
+    pos = encodeURL(ef.getCipher(), out, pos);
+    out[pos++] = '.';
+    encodeURL(ef.getNonce(), out, pos);
+    return new String(out);
+  }
+
+  /**
+   * Number of characters needed to Base64URL-encode {@code length} bytes, without padding.
+   */
+  static int encodedLength(int length) {
+    return (length * 4 + 2) / 3;
+  }
+
+  /**
+   * Base64URL-encodes {@code src}, without padding, into {@code dst} starting at {@code pos}.
+   *
+   * @return The position in {@code dst} after the last character written.
+   */
+  static int encodeURL(byte[] src, char[] dst, int pos) {
+    return encodeURL(src, 0, src.length, dst, pos);
+  }
+
+  /**
+   * As {@link #encodeURL(byte[], char[], int)}, for {@code length} bytes of {@code src} starting at {@code offset}.
+   */
+  static int encodeURL(byte[] src, int offset, int length, char[] dst, int pos) {
+    int i = offset;
+    int whole = offset + length - length % 3;
+    while (i < whole) {
+      int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+      dst[pos++] = ENCODE[bits >>> 18];
+      dst[pos++] = ENCODE[(bits >>> 12) & 0x3f];
+      dst[pos++] = ENCODE[(bits >>> 6) & 0x3f];
+      dst[pos++] = ENCODE[bits & 0x3f];
+    }
+
+    switch (offset + length - whole) {
+      case 1: {
+        int bits = (src[i] & 0xff) << 16;
+        dst[pos++] = ENCODE[bits >>> 18];
+        dst[pos++] = ENCODE[(bits >>> 12) & 0x3f];
+        break;
+      }
+      case 2: {
+        int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+        dst[pos++] = ENCODE[bits >>> 18];
+        dst[pos++] = ENCODE[(bits >>> 12) & 0x3f];
+        dst[pos++] = ENCODE[(bits >>> 6) & 0x3f];
+        break;
+      }
+    }
+    return pos;
+  }
+
+  /**
+   * Decodes the Base64URL (or Base64) characters of {@code src} from {@code start}
+   * to {@code end}. Trailing padding is optional.
+   *
+   * @return The decoded bytes.
+   * @throws IllegalArgumentException if the range is empty or not valid Base64.
+   */
+  static byte[] decodeURL(CharSequence src, int start, int end) {
+    while (end > start && src.charAt(end - 1) == '=')
+      end--;
+    int length = end - start;
+    if (length == 0 || length % 4 == 1)
+      throw new IllegalArgumentException("Can't decode ciphertext.");
+
+    byte[] dst = new byte[length * 3 / 4];
+    decodeURL(src, start, end, dst, 0);
+    return dst;
+  }
+
+  /**
+   * Decodes the unpadded Base64URL (or Base64) characters of {@code src} from {@code start}
+   * to {@code end} into {@code dst}, starting at {@code pos}; {@code (end - start) * 3 / 4}
+   * bytes are written.
+   *
+   * @return The position in {@code dst} after the last byte written.
+   * @throws IllegalArgumentException if the range is not valid Base64.
+   */
+  static int decodeURL(CharSequence src, int start, int end, byte[] dst, int pos) {
+    int bits = 0;
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      bits = bits << 6 | decode(src.charAt(i));
+      if (++count == 4) {
+        dst[pos++] = (byte) (bits >> 16);
+        dst[pos++] = (byte) (bits >> 8);
+        dst[pos++] = (byte) bits;
+        bits = 0;
+        count = 0;
+      }
+    }
+
+    switch (count) {
+      case 1:
+        throw new IllegalArgumentException("Can't decode ciphertext.");
+      case 2:
+        dst[pos++] = (byte) (bits >> 4);
+        break;
+      case 3:
+        dst[pos++] = (byte) (bits >> 10);
+        dst[pos++] = (byte) (bits >> 2);
+        break;
+    }
+    return pos;
+  }
+
+  /**
+   * Tests if the characters of {@code src} from {@code start} to {@code end} are exactly what
+   * {@link #encodeURL(byte[], char[], int)} writes for some non-empty array: unpadded Base64URL,
+   * with any unused bits of the last character clear. Such text can be stored as the bytes it
+   * decodes to and recreated from them.
+   */
+  static boolean isCanonicalURL(CharSequence src, int start, int end) {
+    int length = end - start;
+    if (length == 0 || length % 4 == 1)
+      return false;
+
+    int last = 0;
+    for (int i = start; i < end; i++) {
+      char c = src.charAt(i);
+      if (c == '+' || c == '/')
+        return false;
+      last = c < DECODE.length ? DECODE[c] : -1;
+      if (last < 0)
+        return false;
+    }
+
+    switch (length % 4) {
+      case 2:
+        return (last & 0xf) == 0;
+      case 3:
+        return (last & 0x3) == 0;
+      default:
+        return true;
+    }
+  }
+
+  private static int decode(char c) {
+    int value = c < DECODE.length ? DECODE[c] : -1;
+    if (value < 0)
+      throw new IllegalArgumentException("Can't decode ciphertext.");
+    return value;
+  }
+
+  private static int indexOfDot(CharSequence s, int from, int end) {
+    for (int i = from; i < end; i++) {
+      if (s.charAt(i) == '.')
+        return i;
+    }
+    return end;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the plaintext of files before they are encrypted for upload, and decompresses
+ * them after they are downloaded and decrypted.
+ */
+class FileCompression {
+  // Compressibility is judged from this many samples of this size, spread evenly over the file.
+  private static final int SAMPLES = 4;
+  private static final int SAMPLE_SIZE = 64 * 1024;
+  // Compression is only chosen if it saves at least this fraction of the sampled bytes.
+  private static final double MIN_SAVING = 0.1;
+  private static final int BUFFER_SIZE = 65_536;
+
+  private FileCompression() {
+  }
+
+  /**
+   * Chooses {@link Compression#GZIP} if samples of the file compress well, and {@link Compression#RAW}
+   * otherwise (for example, for media or archives, which are already compressed).
+   */
+  static Compression choose(File file) throws IOException {
+    byte[] sample = new byte[SAMPLE_SIZE];
+    byte[] compressed = new byte[SAMPLE_SIZE];
+    long sampled = 0;
+    long saved = 0;
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long length = raf.length();
+      long stride = Math.max(SAMPLE_SIZE, length / SAMPLES);
+      for (long offset = 0; offset < length && sampled < SAMPLES * SAMPLE_SIZE; offset += stride) {
+        raf.seek(offset);
+        int read = raf.read(sample, 0, (int) Math.min(SAMPLE_SIZE, length - offset));
+        if (read <= 0)
+          break;
+
+        deflater.reset();
+        deflater.setInput(sample, 0, read);
+        deflater.finish();
+        long out = 0;
+        while (!deflater.finished())
+          out += deflater.deflate(compressed);
+        sampled += read;
+        saved += read - out;
+      }
+    } finally {
+      raf.close();
+      deflater.end();
+    }
+    return sampled > 0 && saved >= sampled * MIN_SAVING ? Compression.GZIP : Compression.RAW;
+  }
+
+  /**
+   * Writes a compressed copy of the file to a temporary file in the given directory.
+   *
+   * @return The temporary file; the caller must delete it.
+   */
+  static File compress(File file, Compression compression, File directory) throws IOException {
+    if (compression != Compression.GZIP)
+      throw new IllegalArgumentException("Unsupported compression: " + compression);
+
+    File compressed = File.createTempFile("gz-", ".bin", directory);
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        OutputStream out = new FastGZIPOutputStream(new FileOutputStream(compressed));
+        try {
+          copy(in, out);
+        } finally {
+          out.close();
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException | RuntimeException e) {
+      compressed.delete();
+      throw e;
+    }
+    return compressed;
+  }
+
+  /**
+   * Decompresses {@code file} into {@code dest}, truncating it.
+   */
+  static void decompress(File file, Compression compression, File dest) throws IOException {
+    if (compression != Compression.GZIP)
+      throw new IllegalArgumentException("Unsupported compression: " + compression);
+
+    InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+    try {
+      OutputStream out = new FileOutputStream(dest);
+      try {
+        copy(in, out);
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] bytes = new byte[BUFFER_SIZE];
+    for (int amt = in.read(bytes); amt != -1; amt = in.read(bytes)) {
+      out.write(bytes, 0, amt);
+    }
+  }
+
+  /**
+   * Writes gzip at the fastest deflate level: decompression is no slower, and most of the
+   * saving on text is kept at a fraction of the cost of the default level.
+   */
+  private static class FastGZIPOutputStream extends GZIPOutputStream {
+    FastGZIPOutputStream(OutputStream out) throws IOException {
+      super(out, BUFFER_SIZE);
+      def.setLevel(Deflater.BEST_SPEED);
+    }
+  }
+}
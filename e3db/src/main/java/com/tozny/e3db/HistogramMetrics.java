@@ -0,0 +1,288 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link ClientMetrics} that keeps a latency histogram for each phase (queue wait, each
+ * HTTP endpoint and each crypto primitive), plus counters of bytes transferred, failed calls
+ * and cache hits and misses.
+ *
+ * <p>Recording a value is a few atomic increments, with no locking or allocation once an
+ * endpoint or primitive has been seen. Histograms keep about 6% precision over their whole
+ * range, in the manner of HdrHistogram, which is precise enough for percentiles and SLOs.
+ *
+ * <p>Values accumulate for the life of the instance. Read them at any time, from any thread.
+ */
+public class HistogramMetrics implements ClientMetrics {
+  private final Histogram queueWait = new Histogram();
+  private final ConcurrentMap<String, Histogram> httpTimes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> httpFailures = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> bytesSent = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> bytesReceived = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Histogram> cryptoTimes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> cryptoBytes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> cacheHits = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicLong> cacheMisses = new ConcurrentHashMap<>();
+
+  @Override
+  public void recordQueueWait(long nanos) {
+    queueWait.record(nanos);
+  }
+
+  @Override
+  public void recordHttpCall(String endpoint, int status, long nanos, long bytesSent, long bytesReceived) {
+    histogram(httpTimes, endpoint).record(nanos);
+    counter(this.bytesSent, endpoint).addAndGet(bytesSent);
+    counter(this.bytesReceived, endpoint).addAndGet(bytesReceived);
+    if (status < 200 || status >= 300)
+      counter(httpFailures, endpoint).incrementAndGet();
+  }
+
+  @Override
+  public void recordCrypto(String operation, long nanos, long bytes) {
+    histogram(cryptoTimes, operation).record(nanos);
+    counter(cryptoBytes, operation).addAndGet(bytes);
+  }
+
+  @Override
+  public void recordCacheAccess(String cache, boolean hit) {
+    counter(hit ? cacheHits : cacheMisses, cache).incrementAndGet();
+  }
+
+  /**
+   * @return Time operations spent waiting for a background thread.
+   */
+  public Histogram queueWait() {
+    return queueWait;
+  }
+
+  /**
+   * @return Names of the HTTP endpoints called so far.
+   */
+  public Set<String> endpoints() {
+    return Collections.unmodifiableSet(httpTimes.keySet());
+  }
+
+  /**
+   * @param endpoint Endpoint name (see {@link ClientMetrics#recordHttpCall(String, int, long, long, long)}).
+   * @return Duration of calls to the endpoint, or {@code null} if it has not been called.
+   */
+  public Histogram httpTime(String endpoint) {
+    return httpTimes.get(endpoint);
+  }
+
+  /**
+   * @param endpoint Endpoint name.
+   * @return Number of calls to the endpoint that failed or returned a status other than 2xx.
+   */
+  public long httpFailures(String endpoint) {
+    return value(httpFailures, endpoint);
+  }
+
+  /**
+   * @param endpoint Endpoint name.
+   * @return Total bytes sent in request bodies to the endpoint.
+   */
+  public long bytesSent(String endpoint) {
+    return value(bytesSent, endpoint);
+  }
+
+  /**
+   * @param endpoint Endpoint name.
+   * @return Total bytes received in response bodies from the endpoint.
+   */
+  public long bytesReceived(String endpoint) {
+    return value(bytesReceived, endpoint);
+  }
+
+  /**
+   * @return Names of the crypto primitives used so far.
+   */
+  public Set<String> cryptoOperations() {
+    return Collections.unmodifiableSet(cryptoTimes.keySet());
+  }
+
+  /**
+   * @param operation Name of the primitive (see {@link ClientMetrics#recordCrypto(String, long, long)}).
+   * @return Duration of each use of the primitive, or {@code null} if it has not been used.
+   */
+  public Histogram cryptoTime(String operation) {
+    return cryptoTimes.get(operation);
+  }
+
+  /**
+   * @param operation Name of the primitive.
+   * @return Total bytes given to the primitive.
+   */
+  public long cryptoBytes(String operation) {
+    return value(cryptoBytes, operation);
+  }
+
+  /**
+   * @param cache Name of the cache (see {@link ClientMetrics#recordCacheAccess(String, boolean)}).
+   * @return Number of lookups that found a value.
+   */
+  public long cacheHits(String cache) {
+    return value(cacheHits, cache);
+  }
+
+  /**
+   * @param cache Name of the cache.
+   * @return Number of lookups that did not find a value.
+   */
+  public long cacheMisses(String cache) {
+    return value(cacheMisses, cache);
+  }
+
+  // ConcurrentMap.computeIfAbsent is not available on all supported Android versions.
+  private static Histogram histogram(ConcurrentMap<String, Histogram> histograms, String name) {
+    Histogram histogram = histograms.get(name);
+    if (histogram == null) {
+      Histogram created = new Histogram();
+      histogram = histograms.putIfAbsent(name, created);
+      if (histogram == null)
+        histogram = created;
+    }
+    return histogram;
+  }
+
+  private static AtomicLong counter(ConcurrentMap<String, AtomicLong> counters, String name) {
+    AtomicLong counter = counters.get(name);
+    if (counter == null) {
+      AtomicLong created = new AtomicLong();
+      counter = counters.putIfAbsent(name, created);
+      if (counter == null)
+        counter = created;
+    }
+    return counter;
+  }
+
+  private static long value(ConcurrentMap<String, AtomicLong> counters, String name) {
+    AtomicLong counter = counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  /**
+   * A concurrent histogram of non-negative values, with buckets whose width grows with
+   * their value: values below 16 are counted exactly, and above that each power of two
+   * is split into 16 buckets.
+   */
+  public static final class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    Histogram() {
+    }
+
+    void record(long value) {
+      if (value < 0)
+        value = 0;
+      counts.incrementAndGet(bucket(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value))
+        current = max.get();
+    }
+
+    /**
+     * @return Number of values recorded.
+     */
+    public long count() {
+      return count.get();
+    }
+
+    /**
+     * @return Largest value recorded, or 0 if none have been.
+     */
+    public long max() {
+      return max.get();
+    }
+
+    /**
+     * @return Mean of the values recorded, or 0 if none have been.
+     */
+    public double mean() {
+      long n = count.get();
+      return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Gives the value below which the given percentage of recorded values fall.
+     * The result is the upper end of the bucket holding that value, so it may
+     * exceed the exact value by the bucket's width (but never the maximum).
+     *
+     * @param percentile Between 0 and 100, such as 99.9.
+     * @return The value at the percentile, or 0 if nothing has been recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100)
+        throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+
+      long total = 0;
+      long[] snapshot = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        snapshot[i] = counts.get(i);
+        total += snapshot[i];
+      }
+      if (total == 0)
+        return 0;
+
+      long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += snapshot[i];
+        if (seen >= target)
+          return Math.min(max.get(), i + 1 < BUCKETS ? lowestValue(i + 1) - 1 : Long.MAX_VALUE);
+      }
+      return max.get();
+    }
+
+    static int bucket(long value) {
+      if (value < SUB_BUCKETS)
+        return (int) value;
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowestValue(int bucket) {
+      if (bucket < SUB_BUCKETS)
+        return bucket;
+      int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      return (long) (SUB_BUCKETS | bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+  }
+}
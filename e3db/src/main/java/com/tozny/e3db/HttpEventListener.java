@@ -0,0 +1,221 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/**
+ * Follows a single HTTP call, from when it starts until its response body has been read.
+ * Reports the call to a {@link ClientMetrics} and as a Flight Recorder event once it ends, and
+ * traces it (with DNS, connect, TLS and time-to-first-byte children) under the span active when
+ * the call started.
+ */
+final class HttpEventListener extends EventListener {
+  // Span of each call being traced, for interceptors of calls that are enqueued rather than
+  // executed, which run on OkHttp's threads with no span active.
+  private static final Map<Call, Tracing> spans = Collections.synchronizedMap(new WeakHashMap<Call, Tracing>());
+
+  private final ClientMetrics metrics;
+  private final Tracing span;
+  // Flight Recorder event, if one is being recorded.
+  private final Object event;
+  private final long start = System.nanoTime();
+  private long bytesSent = 0;
+  private long bytesReceived = 0;
+  private int status = -1;
+  private Tracing dns = Tracing.NONE;
+  private Tracing connect = Tracing.NONE;
+  private Tracing tls = Tracing.NONE;
+  private Tracing ttfb = Tracing.NONE;
+
+  private HttpEventListener(ClientMetrics metrics, Tracing span, Object event) {
+    this.metrics = metrics;
+    this.span = span;
+    this.event = event;
+  }
+
+  /**
+   * Creates a listener for every call made by an {@code OkHttpClient}.
+   *
+   * @param metrics May be {@code null}, if calls need only be traced.
+   */
+  static EventListener.Factory factory(final ClientMetrics metrics) {
+    return new EventListener.Factory() {
+      @Override
+      public EventListener create(Call call) {
+        Object event = Platform.flightRecorder ? FlightRecorderEvents.beginStorageCall() : null;
+        if (metrics == null && event == null && Tracing.current() == Tracing.NONE)
+          return EventListener.NONE;
+
+        Tracing span = Tracing.startChild("http " + endpoint(call.request()));
+        span.setAttribute("http.method", call.request().method());
+        span.setAttribute("http.host", call.request().url().host());
+        if (span != Tracing.NONE)
+          spans.put(call, span);
+        return new HttpEventListener(metrics, span, event);
+      }
+    };
+  }
+
+  /**
+   * Starts a child of the span active on this thread or, if there is none (as in an interceptor of
+   * an enqueued call), of the call's own span.
+   */
+  static Tracing startChild(Call call, String name) {
+    Tracing parent = Tracing.current();
+    if (parent == Tracing.NONE) {
+      Tracing span = spans.get(call);
+      if (span != null)
+        parent = span;
+    }
+    return parent.child(name);
+  }
+
+  /**
+   * Names the endpoint a request was made to: the Retrofit API method that made it, if any,
+   * otherwise its HTTP method and host (never the path, which would usually contain IDs).
+   */
+  static String endpoint(Request request) {
+    Invocation invocation = request.tag(Invocation.class);
+    if (invocation != null)
+      return invocation.method().getName();
+    return request.method() + " " + request.url().host();
+  }
+
+  @Override
+  public void dnsStart(Call call, String domainName) {
+    dns = span.child("dns");
+  }
+
+  @Override
+  public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+    dns = finish(dns);
+  }
+
+  @Override
+  public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+    connect = span.child("connect");
+  }
+
+  @Override
+  public void secureConnectStart(Call call) {
+    tls = connect.child("tls");
+  }
+
+  @Override
+  public void secureConnectEnd(Call call, Handshake handshake) {
+    if (handshake != null)
+      tls.setAttribute("tls.version", handshake.tlsVersion().javaName());
+    tls = finish(tls);
+  }
+
+  @Override
+  public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+    connect = finish(connect);
+  }
+
+  @Override
+  public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+    tls = finish(tls);
+    connect.setError(ioe);
+    connect = finish(connect);
+  }
+
+  @Override
+  public void requestHeadersEnd(Call call, Request request) {
+    // Time to first byte is measured from the end of the request, body included.
+    if (request.body() == null)
+      ttfb = span.child("ttfb");
+  }
+
+  @Override
+  public void requestBodyEnd(Call call, long byteCount) {
+    bytesSent += byteCount;
+    ttfb = span.child("ttfb");
+  }
+
+  @Override
+  public void responseHeadersStart(Call call) {
+    ttfb = finish(ttfb);
+  }
+
+  @Override
+  public void responseHeadersEnd(Call call, Response response) {
+    status = response.code();
+  }
+
+  @Override
+  public void responseBodyEnd(Call call, long byteCount) {
+    bytesReceived += byteCount;
+  }
+
+  @Override
+  public void callEnd(Call call) {
+    end(call, null);
+  }
+
+  @Override
+  public void callFailed(Call call, IOException ioe) {
+    end(call, ioe);
+  }
+
+  private void end(Call call, IOException error) {
+    dns = finish(dns);
+    tls = finish(tls);
+    connect = finish(connect);
+    ttfb = finish(ttfb);
+
+    long nanos = System.nanoTime() - start;
+    if (metrics != null)
+      metrics.recordHttpCall(endpoint(call.request()), status, nanos, bytesSent, bytesReceived);
+    if (event != null)
+      FlightRecorderEvents.endStorageCall(event, endpoint(call.request()), status, bytesSent, bytesReceived);
+
+    span.setAttribute("http.status_code", status);
+    span.setAttribute("http.request_bytes", bytesSent);
+    span.setAttribute("http.response_bytes", bytesReceived);
+    if (error != null)
+      span.setError(error);
+    span.end();
+    spans.remove(call);
+  }
+
+  private static Tracing finish(Tracing child) {
+    child.end();
+    return Tracing.NONE;
+  }
+}
@@ -13,12 +13,20 @@ import java.util.*
 
 open class PartialIdentityClient @JvmOverloads constructor(val client: Client, val identityConfig: IdentityConfig, certificatePinner: CertificatePinner? = null) {
   fun updatePassword(currentPassword: String, newPassword: String, resultHandler: ResultHandler<Void>) {
-    Client.backgroundExecutor.run {
+    Client.backgroundExecutor.execute {
       try {
-        when (validatePassword(currentPassword)) {
+        // IdentityConfig.username field is optional, so the current password cannot be validated if it is null.
+        // Credentials for the current and new passwords are independent, so derive both at the same time.
+        val currentCreds = identityConfig.username?.let {
+          NoteCredentialDerivation.deriveAsync(identityConfig.realmName, it, currentPassword, CredentialType.PASSWORD)
+        }
+        val newCreds = identityConfig.username?.let {
+          NoteCredentialDerivation.deriveAsync(identityConfig.realmName, it, newPassword, CredentialType.PASSWORD)
+        }
+        when (currentCreds != null && validatePassword(currentCreds.get())) {
           false -> Client.uiExecutor.execute { resultHandler.handle(ErrorResult<Void>(E3DBException("Old password could not be validated"))) }
           true -> {
-            replacePassword(newPassword, resultHandler)
+            replacePassword(newCreds!!.get(), resultHandler)
           }
         }
       } catch (e: Exception) {
@@ -27,23 +35,14 @@ open class PartialIdentityClient @JvmOverloads constructor(val client: Client, v
     }
   }
 
-  private fun validatePassword(currentPassword: String): Boolean {
-    // IdentityConfig.username field is optional, so return false if it is null.
-    // The only execution path to replacePassword is through a successful validatePassword,
-    // so username is guaranteed to be set if it reaches replacePassword.
-    val deriveNoteCreds = identityConfig.username?.let {
-      Realm.deriveNoteCreds(identityConfig.realmName, it, currentPassword, CredentialType.PASSWORD)
-    } ?: return false
+  private fun validatePassword(deriveNoteCreds: DerivedNoteCreds): Boolean {
     val anonymousNoteClient = Client.getAnonymousNoteClient(deriveNoteCreds.signingKeys.privateKey, deriveNoteCreds.signingKeys.publicKey, identityConfig.apiURL, mapOf(), null)
     val challengeRequest = ChallengeRequest(TozIDEACPChallengeRequest(1))
     val execute = anonymousNoteClient.challengeNote(deriveNoteCreds.noteName, challengeRequest).execute()
     return execute.isSuccessful
   }
 
-  private fun replacePassword(newPassword: String, resultHandler: ResultHandler<Void>) {
-    // identityConfig.username is guaranteed to be non-null because only path to replacePassword is
-    // through validatePassword, which performs a null safety check on the field.
-    val deriveNoteCreds = Realm.deriveNoteCreds(identityConfig.realmName, identityConfig.username!!, newPassword, CredentialType.PASSWORD)
+  private fun replacePassword(deriveNoteCreds: DerivedNoteCreds, resultHandler: ResultHandler<Void>) {
     val identityConfigAsString = Realm.mapper.writeValueAsString(identityConfig)
     val storageConfig = client.config.json()
     val data = mapOf("config" to identityConfigAsString, "storage" to storageConfig)
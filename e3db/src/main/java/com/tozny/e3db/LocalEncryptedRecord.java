@@ -28,10 +28,16 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import java.io.IOException;
 import java.util.*;
 
+import static com.tozny.e3db.Checks.checkNotNull;
+
 /**
  * An implementation of {@link EncryptedRecord} that can
  * be converted to a string (using {@link #encode()}) or loaded from
  * a string (using {@link #decode(String)}.
+ *
+ * <p>Records can also be converted to a more compact binary form (using {@link #encodeBinary()}) and loaded
+ * from it (using {@link #decodeBinary(byte[])}). The two forms hold the same information: a record
+ * decoded from either can be encoded to the other.
  */
 public class LocalEncryptedRecord implements EncryptedRecord {
   private final Map<String, String> data;
@@ -134,6 +140,48 @@ public class LocalEncryptedRecord implements EncryptedRecord {
     }
   }
 
+  /**
+   * Encode a record such that it can be decoded by {@link #decodeBinary(byte[])}.
+   *
+   * <p>The binary form is smaller than the string produced by {@link #encode()}, mostly because
+   * encrypted values are stored as raw bytes rather than Base64URL text, and is faster to
+   * encode and decode.
+   *
+   * @return Encoded representation of the record.
+   */
+  public byte[] encodeBinary() {
+    return BinaryRecordEncoding.encode(this);
+  }
+
+  /**
+   * Decode bytes produced by {@link #encodeBinary()} into a {@code LocalEncryptedRecord} instance. Note that this does
+   * <b>not</b> decrypt the record.
+   *
+   * @param record Encoded record.
+   * @return The decoded record.
+   * @throws IOException If the record cannot be decoded.
+   */
+  public static LocalEncryptedRecord decodeBinary(byte[] record) throws IOException {
+    checkNotNull(record, "record");
+    return BinaryRecordEncoding.decode(record, 0, record.length);
+  }
+
+  /**
+   * As {@link #decodeBinary(byte[])}, for an encoded record held in part of an array.
+   *
+   * @param record Array holding the encoded record.
+   * @param offset Position of the first byte of the record.
+   * @param length Length of the encoded record.
+   * @return The decoded record.
+   * @throws IOException If the record cannot be decoded.
+   */
+  public static LocalEncryptedRecord decodeBinary(byte[] record, int offset, int length) throws IOException {
+    checkNotNull(record, "record");
+    if (offset < 0 || length < 0 || offset > record.length - length)
+      throw new IndexOutOfBoundsException();
+    return BinaryRecordEncoding.decode(record, offset, length);
+  }
+
   @Override
   public ClientMeta meta() {
     return meta;
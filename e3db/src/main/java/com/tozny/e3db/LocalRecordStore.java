@@ -0,0 +1,620 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import static com.tozny.e3db.Checks.*;
+
+/**
+ * Stores {@link LocalEncryptedRecord}s in a directory on the local file system, so that records
+ * can be served without a round trip to E3DB. Records remain encrypted at rest; use
+ * {@link #readAll(Client, Collection, EAKInfo, ResultHandler)} to read and decrypt them.
+ *
+ * <p>Records are appended to a log made of fixed-size, memory-mapped segment files; an in-memory
+ * index maps each record ID to the latest entry for it. Replacing or deleting a record leaves the
+ * earlier entry in place as garbage, which {@link #compact()} reclaims. Each entry is checksummed,
+ * so that when a store is opened after a crash, any partially written entry at the end of the log
+ * is ignored.
+ *
+ * <p>Writes reach the operating system immediately, so they survive the process crashing; call
+ * {@link #flush()} to also make them survive the machine crashing.
+ *
+ * <p>Records are stored in the form written by {@link LocalEncryptedRecord#encodeBinary()}.
+ *
+ * <p>Instances are thread-safe. Reads proceed concurrently; writes and compaction are serialized.
+ */
+public final class LocalRecordStore implements Closeable {
+  /**
+   * Size of segment files, unless given to {@link #open(File, int)}.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  // Entry: body length (int), CRC32 of body (int), then the body: kind (byte), record ID (two longs), payload.
+  private static final int HEADER_SIZE = 8;
+  private static final int BODY_PREFIX_SIZE = 17;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+
+  private final File directory;
+  private final int segmentSize;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  // By segment number; the last is the one being appended to.
+  private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+  private final Map<UUID, Location> index = new HashMap<>();
+  private boolean closed = false;
+
+  private static final class Segment {
+    private final int number;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    // Where the next entry goes.
+    private int end = 0;
+    // Total size of the entries that the index points to.
+    private long liveBytes = 0;
+
+    private Segment(int number, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+      this.number = number;
+      this.file = file;
+      this.raf = raf;
+      this.buffer = buffer;
+    }
+
+    private int capacity() {
+      return buffer.capacity();
+    }
+  }
+
+  private static final class Location {
+    private final Segment segment;
+    private final int offset;
+    // Of the entry, header included.
+    private final int length;
+
+    private Location(Segment segment, int offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Receives the entries of a segment, in order, during a scan.
+   */
+  private interface EntryVisitor {
+    void visit(byte kind, UUID id, int offset, int length) throws IOException;
+  }
+
+  private LocalRecordStore(File directory, int segmentSize) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Opens the store in the given directory, creating it if necessary, with {@link #DEFAULT_SEGMENT_SIZE segments of 16MB}.
+   *
+   * @param directory Directory holding the store's files. Nothing else should be kept there.
+   * @return The store.
+   * @throws IOException If the store cannot be created or read.
+   */
+  public static LocalRecordStore open(File directory) throws IOException {
+    return open(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens the store in the given directory, creating it if necessary.
+   *
+   * <p>Segments are only ever made larger than {@code segmentSize} to fit a single record. The size of
+   * segments already in the directory does not change.
+   *
+   * @param directory   Directory holding the store's files. Nothing else should be kept there.
+   * @param segmentSize Size of new segment files, in bytes. Each is mapped into memory whole.
+   * @return The store.
+   * @throws IOException If the store cannot be created or read.
+   */
+  public static LocalRecordStore open(File directory, int segmentSize) throws IOException {
+    checkNotNull(directory, "directory");
+    if (segmentSize < HEADER_SIZE + BODY_PREFIX_SIZE)
+      throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Unable to create " + directory);
+
+    LocalRecordStore store = new LocalRecordStore(directory, segmentSize);
+    try {
+      store.recover();
+    } catch (IOException | RuntimeException e) {
+      store.close();
+      throw e;
+    }
+    return store;
+  }
+
+  /**
+   * Maps every existing segment and rebuilds the index from their entries, oldest first.
+   */
+  private void recover() throws IOException {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        if (!name.endsWith(SEGMENT_SUFFIX))
+          continue;
+        try {
+          int number = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+          segments.put(number, map(number, file, 0));
+        } catch (NumberFormatException ignored) {
+        }
+      }
+    }
+
+    for (final Segment segment : segments.values()) {
+      segment.end = scan(segment, new EntryVisitor() {
+        @Override
+        public void visit(byte kind, UUID id, int offset, int length) {
+          if (kind == PUT)
+            index(id, new Location(segment, offset, length));
+          else
+            unindex(id);
+        }
+      });
+    }
+
+    if (segments.isEmpty())
+      roll(0);
+    else
+      clearTail(segments.lastEntry().getValue());
+  }
+
+  private Segment map(int number, File file, int minimumSize) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      long size = Math.max(raf.length(), minimumSize);
+      if (size > Integer.MAX_VALUE)
+        throw new IOException("Segment too large: " + file);
+      return new Segment(number, file, raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+    } catch (IOException | RuntimeException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Visits each intact entry of a segment, stopping at the first that is unwritten, incomplete
+   * or corrupt.
+   *
+   * @return The offset just after the last intact entry.
+   */
+  private static int scan(Segment segment, EntryVisitor visitor) throws IOException {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    CRC32 crc = new CRC32();
+    byte[] body = new byte[1024];
+    int offset = 0;
+    while (offset + HEADER_SIZE + BODY_PREFIX_SIZE <= buffer.capacity()) {
+      int bodyLength = buffer.getInt(offset);
+      if (bodyLength < BODY_PREFIX_SIZE || bodyLength > buffer.capacity() - offset - HEADER_SIZE)
+        break;
+
+      if (body.length < bodyLength)
+        body = new byte[Math.max(bodyLength, body.length * 2)];
+      buffer.position(offset + HEADER_SIZE);
+      buffer.get(body, 0, bodyLength);
+      crc.reset();
+      crc.update(body, 0, bodyLength);
+      byte kind = body[0];
+      if ((int) crc.getValue() != buffer.getInt(offset + 4) || (kind != PUT && kind != DELETE))
+        break;
+
+      UUID id = new UUID(buffer.getLong(offset + HEADER_SIZE + 1), buffer.getLong(offset + HEADER_SIZE + 9));
+      visitor.visit(kind, id, offset, HEADER_SIZE + bodyLength);
+      offset += HEADER_SIZE + bodyLength;
+    }
+    return offset;
+  }
+
+  /**
+   * Zeroes whatever follows the last intact entry of the segment being appended to (the remains of
+   * an interrupted write), so that it cannot be mistaken for an entry later.
+   */
+  private static void clearTail(Segment segment) {
+    ByteBuffer buffer = segment.buffer;
+    int i = segment.end;
+    for (; i + 8 <= buffer.capacity(); i += 8) {
+      if (buffer.getLong(i) != 0)
+        buffer.putLong(i, 0);
+    }
+    for (; i < buffer.capacity(); i++) {
+      if (buffer.get(i) != 0)
+        buffer.put(i, (byte) 0);
+    }
+  }
+
+  private void index(UUID id, Location location) {
+    unindex(id);
+    index.put(id, location);
+    location.segment.liveBytes += location.length;
+  }
+
+  private void unindex(UUID id) {
+    Location previous = index.remove(id);
+    if (previous != null)
+      previous.segment.liveBytes -= previous.length;
+  }
+
+  /**
+   * Starts a new segment, to which entries will be appended from now on.
+   */
+  private Segment roll(int minimumSize) throws IOException {
+    int number = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    File file = new File(directory, String.format(Locale.US, "%010d%s", number, SEGMENT_SUFFIX));
+    Segment segment = map(number, file, Math.max(segmentSize, minimumSize));
+    segments.put(number, segment);
+    return segment;
+  }
+
+  /**
+   * Appends an entry, starting a new segment if it does not fit in the current one.
+   */
+  private Location append(byte kind, UUID id, byte[] payload, int payloadOffset, int payloadLength) throws IOException {
+    int length = HEADER_SIZE + BODY_PREFIX_SIZE + payloadLength;
+    Segment segment = segments.lastEntry().getValue();
+    if (segment.capacity() - segment.end < length)
+      segment = roll(length);
+
+    byte[] prefix = new byte[BODY_PREFIX_SIZE];
+    ByteBuffer.wrap(prefix)
+        .put(kind)
+        .putLong(id.getMostSignificantBits())
+        .putLong(id.getLeastSignificantBits());
+    CRC32 crc = new CRC32();
+    crc.update(prefix);
+    crc.update(payload, payloadOffset, payloadLength);
+
+    int offset = segment.end;
+    ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(offset + HEADER_SIZE);
+    buffer.put(prefix);
+    buffer.put(payload, payloadOffset, payloadLength);
+    // The length goes last; until it is written, the entry does not exist.
+    segment.buffer.putInt(offset + 4, (int) crc.getValue());
+    segment.buffer.putInt(offset, length - HEADER_SIZE);
+    segment.end = offset + length;
+    return new Location(segment, offset, length);
+  }
+
+  private static byte[] payload(Location location) {
+    int payloadLength = location.length - HEADER_SIZE - BODY_PREFIX_SIZE;
+    byte[] payload = new byte[payloadLength];
+    ByteBuffer buffer = location.segment.buffer.duplicate();
+    buffer.position(location.offset + HEADER_SIZE + BODY_PREFIX_SIZE);
+    buffer.get(payload);
+    return payload;
+  }
+
+  private static LocalEncryptedRecord decode(byte[] payload) throws IOException {
+    return LocalEncryptedRecord.decodeBinary(payload);
+  }
+
+  private void checkOpen() {
+    if (closed)
+      throw new IllegalStateException("Store is closed.");
+  }
+
+  /**
+   * Stores a record, replacing any stored under the same ID.
+   *
+   * @param id     ID to store the record under (for example, its ID in E3DB).
+   * @param record The record.
+   * @throws IOException If the record cannot be encoded or written.
+   */
+  public void put(UUID id, LocalEncryptedRecord record) throws IOException {
+    checkNotNull(id, "id");
+    checkNotNull(record, "record");
+    byte[] payload = record.encodeBinary();
+
+    lock.writeLock().lock();
+    try {
+      checkOpen();
+      index(id, append(PUT, id, payload, 0, payload.length));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets a stored record.
+   *
+   * @param id ID the record was stored under.
+   * @return The record, or {@code null} if none is stored under the given ID.
+   * @throws IOException If the record cannot be decoded.
+   */
+  public LocalEncryptedRecord get(UUID id) throws IOException {
+    checkNotNull(id, "id");
+    byte[] payload;
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      Location location = index.get(id);
+      if (location == null)
+        return null;
+      payload = payload(location);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return decode(payload);
+  }
+
+  /**
+   * Gets stored records.
+   *
+   * @param ids IDs the records were stored under.
+   * @return The records found, by ID, in the order the IDs were given. IDs with no record stored are omitted.
+   * @throws IOException If a record cannot be decoded.
+   */
+  public Map<UUID, LocalEncryptedRecord> getAll(Collection<UUID> ids) throws IOException {
+    checkNotNull(ids, "ids");
+    Map<UUID, byte[]> payloads = new LinkedHashMap<>();
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      for (UUID id : ids) {
+        Location location = index.get(id);
+        if (location != null)
+          payloads.put(id, payload(location));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    Map<UUID, LocalEncryptedRecord> records = new LinkedHashMap<>(payloads.size() * 2);
+    for (Map.Entry<UUID, byte[]> payload : payloads.entrySet())
+      records.put(payload.getKey(), decode(payload.getValue()));
+    return records;
+  }
+
+  /**
+   * Reads stored records and decrypts them (in parallel) with the given client. Each record is
+   * verified as by {@link Client#decryptExisting(EncryptedRecord, EAKInfo)}.
+   *
+   * @param client       Client to decrypt with.
+   * @param ids          IDs the records were stored under.
+   * @param eakInfo      Key to decrypt with. All records read must be of the type (and writer) the key is for.
+   * @param handleResult Receives the records found, by ID, in the order the IDs were given. IDs with no
+   *                     record stored are omitted.
+   */
+  public void readAll(Client client, Collection<UUID> ids, EAKInfo eakInfo, ResultHandler<Map<UUID, LocalRecord>> handleResult) {
+    checkNotNull(client, "client");
+    checkNotNull(ids, "ids");
+    checkNotNull(eakInfo, "eakInfo");
+    client.readLocal(this, new ArrayList<>(ids), eakInfo, handleResult);
+  }
+
+  /**
+   * Removes a stored record.
+   *
+   * @param id ID the record was stored under.
+   * @return {@code true} if a record was removed.
+   * @throws IOException If the removal cannot be written.
+   */
+  public boolean delete(UUID id) throws IOException {
+    checkNotNull(id, "id");
+    lock.writeLock().lock();
+    try {
+      checkOpen();
+      if (!index.containsKey(id))
+        return false;
+
+      append(DELETE, id, new byte[0], 0, 0);
+      unindex(id);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param id A record ID.
+   * @return {@code true} if a record is stored under the given ID.
+   */
+  public boolean contains(UUID id) {
+    checkNotNull(id, "id");
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      return index.containsKey(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return IDs of all stored records, in no particular order.
+   */
+  public Set<UUID> ids() {
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      return new HashSet<>(index.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return Number of stored records.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Writes all changes through to the storage device.
+   *
+   * @throws IOException If changes cannot be written.
+   */
+  public void flush() throws IOException {
+    lock.writeLock().lock();
+    try {
+      checkOpen();
+      for (Segment segment : segments.values())
+        segment.buffer.force();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * As {@link #compact(double)}, rewriting segments that are at least half garbage.
+   *
+   * @throws IOException If the store cannot be compacted.
+   */
+  public void compact() throws IOException {
+    compact(0.5);
+  }
+
+  /**
+   * Reclaims space taken by replaced and deleted records. Segments other than the one being appended
+   * to, and in which at least {@code minGarbage} of the space is garbage, are rewritten: their live
+   * records are appended to the log, and the segment is deleted.
+   *
+   * <p>Segments are compacted one at a time, oldest first; other operations wait only while a single
+   * segment is rewritten. Compaction is safe to interrupt.
+   *
+   * @param minGarbage Fraction (between 0 and 1) of a segment that must be garbage for it to be rewritten.
+   * @throws IOException If the store cannot be compacted.
+   */
+  public void compact(double minGarbage) throws IOException {
+    if (minGarbage < 0 || minGarbage > 1)
+      throw new IllegalArgumentException("minGarbage must be between 0 and 1: " + minGarbage);
+
+    List<Integer> candidates;
+    lock.readLock().lock();
+    try {
+      checkOpen();
+      candidates = new ArrayList<>(segments.headMap(segments.lastKey()).keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    for (Integer number : candidates) {
+      lock.writeLock().lock();
+      try {
+        checkOpen();
+        Segment segment = segments.get(number);
+        if (segment != null && segment.end > 0 && 1 - (double) segment.liveBytes / segment.end >= minGarbage)
+          compact(segment);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Moves the live entries of a segment to the end of the log, then deletes it.
+   */
+  private void compact(final Segment segment) throws IOException {
+    final boolean oldest = segments.firstKey() == segment.number;
+    final Set<Segment> written = new HashSet<>();
+    scan(segment, new EntryVisitor() {
+      @Override
+      public void visit(byte kind, UUID id, int offset, int length) throws IOException {
+        Location location = index.get(id);
+        boolean live;
+        if (kind == PUT)
+          live = location != null && location.segment == segment && location.offset == offset;
+        else
+          // A deletion must be kept while an older segment may still hold the record it deleted,
+          // unless the record has since been stored again.
+          live = !oldest && location == null;
+
+        if (!live)
+          return;
+
+        byte[] entry = new byte[length - HEADER_SIZE - BODY_PREFIX_SIZE];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + HEADER_SIZE + BODY_PREFIX_SIZE);
+        buffer.get(entry);
+        Location moved = append(kind, id, entry, 0, entry.length);
+        written.add(moved.segment);
+        if (kind == PUT)
+          index(id, moved);
+      }
+    });
+
+    // The copies must be durable before the originals are deleted.
+    for (Segment s : written)
+      s.buffer.force();
+
+    segments.remove(segment.number);
+    segment.raf.close();
+    if (!segment.file.delete())
+      throw new IOException("Unable to delete " + segment.file);
+  }
+
+  /**
+   * Writes all changes through to the storage device and closes the store.
+   *
+   * @throws IOException If changes cannot be written.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (closed)
+        return;
+      closed = true;
+
+      IOException error = null;
+      for (Segment segment : segments.values()) {
+        try {
+          segment.buffer.force();
+          segment.raf.close();
+        } catch (IOException e) {
+          if (error == null)
+            error = e;
+        }
+      }
+      segments.clear();
+      index.clear();
+      if (error != null)
+        throw error;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
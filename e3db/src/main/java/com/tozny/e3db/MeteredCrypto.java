@@ -0,0 +1,225 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+import com.tozny.e3db.crypto.Crypto;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Passes every call through to another {@link Crypto} implementation, reporting how long
+ * each took to a {@link ClientMetrics}.
+ */
+final class MeteredCrypto implements Crypto {
+  private final Crypto crypto;
+  private final ClientMetrics metrics;
+
+  MeteredCrypto(Crypto crypto, ClientMetrics metrics) {
+    this.crypto = crypto;
+    this.metrics = metrics;
+  }
+
+  private void record(String operation, long start, long bytes) {
+    metrics.recordCrypto(operation, System.nanoTime() - start, bytes);
+  }
+
+  @Override
+  public CipherSuite suite() {
+    return crypto.suite();
+  }
+
+  @Override
+  public CipherWithNonce encryptSecretBox(byte[] message, byte[] key) throws E3DBEncryptionException {
+    long start = System.nanoTime();
+    try {
+      return crypto.encryptSecretBox(message, key);
+    } finally {
+      record("encryptSecretBox", start, message.length);
+    }
+  }
+
+  @Override
+  public byte[] decryptSecretBox(CipherWithNonce message, byte[] key) throws E3DBDecryptionException {
+    long start = System.nanoTime();
+    try {
+      return crypto.decryptSecretBox(message, key);
+    } finally {
+      record("decryptSecretBox", start, message.getCipher().length);
+    }
+  }
+
+  @Override
+  public CipherWithNonce encryptBox(byte[] message, byte[] publicKey, byte[] privateKey) throws E3DBEncryptionException {
+    long start = System.nanoTime();
+    try {
+      return crypto.encryptBox(message, publicKey, privateKey);
+    } finally {
+      record("encryptBox", start, message.length);
+    }
+  }
+
+  @Override
+  public byte[] decryptBox(CipherWithNonce message, byte[] publicKey, byte[] privateKey) throws E3DBDecryptionException {
+    long start = System.nanoTime();
+    try {
+      return crypto.decryptBox(message, publicKey, privateKey);
+    } finally {
+      record("decryptBox", start, message.getCipher().length);
+    }
+  }
+
+  @Override
+  public byte[] getPublicKey(byte[] privateKey) throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.getPublicKey(privateKey);
+    } finally {
+      record("getPublicKey", start, 0);
+    }
+  }
+
+  @Override
+  public byte[] newPrivateKey() throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.newPrivateKey();
+    } finally {
+      record("newPrivateKey", start, 0);
+    }
+  }
+
+  @Override
+  public byte[] newSecretKey() {
+    long start = System.nanoTime();
+    try {
+      return crypto.newSecretKey();
+    } finally {
+      record("newSecretKey", start, 0);
+    }
+  }
+
+  @Override
+  public byte[] newPrivateSigningKey() throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.newPrivateSigningKey();
+    } finally {
+      record("newPrivateSigningKey", start, 0);
+    }
+  }
+
+  @Override
+  public byte[] getPublicSigningKey(byte[] privateKey) throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.getPublicSigningKey(privateKey);
+    } finally {
+      record("getPublicSigningKey", start, 0);
+    }
+  }
+
+  @Override
+  public byte[] signature(byte[] message, byte[] signingKey) throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.signature(message, signingKey);
+    } finally {
+      record("signature", start, message.length);
+    }
+  }
+
+  @Override
+  public boolean verify(Signature signature, byte[] message, byte[] publicSigningKey) {
+    long start = System.nanoTime();
+    try {
+      return crypto.verify(signature, message, publicSigningKey);
+    } finally {
+      record("verify", start, message.length);
+    }
+  }
+
+  @Override
+  public File encryptFile(File file, byte[] secretKey) throws IOException, E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.encryptFile(file, secretKey);
+    } finally {
+      record("encryptFile", start, file.length());
+    }
+  }
+
+  @Override
+  public void decryptFile(File file, byte[] secretKey, File dest) throws IOException, E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      crypto.decryptFile(file, secretKey, dest);
+    } finally {
+      record("decryptFile", start, file.length());
+    }
+  }
+
+  @Override
+  public byte[] hashString(String message) throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.hashString(message);
+    } finally {
+      record("hashString", start, message.length());
+    }
+  }
+
+  @Override
+  public int getBlockSize() {
+    return crypto.getBlockSize();
+  }
+
+  @Override
+  public E3DBKeyPair deriveEncryptionKeypair(char[] password, byte[] salt) throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.deriveEncryptionKeypair(password, salt);
+    } finally {
+      record("deriveEncryptionKeypair", start, 0);
+    }
+  }
+
+  @Override
+  public E3DBKeyPair deriveSigningKeyPair(char[] password, byte[] salt) throws E3DBCryptoException {
+    long start = System.nanoTime();
+    try {
+      return crypto.deriveSigningKeyPair(password, salt);
+    } finally {
+      record("deriveSigningKeyPair", start, 0);
+    }
+  }
+
+  @Override
+  public byte[] randomBytes(int bytes) {
+    long start = System.nanoTime();
+    try {
+      return crypto.randomBytes(bytes);
+    } finally {
+      record("randomBytes", start, 0);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.tozny.e3db
+
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+/**
+ * Derives note credentials (see [Realm.deriveNoteCreds]) away from the calling thread.
+ *
+ * Each derivation runs two rounds of PBKDF2, one after the other, so it is run on
+ * [Client.cryptoExecutor]; independent derivations (such as the old and new password
+ * when changing passwords) run in parallel with each other.
+ *
+ * Derived credentials can optionally be kept in memory for a short window (see
+ * [Realm.setNoteCredentialReuseWindow]), so repeating a login with the same password
+ * does not repeat the derivation. Reuse is disabled by default. Entries are looked
+ * up by a SHA-256 digest of their inputs; the password itself is never stored.
+ */
+internal object NoteCredentialDerivation {
+  private const val MAX_ENTRIES = 8
+
+  private class CachedCreds(val creds: DerivedNoteCreds, val expiresAt: Long)
+
+  private var reuseWindowNanos = 0L
+  private val entries = object : LinkedHashMap<String, CachedCreds>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CachedCreds>?): Boolean = size > MAX_ENTRIES
+  }
+
+  fun setReuseWindow(duration: Long, unit: TimeUnit) {
+    require(duration >= 0) { "duration cannot be negative." }
+    synchronized(entries) {
+      reuseWindowNanos = unit.toNanos(duration)
+      if (reuseWindowNanos == 0L)
+        entries.clear()
+    }
+  }
+
+  fun clear() {
+    synchronized(entries) {
+      entries.clear()
+    }
+  }
+
+  /**
+   * Derives credentials on the calling thread, reusing a previous result if allowed.
+   */
+  fun derive(realmName: String, userName: String, password: String, noteType: CredentialType): DerivedNoteCreds {
+    val key = synchronized(entries) {
+      if (reuseWindowNanos == 0L) null else cacheKey(realmName, userName, password, noteType)
+    }
+
+    key?.let {
+      synchronized(entries) {
+        entries[it]?.let { entry ->
+          if (System.nanoTime() - entry.expiresAt < 0)
+            return entry.creds
+          entries.remove(it)
+        }
+      }
+    }
+
+    val creds = Realm.deriveNoteCreds(realmName, userName, password, noteType)
+    key?.let {
+      synchronized(entries) {
+        if (reuseWindowNanos > 0)
+          entries[it] = CachedCreds(creds, System.nanoTime() + reuseWindowNanos)
+      }
+    }
+    return creds
+  }
+
+  /**
+   * Starts deriving credentials on [Client.cryptoExecutor].
+   */
+  fun deriveAsync(realmName: String, userName: String, password: String, noteType: CredentialType): Future<DerivedNoteCreds> =
+      Client.cryptoExecutor.submit(Callable { derive(realmName, userName, password, noteType) })
+
+  private fun cacheKey(realmName: String, userName: String, password: String, noteType: CredentialType): String {
+    val digest = MessageDigest.getInstance("SHA-256")
+    for (part in listOf(noteType.name, realmName, userName.toLowerCase(Locale.US), password)) {
+      digest.update(part.toByteArray(Charsets.UTF_8))
+      digest.update(0)
+    }
+    return Base64.encodeURL(digest.digest())
+  }
+}
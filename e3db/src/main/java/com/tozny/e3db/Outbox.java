@@ -0,0 +1,670 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import okhttp3.ResponseBody;
+
+import static com.tozny.e3db.Checks.*;
+
+/**
+ * Queues record writes, record updates and notes in a journal on the local file system, and sends
+ * them to E3DB in the background, so that callers need not wait on (or be reachable by) the network.
+ *
+ * <p>Each operation is encrypted and signed straight away (on a thread belonging to the outbox, in the
+ * order operations are given), as the corresponding {@link Client} method would, and appended to the
+ * journal; only ciphertext is written. Encrypting a record needs the access key for its type, which
+ * the client only fetches from E3DB the first time the type is used. A background thread sends queued
+ * operations in order, in batches of up to {@code batchSize}, once a batch is full, {@code flushInterval}
+ * has passed since the first was queued, or {@link #flush()} is called. If E3DB cannot be reached (or
+ * responds that it is unavailable), the batch is retried with exponential backoff; operations are never
+ * reordered. An operation that fails in any other way is tried five times, then given up on (its result
+ * handler receiving the error), so that it cannot hold up the operations queued after it.
+ *
+ * <p>Each operation's result handler is called once E3DB has accepted or rejected it. Operations left
+ * in the journal when the outbox is closed (or the process exits) are sent after it is next opened,
+ * but their result handlers are not called.
+ *
+ * <p>Delivery is at-least-once: an operation whose response is lost may be sent again. Updates are
+ * made safe by their version check; a repeated write creates a second record.
+ *
+ * <p>Instances are thread-safe.
+ */
+public final class Outbox implements Closeable {
+  /**
+   * Most operations sent in one batch, unless given to {@link #open(Client, File, int, long)}.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 50;
+  /**
+   * Longest time, in milliseconds, an operation waits for its batch to fill, unless given to
+   * {@link #open(Client, File, int, long)}.
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+  static final byte WRITE = 1;
+  static final byte UPDATE = 2;
+  static final byte NOTE = 3;
+  // Records that the operations listed (by sequence number) need not be sent again.
+  private static final byte DONE = 4;
+
+  private static final String JOURNAL = "outbox.journal";
+  // Entry: body length (int), CRC32 of body (int), then the body: kind (byte), sequence number (long), payload.
+  private static final int HEADER_SIZE = 8;
+  private static final int BODY_PREFIX_SIZE = 9;
+  // A journal this large, and mostly holding operations already sent, is rewritten.
+  private static final long COMPACT_SIZE = 1024 * 1024;
+  private static final long MIN_BACKOFF = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_BACKOFF = TimeUnit.MINUTES.toNanos(5);
+  /**
+   * Times an operation is tried when sending it fails with something other than an I/O error or an
+   * HTTP status asking for a retry, before it is given up on.
+   */
+  static final int MAX_ATTEMPTS = 5;
+
+  private final Client client;
+  private final File directory;
+  private final int batchSize;
+  private final long flushInterval;
+  private final Object lock = new Object();
+  private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+  // Encrypts operations and appends them to the journal.
+  private final ExecutorService encryptor;
+  // Sends batches.
+  private final Thread worker;
+
+  private RandomAccessFile journal;
+  // Size of the journal, and of the entries in it not yet sent.
+  private long journalBytes = 0;
+  private long liveBytes = 0;
+  private long nextSequence = 1;
+  // System.nanoTime() after which the next batch is sent, and before which it is not retried.
+  private long dueAt = Long.MAX_VALUE;
+  private long retryAt = 0;
+  private long backoff = 0;
+  private boolean closed = false;
+
+  /**
+   * Receives the outcome of an operation, on the background thread, once it has been recorded as sent.
+   */
+  interface Completion {
+    /**
+     * Receives the response accepting or rejecting the operation. The response body must be consumed or closed.
+     */
+    void complete(retrofit2.Response<ResponseBody> response);
+
+    /**
+     * Receives the error that sending the operation last failed with, after {@link #MAX_ATTEMPTS} attempts.
+     */
+    void fail(Throwable error);
+  }
+
+  static final class Entry {
+    final byte kind;
+    final UUID recordId;
+    final String version;
+    final byte[] body;
+    // Null for operations queued before the outbox was last opened.
+    final Completion completion;
+    long sequence;
+    int length;
+    // Attempts to send that failed with a RuntimeException.
+    int failures;
+
+    /**
+     * @param kind     {@link #WRITE}, {@link #UPDATE} or {@link #NOTE}.
+     * @param recordId Record to update; {@code null} unless {@code kind} is {@link #UPDATE}.
+     * @param version  Version of the record to update; {@code null} unless {@code kind} is {@link #UPDATE}.
+     * @param body     Request body (JSON).
+     */
+    Entry(byte kind, UUID recordId, String version, byte[] body, Completion completion) {
+      this.kind = kind;
+      this.recordId = recordId;
+      this.version = version;
+      this.body = body;
+      this.completion = completion;
+    }
+
+    private byte[] payload() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 64);
+      DataOutputStream out = new DataOutputStream(bytes);
+      if (kind == UPDATE) {
+        out.writeLong(recordId.getMostSignificantBits());
+        out.writeLong(recordId.getLeastSignificantBits());
+        out.writeUTF(version);
+      }
+      out.write(body);
+      out.flush();
+      return bytes.toByteArray();
+    }
+
+    private static Entry parse(byte kind, byte[] payload, int offset, int length) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, offset, length));
+      UUID recordId = null;
+      String version = null;
+      if (kind == UPDATE) {
+        recordId = new UUID(in.readLong(), in.readLong());
+        version = in.readUTF();
+      }
+      byte[] body = new byte[in.available()];
+      in.readFully(body);
+      return new Entry(kind, recordId, version, body, null);
+    }
+  }
+
+  private Outbox(Client client, File directory, int batchSize, long flushInterval) {
+    this.client = client;
+    this.directory = directory;
+    this.batchSize = batchSize;
+    this.flushInterval = flushInterval;
+    this.encryptor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        thread.setName("E3DB outbox encrypt");
+        return thread;
+      }
+    });
+    this.worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        work();
+      }
+    }, "E3DB outbox send");
+    this.worker.setDaemon(true);
+  }
+
+  /**
+   * Opens the outbox in the given directory, creating it if necessary, sending
+   * {@link #DEFAULT_BATCH_SIZE batches of up to 50} operations at least every {@link #DEFAULT_FLUSH_INTERVAL second}.
+   *
+   * @param client    Client to encrypt and send operations with. Operations queued by an earlier
+   *                  client are sent with this one, so it must be the same identity.
+   * @param directory Directory holding the outbox's journal. Nothing else should be kept there.
+   * @return The outbox. Any operations already in the journal will be sent.
+   * @throws IOException If the journal cannot be created or read.
+   */
+  public static Outbox open(Client client, File directory) throws IOException {
+    return open(client, directory, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+  }
+
+  /**
+   * Opens the outbox in the given directory, creating it if necessary.
+   *
+   * @param client        Client to encrypt and send operations with. Operations queued by an earlier
+   *                      client are sent with this one, so it must be the same identity.
+   * @param directory     Directory holding the outbox's journal. Nothing else should be kept there.
+   * @param batchSize     Most operations sent in one batch. Must be at least 1.
+   * @param flushInterval Longest time, in milliseconds, an operation waits for its batch to fill. Cannot be negative.
+   * @return The outbox. Any operations already in the journal will be sent.
+   * @throws IOException If the journal cannot be created or read.
+   */
+  public static Outbox open(Client client, File directory, int batchSize, long flushInterval) throws IOException {
+    checkNotNull(client, "client");
+    checkNotNull(directory, "directory");
+    if (batchSize < 1)
+      throw new IllegalArgumentException("batchSize must be at least 1.");
+    if (flushInterval < 0)
+      throw new IllegalArgumentException("flushInterval cannot be negative.");
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Unable to create " + directory);
+
+    Outbox outbox = new Outbox(client, directory, batchSize, TimeUnit.MILLISECONDS.toNanos(flushInterval));
+    try {
+      outbox.recover();
+    } catch (IOException | RuntimeException e) {
+      outbox.encryptor.shutdown();
+      outbox.closeJournal();
+      throw e;
+    }
+    outbox.worker.start();
+    return outbox;
+  }
+
+  /**
+   * Reads the journal, queueing every operation not marked as sent, and drops any partially
+   * written entry at its end.
+   */
+  private void recover() throws IOException {
+    journal = new RandomAccessFile(new File(directory, JOURNAL), "rw");
+    long size = journal.length();
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("Journal too large.");
+
+    byte[] contents = new byte[(int) size];
+    journal.readFully(contents);
+    ByteBuffer buffer = ByteBuffer.wrap(contents);
+    Map<Long, Entry> pending = new LinkedHashMap<>();
+    CRC32 crc = new CRC32();
+    int offset = 0;
+    while (offset + HEADER_SIZE + BODY_PREFIX_SIZE <= contents.length) {
+      int bodyLength = buffer.getInt(offset);
+      if (bodyLength < BODY_PREFIX_SIZE || bodyLength > contents.length - offset - HEADER_SIZE)
+        break;
+      crc.reset();
+      crc.update(contents, offset + HEADER_SIZE, bodyLength);
+      if ((int) crc.getValue() != buffer.getInt(offset + 4))
+        break;
+
+      byte kind = contents[offset + HEADER_SIZE];
+      long sequence = buffer.getLong(offset + HEADER_SIZE + 1);
+      int payload = offset + HEADER_SIZE + BODY_PREFIX_SIZE;
+      int payloadLength = bodyLength - BODY_PREFIX_SIZE;
+      if (kind == DONE) {
+        for (int i = 0; i + 8 <= payloadLength; i += 8)
+          pending.remove(buffer.getLong(payload + i));
+      } else if (kind == WRITE || kind == UPDATE || kind == NOTE) {
+        Entry entry = Entry.parse(kind, contents, payload, payloadLength);
+        entry.sequence = sequence;
+        entry.length = HEADER_SIZE + bodyLength;
+        pending.put(sequence, entry);
+      } else {
+        break;
+      }
+      nextSequence = Math.max(nextSequence, sequence + 1);
+      offset += HEADER_SIZE + bodyLength;
+    }
+
+    journal.setLength(offset);
+    journalBytes = offset;
+    for (Entry entry : pending.values()) {
+      queue.add(entry);
+      liveBytes += entry.length;
+    }
+    if (!queue.isEmpty())
+      dueAt = System.nanoTime();
+  }
+
+  /**
+   * Appends an entry to the journal and writes it through to the storage device.
+   *
+   * @return Length of the entry, header included.
+   */
+  private int append(byte kind, long sequence, byte[] payload) throws IOException {
+    byte[] entry = new byte[HEADER_SIZE + BODY_PREFIX_SIZE + payload.length];
+    ByteBuffer buffer = ByteBuffer.wrap(entry);
+    buffer.putInt(0, BODY_PREFIX_SIZE + payload.length);
+    buffer.put(HEADER_SIZE, kind);
+    buffer.putLong(HEADER_SIZE + 1, sequence);
+    System.arraycopy(payload, 0, entry, HEADER_SIZE + BODY_PREFIX_SIZE, payload.length);
+    CRC32 crc = new CRC32();
+    crc.update(entry, HEADER_SIZE, entry.length - HEADER_SIZE);
+    buffer.putInt(4, (int) crc.getValue());
+
+    FileChannel channel = journal.getChannel();
+    try {
+      channel.write(ByteBuffer.wrap(entry), journalBytes);
+      channel.force(false);
+    } catch (IOException e) {
+      // Don't leave part of the entry behind for later entries to follow.
+      journal.setLength(journalBytes);
+      throw e;
+    }
+    journalBytes += entry.length;
+    return entry.length;
+  }
+
+  private void checkOpen() {
+    if (closed || encryptor.isShutdown())
+      throw new IllegalStateException("Outbox is closed.");
+  }
+
+  /**
+   * Adds an operation to the journal and the queue.
+   */
+  void enqueue(Entry entry) throws IOException {
+    byte[] payload = entry.payload();
+    synchronized (lock) {
+      if (closed)
+        throw new IOException("Outbox is closed.");
+      entry.sequence = nextSequence;
+      entry.length = append(entry.kind, entry.sequence, payload);
+      nextSequence++;
+      liveBytes += entry.length;
+      queue.add(entry);
+      if (queue.size() == 1)
+        dueAt = System.nanoTime() + flushInterval;
+      if (queue.size() >= batchSize)
+        dueAt = System.nanoTime();
+      lock.notifyAll();
+    }
+  }
+
+  private void encrypt(Runnable operation) {
+    synchronized (lock) {
+      checkOpen();
+      encryptor.execute(operation);
+    }
+  }
+
+  /**
+   * Queues a new record to write. See {@link Client#write(String, RecordData, Map, ResultHandler)}.
+   *
+   * @param type         Describes the type of the record (e.g., "contact_info", "credit_card", etc.).
+   * @param fields       Values to encrypt and store.
+   * @param plain        Additional, user-defined metadata that will <b>NOT</b> be encrypted. Can be null.
+   * @param handleResult Result of the operation, once sent. If successful, returns the newly written record. Can be null.
+   */
+  public void write(final String type, final RecordData fields, final Map<String, String> plain, final ResultHandler<Record> handleResult) {
+    checkNotEmpty(type, "type");
+    checkNotNull(fields, "fields");
+    if (plain != null && plain.size() > 0)
+      checkMap(plain, "plain");
+    encrypt(new Runnable() {
+      @Override
+      public void run() {
+        client.outboxWrite(Outbox.this, type, fields, plain, handleResult);
+      }
+    });
+  }
+
+  /**
+   * Queues an update to a record. See {@link Client#update(UpdateMeta, RecordData, Map, ResultHandler)}.
+   *
+   * <p>Updates to the same record are sent in order, but each must name the version it replaces;
+   * an update queued against the version another queued update will replace fails with an
+   * {@link E3DBVersionException}.
+   *
+   * @param updateMeta   Metadata describing the record to update.
+   * @param fields       Field names and values.
+   * @param plain        Any metadata associated with the record that will <b>NOT</b> be encrypted.
+   *                     If {@code null}, existing metadata will be removed.
+   * @param handleResult Result of the operation, once sent. If successful, returns the updated record. Can be null.
+   */
+  public void update(final UpdateMeta updateMeta, final RecordData fields, final Map<String, String> plain, final ResultHandler<Record> handleResult) {
+    checkNotNull(updateMeta, "updateMeta");
+    checkNotNull(fields, "fields");
+    if (plain != null && plain.size() > 0)
+      checkMap(plain, "plain");
+    encrypt(new Runnable() {
+      @Override
+      public void run() {
+        client.outboxUpdate(Outbox.this, updateMeta, fields, plain, handleResult);
+      }
+    });
+  }
+
+  /**
+   * Queues a new client associated note. See {@link Client#writeNote(RecordData, byte[], byte[], NoteOptions, ResultHandler)}.
+   *
+   * @param fields                 Record data to be encrypted
+   * @param recipientEncryptionKey public encryption key for the reader
+   * @param recipientSigningKey    public signing key for the reader
+   * @param options                options for the note
+   * @param handleResult           Result of the operation, once sent. If successful, returns the note written. Can be null.
+   */
+  public void writeNote(final RecordData fields, final byte[] recipientEncryptionKey, final byte[] recipientSigningKey, final NoteOptions options, final ResultHandler<Note> handleResult) {
+    checkNotNull(fields, "fields");
+    checkNotNull(recipientEncryptionKey, "Recipient Encryption Key");
+    checkNotNull(recipientSigningKey, "Recipient Signing Key");
+    encrypt(new Runnable() {
+      @Override
+      public void run() {
+        client.outboxWriteNote(Outbox.this, fields, recipientEncryptionKey, recipientSigningKey, options, handleResult);
+      }
+    });
+  }
+
+  /**
+   * Sends queued operations now, rather than waiting for a batch to fill. Also cuts short any wait
+   * before retrying; useful when the network is known to be back.
+   */
+  public void flush() {
+    synchronized (lock) {
+      checkOpen();
+      dueAt = System.nanoTime();
+      retryAt = 0;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * @return Number of operations queued and not yet accepted or rejected by E3DB.
+   */
+  public int pending() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Runs on the background thread, sending batches as they come due.
+   */
+  private void work() {
+    while (true) {
+      List<Entry> batch;
+      synchronized (lock) {
+        try {
+          while (!closed) {
+            long now = System.nanoTime();
+            long wait = queue.isEmpty() ? Long.MAX_VALUE : Math.max(dueAt, retryAt) - now;
+            if (wait <= 0)
+              break;
+            if (wait == Long.MAX_VALUE)
+              lock.wait();
+            else
+              lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (closed)
+          return;
+
+        batch = new ArrayList<>(Math.min(queue.size(), batchSize));
+        for (Entry entry : queue) {
+          if (batch.size() == batchSize)
+            break;
+          batch.add(entry);
+        }
+      }
+      send(batch);
+    }
+  }
+
+  /**
+   * Sends a batch in order, stopping at the first operation that should be retried. Operations
+   * that E3DB accepted or rejected are recorded as sent before their result handlers are called.
+   */
+  private void send(List<Entry> batch) {
+    List<Entry> sent = new ArrayList<>(batch.size());
+    // For each operation sent, its response, or the error it was given up on with.
+    List<retrofit2.Response<ResponseBody>> responses = new ArrayList<>(batch.size());
+    List<RuntimeException> errors = new ArrayList<>(batch.size());
+    boolean retry = false;
+    for (Entry entry : batch) {
+      try {
+        retrofit2.Response<ResponseBody> response = client.sendOutbox(entry);
+        int code = response.code();
+        if (code == 408 || code == 429 || code >= 500) {
+          if (response.errorBody() != null)
+            response.errorBody().close();
+          retry = true;
+          break;
+        }
+        sent.add(entry);
+        responses.add(response);
+        errors.add(null);
+      } catch (IOException e) {
+        retry = true;
+        break;
+      } catch (RuntimeException e) {
+        // Such as from a malformed token response, which may pass; but a failure that repeats every
+        // time would otherwise hold up every operation behind this one.
+        if (++entry.failures < MAX_ATTEMPTS) {
+          retry = true;
+          break;
+        }
+        sent.add(entry);
+        responses.add(null);
+        errors.add(e);
+      }
+    }
+
+    synchronized (lock) {
+      if (!sent.isEmpty()) {
+        try {
+          markSent(sent);
+        } catch (IOException ignored) {
+          // The operations will be sent again after the outbox is next opened.
+        }
+      }
+
+      if (retry) {
+        backoff = backoff == 0 ? MIN_BACKOFF : Math.min(backoff * 2, MAX_BACKOFF);
+        retryAt = System.nanoTime() + backoff;
+      } else {
+        backoff = 0;
+        retryAt = 0;
+      }
+      dueAt = queue.isEmpty() ? Long.MAX_VALUE : System.nanoTime();
+    }
+
+    for (int i = 0; i < sent.size(); i++) {
+      Completion completion = sent.get(i).completion;
+      retrofit2.Response<ResponseBody> response = responses.get(i);
+      if (completion != null) {
+        try {
+          if (response == null)
+            completion.fail(errors.get(i));
+          else
+            completion.complete(response);
+        } catch (RuntimeException ignored) {
+          // The operation has been sent; a failing completion must not stop later ones.
+        }
+      } else if (response != null) {
+        ResponseBody body = response.isSuccessful() ? response.body() : response.errorBody();
+        if (body != null)
+          body.close();
+      }
+    }
+  }
+
+  /**
+   * Records that the given operations, at the head of the queue, have been sent, then reclaims the
+   * journal's space if that leaves it mostly garbage.
+   */
+  private void markSent(List<Entry> sent) throws IOException {
+    ByteBuffer sequences = ByteBuffer.allocate(8 * sent.size());
+    for (Entry entry : sent) {
+      queue.remove();
+      liveBytes -= entry.length;
+      sequences.putLong(entry.sequence);
+    }
+
+    if (queue.isEmpty()) {
+      journal.setLength(0);
+      journal.getChannel().force(true);
+      journalBytes = 0;
+      return;
+    }
+
+    append(DONE, 0, sequences.array());
+    if (journalBytes >= COMPACT_SIZE && liveBytes * 2 < journalBytes)
+      compact();
+  }
+
+  /**
+   * Replaces the journal with one holding only the operations not yet sent.
+   */
+  private void compact() throws IOException {
+    File file = new File(directory, JOURNAL);
+    File temporary = new File(directory, JOURNAL + ".tmp");
+    RandomAccessFile compacted = new RandomAccessFile(temporary, "rw");
+    RandomAccessFile previous = journal;
+    long previousBytes = journalBytes;
+    try {
+      compacted.setLength(0);
+      journal = compacted;
+      journalBytes = 0;
+      for (Entry entry : queue)
+        append(entry.kind, entry.sequence, entry.payload());
+      if (!temporary.renameTo(file))
+        throw new IOException("Unable to replace " + file);
+    } catch (IOException | RuntimeException e) {
+      journal = previous;
+      journalBytes = previousBytes;
+      compacted.close();
+      temporary.delete();
+      throw e;
+    }
+    previous.close();
+  }
+
+  private void closeJournal() throws IOException {
+    if (journal != null)
+      journal.close();
+  }
+
+  /**
+   * Stops accepting operations, waits for those already given to be queued, then stops sending
+   * (waiting for any batch being sent to finish) and closes the journal. Operations still queued
+   * remain in the journal, to be sent after the outbox is next opened; their result handlers are
+   * not called.
+   *
+   * @throws IOException If the journal cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (encryptor.isShutdown())
+        return;
+      encryptor.shutdown();
+    }
+
+    try {
+      encryptor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+
+    try {
+      worker.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (lock) {
+      closeJournal();
+    }
+  }
+}
@@ -37,6 +37,11 @@ final class Platform {
 
   public static final Crypto crypto = Inner.crypto;
 
+  /**
+   * True if {@link FlightRecorderEvents}, part of the plain Java crypto module, can be used.
+   */
+  static final boolean flightRecorder = hasFlightRecorder();
+
   static boolean isAndroid() {
     boolean isAndroid = false;
     try {
@@ -46,4 +51,18 @@ final class Platform {
     }
     return isAndroid;
   }
+
+  private static boolean hasFlightRecorder() {
+    // The Android library bundles the stub, whose methods must not be called.
+    if (isAndroid())
+      return false;
+    try {
+      Class.forName("com.tozny.e3db.FlightRecorderEvents");
+      return FlightRecorderEvents.available();
+    } catch (ClassNotFoundException ignored) {
+      return false;
+    } catch (LinkageError ignored) {
+      return false;
+    }
+  }
 }
@@ -0,0 +1,89 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Memoizes the public keys derived from private keys, for code paths that are
+ * handed the same private key (the same array instance) over and over, such as
+ * the static note methods on {@link Client}.
+ *
+ * <p>Deriving a public key requires a scalar multiplication, which is expensive
+ * relative to the rest of a note write. Keys are matched by identity, not
+ * contents, so callers must not modify a private key array once it has been
+ * used. Private keys are only weakly referenced, and only the most recently
+ * used keys are kept.
+ */
+final class PublicKeys {
+  private static final int CACHE_SIZE = 16;
+
+  private static final Cache encryptionKeys = new Cache();
+  private static final Cache signingKeys = new Cache();
+
+  private PublicKeys() {
+  }
+
+  /**
+   * Returns the public key for the given private encryption key.
+   */
+  static byte[] encryptionKey(byte[] privateKey) throws E3DBCryptoException {
+    byte[] publicKey = encryptionKeys.get(privateKey);
+    if (publicKey == null) {
+      publicKey = Platform.crypto.getPublicKey(privateKey);
+      encryptionKeys.put(privateKey, publicKey);
+    }
+    return publicKey;
+  }
+
+  /**
+   * Returns the public key for the given private signing key.
+   */
+  static byte[] signingKey(byte[] privateSigningKey) throws E3DBCryptoException {
+    byte[] publicKey = signingKeys.get(privateSigningKey);
+    if (publicKey == null) {
+      publicKey = Platform.crypto.getPublicSigningKey(privateSigningKey);
+      signingKeys.put(privateSigningKey, publicKey);
+    }
+    return publicKey;
+  }
+
+  private static class Cache {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final WeakReference<byte[]>[] privateKeys = new WeakReference[CACHE_SIZE];
+    private final byte[][] publicKeys = new byte[CACHE_SIZE][];
+    private int next = 0;
+
+    synchronized byte[] get(byte[] privateKey) {
+      for (int i = 0; i < CACHE_SIZE; i++) {
+        if (privateKeys[i] != null && privateKeys[i].get() == privateKey)
+          return publicKeys[i];
+      }
+      return null;
+    }
+
+    synchronized void put(byte[] privateKey, byte[] publicKey) {
+      privateKeys[next] = new WeakReference<>(privateKey);
+      publicKeys[next] = publicKey;
+      next = (next + 1) % CACHE_SIZE;
+    }
+  }
+}
@@ -14,6 +14,7 @@ import retrofit2.converter.jackson.JacksonConverterFactory
 import retrofit2.create
 import java.net.URI
 import java.util.*
+import java.util.concurrent.TimeUnit
 import kotlin.collections.HashMap
 
 class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brokerTargetURL: URI?, apiURL: URI? = URI("https://api.e3db.com"), certificatePinner: CertificatePinner? = null) {
@@ -44,6 +45,26 @@ class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brok
       val deriveSigningKeyPair = crypto.deriveSigningKeyPair(password.toCharArray(), "$publicEncryption$secretEncryption".toByteArray())
       return DerivedNoteCreds(Base64.encodeURL(noteName), deriveEncryptionKeypair, deriveSigningKeyPair)
     }
+
+    /**
+     * Allow note credentials derived from a password to be reused, for up to the given
+     * duration, rather than derived again. Use 0 (the default) to disable reuse.
+     *
+     * Reused credentials are held in memory, so only enable this when repeated logins
+     * (or password checks) in a short time are expected.
+     */
+    @JvmStatic
+    fun setNoteCredentialReuseWindow(duration: Long, unit: TimeUnit) {
+      NoteCredentialDerivation.setReuseWindow(duration, unit)
+    }
+
+    /**
+     * Forget any note credentials held for reuse. See [setNoteCredentialReuseWindow].
+     */
+    @JvmStatic
+    fun clearNoteCredentials() {
+      NoteCredentialDerivation.clear()
+    }
   }
 
   private val identityClient: IdentityServiceClient
@@ -110,7 +131,7 @@ class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brok
     return realmInfo
   }
 
-  private fun createTSV1Client(privateSigningKey: ByteArray, publicSigningKey: ByteArray = crypto.getPublicSigningKey(privateSigningKey), clientID: UUID? = null, additionalHeaders: Map<String, String> = mapOf()): OkHttpClient {
+  private fun createTSV1Client(privateSigningKey: ByteArray, publicSigningKey: ByteArray = PublicKeys.signingKey(privateSigningKey), clientID: UUID? = null, additionalHeaders: Map<String, String> = mapOf()): OkHttpClient {
     val tsv1HttpClient = OkHttpClient().newBuilder()
         .apply {
           certificatePinner?.let { pinner ->
@@ -124,7 +145,7 @@ class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brok
     return tsv1HttpClient
   }
 
-  private fun createTSV1IdentityClient(privateSigningKey: ByteArray, publicSigningKey: ByteArray = crypto.getPublicSigningKey(privateSigningKey), clientID: UUID? = null, additionalHeaders: Map<String, String> = mapOf()): IdentityServiceClient {
+  private fun createTSV1IdentityClient(privateSigningKey: ByteArray, publicSigningKey: ByteArray = PublicKeys.signingKey(privateSigningKey), clientID: UUID? = null, additionalHeaders: Map<String, String> = mapOf()): IdentityServiceClient {
     val tsv1HttpClient = OkHttpClient().newBuilder()
         .apply {
           certificatePinner?.let { pinner ->
@@ -159,6 +180,8 @@ class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brok
     backgroundExecutor.execute {
       try {
         val username = userName.toLowerCase(Locale.US)
+        // Derive the note credentials while registration is in progress.
+        val noteCredsFuture = NoteCredentialDerivation.deriveAsync(realmName, username, password, CredentialType.PASSWORD)
         val newSigningKey = generateSigningKey()
         val publicSigningKey = getPublicSigningKey(newSigningKey)
         val newEncryptionKey = generateKey()
@@ -178,7 +201,7 @@ class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brok
                 fromConfig(storageClientConfig)
                 certificatePinner?.let { pinner -> setCertificatePinner(pinner) }
               }.build()
-              val deriveNoteCreds = deriveNoteCreds(realmName, username, password, CredentialType.PASSWORD)
+              val deriveNoteCreds = noteCredsFuture.get()
               val storageConfig = storageClientConfig.json()
               val identityConfig = IdentityConfig(apiURL, appName, brokerTargetURL.toString(), realmName, body.identityInfo.userId, username, requestPublicRealmInfo().domain)
               val identityConfigAsString = mapper.writeValueAsString(identityConfig)
@@ -334,142 +357,187 @@ class Realm @JvmOverloads constructor(realmName: String?, appName: String?, brok
     backgroundExecutor.execute {
       try {
         val username = userName.toLowerCase(Locale.US)
-        val deriveNoteCreds = deriveNoteCreds(realmName, username, password, credentialType)
-        val anonymousIdentityClient = createTSV1IdentityClient(deriveNoteCreds.signingKeys.privateKey, deriveNoteCreds.signingKeys.publicKey)
-        val sessionStart = anonymousIdentityClient.loginIdentity(LoginRequest(username, requestPublicRealmInfo().domain, appName)).execute()
+        val deriveNoteCreds = NoteCredentialDerivation.derive(realmName, username, password, credentialType)
+        completeLogin(username, deriveNoteCreds, actionHandler, resultHandler)
+      } catch (e: Exception) {
+        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("An unexpected error occurred during user login", e))) })
+      }
+    }
+  }
+
+  /**
+   * Log in using note credentials already derived with [deriveNoteCredentials].
+   *
+   * Deriving credentials is expensive, so an application can derive them once (for example,
+   * while the user is still entering other details) and use the result for this login.
+   */
+  @Throws(E3DBCryptoException::class, E3DBException::class)
+  fun loginWithCredentials(userName: String?, noteCreds: DerivedNoteCreds?, actionHandler: LoginActionHandler?, resultHandler: ResultHandler<IdentityClient>?) {
+    require(!userName.isNullOrBlank()) { illegalArgumentBlank("userName") }
+    require(noteCreds != null) { illegalArgumentNull("noteCreds", "DerivedNoteCreds") }
+    require(resultHandler != null) { illegalArgumentNull("resultHandler", "ResultHandler") }
+    backgroundExecutor.execute {
+      try {
+        completeLogin(userName.toLowerCase(Locale.US), noteCreds, actionHandler, resultHandler)
+      } catch (e: Exception) {
+        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("An unexpected error occurred during user login", e))) })
+      }
+    }
+  }
+
+  /**
+   * Derive the note credentials used to log in, off the calling thread.
+   *
+   * The result can be passed to [loginWithCredentials].
+   */
+  @JvmOverloads
+  fun deriveNoteCredentials(userName: String?, password: String?, credentialType: CredentialType? = CredentialType.PASSWORD, resultHandler: ResultHandler<DerivedNoteCreds>?) {
+    require(!userName.isNullOrBlank()) { illegalArgumentBlank("userName") }
+    require(!password.isNullOrEmpty()) { illegalArgumentEmpty("password") }
+    require(credentialType != null) { illegalArgumentNull("credentialType", "CredentialType") }
+    require(resultHandler != null) { illegalArgumentNull("resultHandler", "ResultHandler") }
+    Client.cryptoExecutor.execute {
+      try {
+        val creds = NoteCredentialDerivation.derive(realmName, userName.toLowerCase(Locale.US), password, credentialType)
+        uiExecutor.execute { resultHandler.handle(ValueResult(creds)) }
+      } catch (e: Exception) {
+        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("An unexpected error occurred deriving note credentials", e))) })
+      }
+    }
+  }
+
+  private fun completeLogin(username: String, deriveNoteCreds: DerivedNoteCreds, actionHandler: LoginActionHandler?, resultHandler: ResultHandler<IdentityClient>) {
+    val anonymousIdentityClient = createTSV1IdentityClient(deriveNoteCreds.signingKeys.privateKey, deriveNoteCreds.signingKeys.publicKey)
+    val sessionStart = anonymousIdentityClient.loginIdentity(LoginRequest(username, requestPublicRealmInfo().domain, appName)).execute()
+    when {
+      sessionStart.isSuccessful -> {
+        val fieldMap = HashMap<String, String>()
+        fieldMap.apply {
+          sessionStart.body()?.fields()?.forEach {
+            put(it.key, it.value.asText())
+          }
+        }
+        val sessionRequest = identityClient.sessionRequest(requestPublicRealmInfo().domain, fieldMap).execute()
         when {
-          sessionStart.isSuccessful -> {
-            val fieldMap = HashMap<String, String>()
-            fieldMap.apply {
-              sessionStart.body()?.fields()?.forEach {
-                put(it.key, it.value.asText())
-              }
-            }
-            val sessionRequest = identityClient.sessionRequest(requestPublicRealmInfo().domain, fieldMap).execute()
-            when {
-              sessionRequest.isSuccessful -> {
-                var body: CompleteLoginAction
-                body = sessionRequest.body()!!
-                var madeFinalRequest = false
-                while (!madeFinalRequest) {
-                  when (body.loginActionType) {
-                    "fetch" -> {
-                      madeFinalRequest = true
-                      val finalRequest = anonymousIdentityClient.loginredirect(LoginRedirectRequest(
-                        requestPublicRealmInfo().domain,
-                          body.context["session_code"] ?: "",
-                          body.context["execution"] ?: "",
-                          body.context["tab_id"] ?: "",
-                          body.context["client_id"] ?: "",
-                          body.context["auth_session_id"] ?: ""
-                      )).execute()
-                      when {
-                        finalRequest.isSuccessful -> {
-                          val finalRequestBody = finalRequest.body()!!
-                          readAnonymousNote(
-                              null,
-                              deriveNoteCreds.noteName,
-                              deriveNoteCreds.signingKeys.privateKey,
-                              deriveNoteCreds.signingKeys.publicKey,
-                              deriveNoteCreds.encryptionKeys.privateKey,
-                              this.apiURL,
-                              mapOf("X-TOZID-LOGIN-TOKEN" to finalRequestBody["access_token"]!!.asText()),
-                              this.certificatePinner
-                          ) { noteResponseOpt ->
-                            noteResponseOpt!!.let { noteResponse ->
-                              when {
-                                noteResponse.isError -> {
-                                  (uiExecutor.execute { resultHandler.handle(ErrorResult(noteResponse.asError().error())) })
-                                }
-                                else -> {
-                                  val message = noteResponse.asValue()!!
-                                  message.data["storage"]?.let { storageConfig ->
-                                    message.data["config"]?.let { identityConfigJson ->
-                                      val storageClient = ClientBuilder().fromConfig(Config.fromJson(storageConfig)).build()
-                                      val identityConfig = IdentityConfig.fromJson(identityConfigJson)
-                                      when {
-                                        identityConfig.username.isNullOrEmpty() -> identityConfig.username = username
-                                      }
-                                      AgentToken.fromJson(finalRequestBody)?.let { agentToken ->
-                                        uiExecutor.execute { resultHandler.handle(ValueResult(IdentityClient(storageClient, identityConfig, agentToken, certificatePinner))) }
-                                      }
-                                          ?: run {
-                                            (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("Identity Token could not be parsed"))) })
-                                          }
-                                    }
+          sessionRequest.isSuccessful -> {
+            var body: CompleteLoginAction
+            body = sessionRequest.body()!!
+            var madeFinalRequest = false
+            while (!madeFinalRequest) {
+              when (body.loginActionType) {
+                "fetch" -> {
+                  madeFinalRequest = true
+                  val finalRequest = anonymousIdentityClient.loginredirect(LoginRedirectRequest(
+                    requestPublicRealmInfo().domain,
+                      body.context["session_code"] ?: "",
+                      body.context["execution"] ?: "",
+                      body.context["tab_id"] ?: "",
+                      body.context["client_id"] ?: "",
+                      body.context["auth_session_id"] ?: ""
+                  )).execute()
+                  when {
+                    finalRequest.isSuccessful -> {
+                      val finalRequestBody = finalRequest.body()!!
+                      readAnonymousNote(
+                          null,
+                          deriveNoteCreds.noteName,
+                          deriveNoteCreds.signingKeys.privateKey,
+                          deriveNoteCreds.signingKeys.publicKey,
+                          deriveNoteCreds.encryptionKeys.privateKey,
+                          this.apiURL,
+                          mapOf("X-TOZID-LOGIN-TOKEN" to finalRequestBody["access_token"]!!.asText()),
+                          this.certificatePinner
+                      ) { noteResponseOpt ->
+                        noteResponseOpt!!.let { noteResponse ->
+                          when {
+                            noteResponse.isError -> {
+                              (uiExecutor.execute { resultHandler.handle(ErrorResult(noteResponse.asError().error())) })
+                            }
+                            else -> {
+                              val message = noteResponse.asValue()!!
+                              message.data["storage"]?.let { storageConfig ->
+                                message.data["config"]?.let { identityConfigJson ->
+                                  val storageClient = ClientBuilder().fromConfig(Config.fromJson(storageConfig)).build()
+                                  val identityConfig = IdentityConfig.fromJson(identityConfigJson)
+                                  when {
+                                    identityConfig.username.isNullOrEmpty() -> identityConfig.username = username
                                   }
-                                      ?: run { (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("An error occurred while logging in, config is unparsable"))) }) }
+                                  AgentToken.fromJson(finalRequestBody)?.let { agentToken ->
+                                    uiExecutor.execute { resultHandler.handle(ValueResult(IdentityClient(storageClient, identityConfig, agentToken, certificatePinner))) }
+                                  }
+                                      ?: run {
+                                        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("Identity Token could not be parsed"))) })
+                                      }
                                 }
                               }
+                                  ?: run { (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("An error occurred while logging in, config is unparsable"))) }) }
                             }
                           }
                         }
-                        else -> (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException.find(finalRequest.code(), finalRequest.message()))) })
                       }
                     }
-                    else -> {
-                      actionHandler?.let {
-                        val handleAction = it.handleAction(LoginAction(body))
-                        val url = URI(body.actionURL)
-                        val loginActionClient = createTSV1Client(
-                            deriveNoteCreds.signingKeys.privateKey,
-                            deriveNoteCreds.signingKeys.publicKey
-                        )
-                        val request = Request.Builder()
-                        request.url(url.toURL())
-                        when (body.contentType) {
-                          "application/x-www-form-urlencoded" -> {
-                            request.post(FormBody.Builder().apply {
-                              handleAction.entries.forEach { actionEntry ->
-                                addEncoded(actionEntry.key, actionEntry.value.toString())
-                              }
-                            }.build())
-
+                    else -> (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException.find(finalRequest.code(), finalRequest.message()))) })
+                  }
+                }
+                else -> {
+                  actionHandler?.let {
+                    val handleAction = it.handleAction(LoginAction(body))
+                    val url = URI(body.actionURL)
+                    val loginActionClient = createTSV1Client(
+                        deriveNoteCreds.signingKeys.privateKey,
+                        deriveNoteCreds.signingKeys.publicKey
+                    )
+                    val request = Request.Builder()
+                    request.url(url.toURL())
+                    when (body.contentType) {
+                      "application/x-www-form-urlencoded" -> {
+                        request.post(FormBody.Builder().apply {
+                          handleAction.entries.forEach { actionEntry ->
+                            addEncoded(actionEntry.key, actionEntry.value.toString())
                           }
-                          else -> {
+                        }.build())
 
+                      }
+                      else -> {
 
-                            request.post(mapper.writeValueAsString(handleAction).toRequestBody("application/json".toMediaType()))
-                          }
-                        }
-                        val loginActionResponse = loginActionClient.newCall(request.build()).execute()
-                        when (loginActionResponse.isSuccessful) {
-                          false -> {
+
+                        request.post(mapper.writeValueAsString(handleAction).toRequestBody("application/json".toMediaType()))
+                      }
+                    }
+                    val loginActionResponse = loginActionClient.newCall(request.build()).execute()
+                    when (loginActionResponse.isSuccessful) {
+                      false -> {
+                        madeFinalRequest = true
+                        throw E3DBException.find(loginActionResponse.code, loginActionResponse.message)
+                      }
+                      true -> {
+                        val content = loginActionResponse.body?.string()
+                        content?.let {
+                          body = mapper?.readValue(content) ?: run {
                             madeFinalRequest = true
-                            throw E3DBException.find(loginActionResponse.code, loginActionResponse.message)
-                          }
-                          true -> {
-                            val content = loginActionResponse.body?.string()
-                            content?.let {
-                              body = mapper?.readValue(content) ?: run {
-                                madeFinalRequest = true
-                                throw E3DBException("Login action response was not parsable login action failed")
-                              }
-                            } ?: run {
-                              madeFinalRequest = true
-                              throw E3DBException("Login action response was not parsable login action failed")
-                            }
+                            throw E3DBException("Login action response was not parsable login action failed")
                           }
+                        } ?: run {
+                          madeFinalRequest = true
+                          throw E3DBException("Login action response was not parsable login action failed")
                         }
-
-                      } ?: run {
-                        madeFinalRequest = true
-                        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("During login an action needed to be handled but no LoginActionHandler was provided"))) })
                       }
                     }
+
+                  } ?: run {
+                    madeFinalRequest = true
+                    (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("During login an action needed to be handled but no LoginActionHandler was provided"))) })
                   }
                 }
               }
-              else -> (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException.find(sessionRequest.code(), sessionRequest.message()))) })
-
             }
           }
-          else -> {
-            (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException.find(sessionStart.code(), sessionStart.message()))) })
-          }
+          else -> (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException.find(sessionRequest.code(), sessionRequest.message()))) })
+
         }
-      } catch (e: Exception) {
-        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException("An unexpected error occurred during user login", e))) })
+      }
+      else -> {
+        (uiExecutor.execute { resultHandler.handle(ErrorResult(E3DBException.find(sessionStart.code(), sessionStart.message()))) })
       }
     }
   }
@@ -0,0 +1,517 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import static com.tozny.e3db.Checks.*;
+
+/**
+ * Indexes the metadata of records kept locally, so that searches can be answered without a round trip
+ * to E3DB. Add records as they are read or searched for (using {@link #add(RecordMeta)}), or as they are
+ * encrypted locally (using {@link #add(UUID, ClientMeta)}), then search with the same {@link SearchRequest}
+ * that would be given to {@link Client#search(SearchRequest, ResultHandler)}.
+ *
+ * <p>Record type, writer ID, user ID and the keys, values and key/value pairs of {@link RecordMeta#plain()}
+ * each map to the IDs of the records that have them, so {@link SearchRequest.SearchParamStrategy#EXACT exact}
+ * terms are answered by lookups, and other strategies by scanning the distinct terms rather than the records.
+ * Creation and modification times are kept sorted, so ranges are answered without a scan.
+ *
+ * <p>Only the metadata is indexed; the index holds no record data and is not persisted. To rebuild it for a
+ * {@link LocalRecordStore}, add the {@link LocalEncryptedRecord#meta()} of each record in the store.
+ *
+ * <p>Instances are thread-safe. Searches proceed concurrently; changes are serialized.
+ */
+public final class RecordIndex {
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<UUID, Entry> entries = new HashMap<>();
+  private final Map<String, Set<UUID>> byType = new HashMap<>();
+  private final Map<String, Set<UUID>> byWriter = new HashMap<>();
+  private final Map<String, Set<UUID>> byUser = new HashMap<>();
+  private final Map<String, Set<UUID>> byKey = new HashMap<>();
+  private final Map<String, Set<UUID>> byValue = new HashMap<>();
+  // Plain key, then value.
+  private final Map<String, Map<String, Set<UUID>>> byTag = new HashMap<>();
+  // Milliseconds since the epoch. Records added without times are absent.
+  private final TreeMap<Long, Set<UUID>> byCreated = new TreeMap<>();
+  private final TreeMap<Long, Set<UUID>> byModified = new TreeMap<>();
+
+  private static final class Entry {
+    private final UUID recordId;
+    private final UUID writerId;
+    private final UUID userId;
+    private final String type;
+    private final Map<String, String> plain;
+    private final Long created;
+    private final Long lastModified;
+
+    private Entry(UUID recordId, UUID writerId, UUID userId, String type, Map<String, String> plain, Date created, Date lastModified) {
+      this.recordId = recordId;
+      this.writerId = writerId;
+      this.userId = userId;
+      this.type = type;
+      this.plain = plain == null ? Collections.<String, String>emptyMap() : new HashMap<>(plain);
+      this.created = created == null ? null : created.getTime();
+      this.lastModified = lastModified == null ? null : lastModified.getTime();
+    }
+  }
+
+  /**
+   * Decides whether a term held by the index matches a term being searched for.
+   */
+  private interface TermMatcher {
+    boolean matches(String term);
+  }
+
+  /**
+   * Adds a record's metadata to the index, replacing any already held for the same record.
+   *
+   * @param meta Metadata of the record.
+   */
+  public void add(RecordMeta meta) {
+    checkNotNull(meta, "meta");
+    put(new Entry(meta.recordId(), meta.writerId(), meta.userId(), meta.type(), meta.plain(), meta.created(), meta.lastModified()));
+  }
+
+  /**
+   * Adds the metadata of a record that has not been written to E3DB, such as one encrypted with
+   * {@link Client#encryptRecord(String, RecordData, Map, EAKInfo)}, replacing any already held for the same record.
+   *
+   * <p>The record has no creation or modification time, so it is not found by searches with a
+   * {@link SearchRequest#range}, and is ordered after other records.
+   *
+   * @param recordId ID under which to index the record.
+   * @param meta Metadata of the record.
+   */
+  public void add(UUID recordId, ClientMeta meta) {
+    checkNotNull(recordId, "recordId");
+    checkNotNull(meta, "meta");
+    put(new Entry(recordId, meta.writerId(), meta.userId(), meta.type(), meta.plain(), null, null));
+  }
+
+  /**
+   * Removes a record from the index.
+   *
+   * @param recordId ID of the record.
+   * @return {@code true} if the record was in the index.
+   */
+  public boolean remove(UUID recordId) {
+    checkNotNull(recordId, "recordId");
+    lock.writeLock().lock();
+    try {
+      Entry entry = entries.remove(recordId);
+      if (entry == null)
+        return false;
+      unindex(entry);
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Whether the index holds the given record.
+   *
+   * @param recordId ID of the record.
+   * @return {@code true} if the record is in the index.
+   */
+  public boolean contains(UUID recordId) {
+    checkNotNull(recordId, "recordId");
+    lock.readLock().lock();
+    try {
+      return entries.containsKey(recordId);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Number of records in the index.
+   *
+   * @return size.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the records in the index matching the given request, as E3DB would.
+   *
+   * <p>{@link SearchRequest#match}, {@link SearchRequest#exclude}, {@link SearchRequest#range} and
+   * {@link SearchRequest#order} are applied. Every matching record is returned; the limit and next token,
+   * and the options controlling which writers and data are included, are ignored. Within a
+   * {@link SearchRequest.SearchParams}, each ID, type, key, value and tag listed in its terms is a separate
+   * term, which must match for {@link SearchRequest.SearchParamCondition#AND all} or
+   * {@link SearchRequest.SearchParamCondition#OR any} of them. {@link SearchRequest.SearchParamStrategy#FUZZY Fuzzy}
+   * terms match within an edit distance of 1 for terms of 3 to 5 characters, and 2 for longer terms. Range
+   * bounds are inclusive.
+   *
+   * @param request The criteria to filter records by.
+   * @return IDs of the matching records, ordered by creation time.
+   * @throws java.util.regex.PatternSyntaxException If a {@link SearchRequest.SearchParamStrategy#REGEXP regular expression} is invalid.
+   */
+  public List<UUID> search(SearchRequest request) {
+    checkNotNull(request, "request");
+    lock.readLock().lock();
+    try {
+      Set<UUID> found = null;
+      if (request.match != null && !request.match.isEmpty()) {
+        found = new HashSet<>();
+        for (SearchRequest.SearchParams params : request.match)
+          found.addAll(matching(params));
+      }
+
+      if (request.range != null) {
+        Set<UUID> inRange = inRange(request.range);
+        if (found == null) {
+          found = inRange;
+        } else if (found.size() <= inRange.size()) {
+          found.retainAll(inRange);
+        } else {
+          inRange.retainAll(found);
+          found = inRange;
+        }
+      }
+
+      if (found == null)
+        found = new HashSet<>(entries.keySet());
+
+      if (request.exclude != null)
+        for (SearchRequest.SearchParams params : request.exclude)
+          found.removeAll(matching(params));
+
+      List<Entry> results = new ArrayList<>(found.size());
+      for (UUID id : found)
+        results.add(entries.get(id));
+      final boolean descending = request.order != null && request.order.sortOrder == SearchRequest.SearchSortOrder.DESCENDING;
+      Collections.sort(results, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+          if (a.created == null || b.created == null) {
+            if (a.created != null || b.created != null)
+              return a.created == null ? 1 : -1;
+          } else if (!a.created.equals(b.created)) {
+            return descending ? b.created.compareTo(a.created) : a.created.compareTo(b.created);
+          }
+          return a.recordId.compareTo(b.recordId);
+        }
+      });
+
+      List<UUID> ids = new ArrayList<>(results.size());
+      for (Entry entry : results)
+        ids.add(entry.recordId);
+      return ids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void put(Entry entry) {
+    lock.writeLock().lock();
+    try {
+      Entry previous = entries.put(entry.recordId, entry);
+      if (previous != null)
+        unindex(previous);
+
+      post(byType, entry.type, entry.recordId);
+      post(byWriter, String.valueOf(entry.writerId), entry.recordId);
+      post(byUser, String.valueOf(entry.userId), entry.recordId);
+      for (Map.Entry<String, String> tag : entry.plain.entrySet()) {
+        post(byKey, tag.getKey(), entry.recordId);
+        post(byValue, tag.getValue(), entry.recordId);
+        Map<String, Set<UUID>> values = byTag.get(tag.getKey());
+        if (values == null) {
+          values = new HashMap<>();
+          byTag.put(tag.getKey(), values);
+        }
+        post(values, tag.getValue(), entry.recordId);
+      }
+      if (entry.created != null)
+        post(byCreated, entry.created, entry.recordId);
+      if (entry.lastModified != null)
+        post(byModified, entry.lastModified, entry.recordId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void unindex(Entry entry) {
+    unpost(byType, entry.type, entry.recordId);
+    unpost(byWriter, String.valueOf(entry.writerId), entry.recordId);
+    unpost(byUser, String.valueOf(entry.userId), entry.recordId);
+    for (Map.Entry<String, String> tag : entry.plain.entrySet()) {
+      unpost(byKey, tag.getKey(), entry.recordId);
+      unpost(byValue, tag.getValue(), entry.recordId);
+      Map<String, Set<UUID>> values = byTag.get(tag.getKey());
+      unpost(values, tag.getValue(), entry.recordId);
+      if (values.isEmpty())
+        byTag.remove(tag.getKey());
+    }
+    if (entry.created != null)
+      unpost(byCreated, entry.created, entry.recordId);
+    if (entry.lastModified != null)
+      unpost(byModified, entry.lastModified, entry.recordId);
+  }
+
+  private static <K> void post(Map<K, Set<UUID>> postings, K term, UUID recordId) {
+    Set<UUID> ids = postings.get(term);
+    if (ids == null) {
+      ids = new HashSet<>();
+      postings.put(term, ids);
+    }
+    ids.add(recordId);
+  }
+
+  private static <K> void unpost(Map<K, Set<UUID>> postings, K term, UUID recordId) {
+    Set<UUID> ids = postings.get(term);
+    if (ids != null && ids.remove(recordId) && ids.isEmpty())
+      postings.remove(term);
+  }
+
+  private Set<UUID> inRange(SearchRequest.SearchRange range) {
+    TreeMap<Long, Set<UUID>> times = range.rangeType == SearchRequest.SearchRangeType.MODIFIED ? byModified : byCreated;
+    SortedMap<Long, Set<UUID>> within;
+    if (range.start != null && range.end != null) {
+      if (range.start.after(range.end))
+        return new HashSet<>();
+      within = times.subMap(range.start.getTime(), true, range.end.getTime(), true);
+    } else if (range.start != null) {
+      within = times.tailMap(range.start.getTime(), true);
+    } else if (range.end != null) {
+      within = times.headMap(range.end.getTime(), true);
+    } else {
+      within = times;
+    }
+
+    Set<UUID> ids = new HashSet<>();
+    for (Set<UUID> posted : within.values())
+      ids.addAll(posted);
+    return ids;
+  }
+
+  /**
+   * Records matching the given parameters: the union (for OR) or intersection (for AND) of
+   * the records matching each term.
+   */
+  private Set<UUID> matching(SearchRequest.SearchParams params) {
+    SearchRequest.SearchParamStrategy strategy = params.strategy == null ? SearchRequest.SearchParamStrategy.EXACT : params.strategy;
+    boolean all = params.condition == SearchRequest.SearchParamCondition.AND;
+    SearchRequest.SearchTerms terms = params.terms;
+
+    List<Set<UUID>> byTerm = new ArrayList<>();
+    if (terms != null) {
+      if (terms.recordTypes != null)
+        for (String type : terms.recordTypes)
+          byTerm.add(lookup(byType, type, strategy));
+      if (terms.writerIds != null)
+        for (UUID writerId : terms.writerIds)
+          byTerm.add(lookup(byWriter, String.valueOf(writerId), strategy));
+      if (terms.userIds != null)
+        for (UUID userId : terms.userIds)
+          byTerm.add(lookup(byUser, String.valueOf(userId), strategy));
+      if (terms.recordIds != null)
+        for (UUID recordId : terms.recordIds)
+          byTerm.add(recordsWithId(recordId, strategy));
+      if (terms.keys != null)
+        for (String key : terms.keys)
+          byTerm.add(lookup(byKey, key, strategy));
+      if (terms.values != null)
+        for (String value : terms.values)
+          byTerm.add(lookup(byValue, value, strategy));
+      if (terms.tags != null)
+        for (Map.Entry<String, String> tag : terms.tags.entrySet())
+          byTerm.add(recordsWithTag(tag.getKey(), tag.getValue(), strategy));
+    }
+
+    Set<UUID> result = new HashSet<>();
+    if (byTerm.isEmpty())
+      return result;
+    if (all) {
+      // Intersect starting from the smallest set.
+      Collections.sort(byTerm, new Comparator<Set<UUID>>() {
+        @Override
+        public int compare(Set<UUID> a, Set<UUID> b) {
+          return a.size() - b.size();
+        }
+      });
+      for (UUID id : byTerm.get(0)) {
+        boolean inAll = true;
+        for (int i = 1; inAll && i < byTerm.size(); i++)
+          inAll = byTerm.get(i).contains(id);
+        if (inAll)
+          result.add(id);
+      }
+    } else {
+      for (Set<UUID> ids : byTerm)
+        result.addAll(ids);
+    }
+    return result;
+  }
+
+  private static Set<UUID> lookup(Map<String, Set<UUID>> postings, String term, SearchRequest.SearchParamStrategy strategy) {
+    if (term == null)
+      return Collections.emptySet();
+    if (strategy == SearchRequest.SearchParamStrategy.EXACT) {
+      Set<UUID> ids = postings.get(term);
+      return ids == null ? Collections.<UUID>emptySet() : ids;
+    }
+
+    TermMatcher matcher = matcher(term, strategy);
+    Set<UUID> ids = new HashSet<>();
+    for (Map.Entry<String, Set<UUID>> posted : postings.entrySet())
+      if (posted.getKey() != null && matcher.matches(posted.getKey()))
+        ids.addAll(posted.getValue());
+    return ids;
+  }
+
+  private Set<UUID> recordsWithId(UUID recordId, SearchRequest.SearchParamStrategy strategy) {
+    if (recordId == null)
+      return Collections.emptySet();
+    if (strategy == SearchRequest.SearchParamStrategy.EXACT)
+      return entries.containsKey(recordId) ? Collections.singleton(recordId) : Collections.<UUID>emptySet();
+
+    TermMatcher matcher = matcher(recordId.toString(), strategy);
+    Set<UUID> ids = new HashSet<>();
+    for (UUID id : entries.keySet())
+      if (matcher.matches(id.toString()))
+        ids.add(id);
+    return ids;
+  }
+
+  private Set<UUID> recordsWithTag(String key, String value, SearchRequest.SearchParamStrategy strategy) {
+    if (key == null || value == null)
+      return Collections.emptySet();
+    if (strategy == SearchRequest.SearchParamStrategy.EXACT) {
+      Map<String, Set<UUID>> values = byTag.get(key);
+      return values == null ? Collections.<UUID>emptySet() : lookup(values, value, strategy);
+    }
+
+    TermMatcher keyMatcher = matcher(key, strategy);
+    Set<UUID> ids = new HashSet<>();
+    for (Map.Entry<String, Map<String, Set<UUID>>> values : byTag.entrySet())
+      if (keyMatcher.matches(values.getKey()))
+        ids.addAll(lookup(values.getValue(), value, strategy));
+    return ids;
+  }
+
+  private static TermMatcher matcher(String term, SearchRequest.SearchParamStrategy strategy) {
+    switch (strategy) {
+      case FUZZY:
+        return fuzzy(term);
+      case WILDCARD:
+        return pattern(wildcardPattern(term));
+      case REGEXP:
+        return pattern(Pattern.compile(term));
+      default:
+        final String exact = term;
+        return new TermMatcher() {
+          @Override
+          public boolean matches(String candidate) {
+            return exact.equals(candidate);
+          }
+        };
+    }
+  }
+
+  private static TermMatcher pattern(final Pattern pattern) {
+    return new TermMatcher() {
+      @Override
+      public boolean matches(String candidate) {
+        return pattern.matcher(candidate).matches();
+      }
+    };
+  }
+
+  /**
+   * Translates a wildcard term, where {@code *} matches any characters and {@code ?} any one character,
+   * to a pattern.
+   */
+  static Pattern wildcardPattern(String term) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (int i = 0; i < term.length(); i++) {
+      char c = term.charAt(i);
+      if (c == '*' || c == '?') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '*' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0)
+      regex.append(Pattern.quote(literal.toString()));
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  private static TermMatcher fuzzy(final String term) {
+    final int maxEdits = term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+    return new TermMatcher() {
+      @Override
+      public boolean matches(String candidate) {
+        return Math.abs(candidate.length() - term.length()) <= maxEdits && editDistance(term, candidate, maxEdits) <= maxEdits;
+      }
+    };
+  }
+
+  /**
+   * Edit distance between two strings, counting insertions, deletions, substitutions and transpositions of
+   * adjacent characters. Stops early, returning a value greater than {@code max}, once the distance
+   * is known to exceed {@code max}.
+   */
+  static int editDistance(String a, String b, int max) {
+    int[] previous2 = new int[b.length() + 1];
+    int[] previous = new int[b.length() + 1];
+    int[] current = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++)
+      previous[j] = j;
+
+    for (int i = 1; i <= a.length(); i++) {
+      current[0] = i;
+      int rowMin = current[0];
+      for (int j = 1; j <= b.length(); j++) {
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+        if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+          d = Math.min(d, previous2[j - 2] + 1);
+        current[j] = d;
+        rowMin = Math.min(rowMin, d);
+      }
+      if (rowMin > max)
+        return max + 1;
+      int[] recycled = previous2;
+      previous2 = previous;
+      previous = current;
+      current = recycled;
+    }
+    return previous[b.length()];
+  }
+}
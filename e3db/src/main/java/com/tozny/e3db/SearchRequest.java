@@ -13,10 +13,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
-import static com.tozny.e3db.Client.iso8601;
-
 
 /**
  * Holds all parameters for an E3DB query operation.
@@ -96,7 +95,16 @@ public class SearchRequest {
    */
   public final SearchOrder order;
 
-  SearchRequest(long nextToken, int limit, boolean includeAllWriters, boolean includeData, List<SearchParams> match, List<SearchParams> exclude, SearchRange range, SearchOrder order) {
+  /**
+   * If not {@code null}, only these fields of each record are decrypted and returned by {@link Record#data()}.
+   * Other fields are skipped while parsing results. Only meaningful when {@link #includeData} is {@code true}.
+   * <p>
+   * This is applied by the client; it is not sent to E3DB.
+   */
+  @JsonIgnore
+  public final Set<String> fields;
+
+  SearchRequest(long nextToken, int limit, boolean includeAllWriters, boolean includeData, List<SearchParams> match, List<SearchParams> exclude, SearchRange range, SearchOrder order, Set<String> fields) {
     this.nextToken = nextToken;
     this.limit = limit;
     this.includeAllWriters = includeAllWriters;
@@ -105,6 +113,7 @@ public class SearchRequest {
     this.exclude = exclude;
     this.range = range;
     this.order = order;
+    this.fields = fields;
   }
 
   /**
@@ -121,7 +130,8 @@ public class SearchRequest {
             setMatch(this.match).
             setExclude(this.exclude).
             setRange(this.range).
-            setOrder(this.order);
+            setOrder(this.order).
+            setFields(this.fields);
   }
 
   /**
@@ -430,7 +440,7 @@ public class SearchRequest {
       if (this.start == null) {
         return null;
       }
-      return iso8601.format(this.start);
+      return Timestamps.format(this.start);
     }
 
     @JsonProperty("before")
@@ -439,7 +449,7 @@ public class SearchRequest {
       if (this.end == null) {
         return null;
       }
-      return iso8601.format(this.end);
+      return Timestamps.format(this.end);
     }
 
     public SearchRange(SearchRangeType rangeType, Date start, Date end) {
@@ -1,7 +1,11 @@
 package com.tozny.e3db;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Used to specify parameters for a search operation.
@@ -22,6 +26,7 @@ public class SearchRequestBuilder {
   private List<SearchRequest.SearchParams> exclude;
   private SearchRequest.SearchRange range;
   private SearchRequest.SearchOrder order;
+  private Set<String> fields;
 
   public SearchRequestBuilder setNextToken(long nextToken) {
     this.nextToken = nextToken;
@@ -63,6 +68,18 @@ public class SearchRequestBuilder {
     return this;
   }
 
+  /**
+   * Only decrypt and return these fields of each record. Unrequested fields are skipped while
+   * results are parsed, which saves time and memory when records are large.
+   *
+   * @param fields Names of the fields to return. If {@code null} (the default), all fields are returned.
+   * @return This instance.
+   */
+  public SearchRequestBuilder setFields(Collection<String> fields) {
+    this.fields = fields == null ? null : Collections.unmodifiableSet(new HashSet<>(fields));
+    return this;
+  }
+
   public SearchRequest build() {
     if (this.match == null) {
       this.match = new ArrayList<>();
@@ -70,6 +87,6 @@ public class SearchRequestBuilder {
     if (this.exclude == null) {
       this.exclude = new ArrayList<>();
     }
-    return new SearchRequest(this.nextToken, this.limit, this.includeAllWriters, this.includeData, this.match, this.exclude, this.range, this.order);
+    return new SearchRequest(this.nextToken, this.limit, this.includeAllWriters, this.includeData, this.match, this.exclude, this.range, this.order, this.fields);
   }
 }
\ No newline at end of file
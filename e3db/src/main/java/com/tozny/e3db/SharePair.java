@@ -0,0 +1,76 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.util.UUID;
+
+import static com.tozny.e3db.Checks.checkNotEmpty;
+import static com.tozny.e3db.Checks.checkNotNull;
+
+/**
+ * Identifies a single reader and record type when sharing in bulk with
+ * {@link Client#shareAll(java.util.Collection, java.util.Collection, int, BulkResultHandler)} or
+ * {@link Client#revokeAll(java.util.Collection, java.util.Collection, int, BulkResultHandler)}.
+ */
+public final class SharePair {
+  private final String type;
+  private final UUID readerId;
+
+  public SharePair(String type, UUID readerId) {
+    checkNotEmpty(type, "type");
+    checkNotNull(readerId, "readerId");
+    this.type = type;
+    this.readerId = readerId;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public UUID getReaderId() {
+    return readerId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    SharePair that = (SharePair) o;
+
+    return type.equals(that.type) && readerId.equals(that.readerId);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = type.hashCode();
+    result = 31 * result + readerId.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SharePair{" +
+        "type='" + type + '\'' +
+        ", readerId=" + readerId +
+        '}';
+  }
+}
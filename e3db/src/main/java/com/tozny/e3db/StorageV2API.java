@@ -2,6 +2,8 @@ package com.tozny.e3db;
 
 import java.util.UUID;
 
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
@@ -18,6 +20,9 @@ public interface StorageV2API {
   @POST(V2_BASE_PATH + "/notes")
   Call<Note> writeNote(@Body Note note);
 
+  @POST(V2_BASE_PATH + "/notes")
+  Call<ResponseBody> writeNote(@Body RequestBody note);
+
   @PUT(V2_BASE_PATH + "/notes")
   Call<Note> replaceNote(@Body Note note);
 
@@ -0,0 +1,229 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.util.*;
+
+import static com.tozny.e3db.Checks.checkNotNull;
+
+/**
+ * Marks how far a {@link Client#sync(SyncCursor, SearchRequest, ResultHandler)} has got through the
+ * changes to the records a search matches. Each sync returns a new cursor, from which the next sync
+ * continues; the cursor can be stored (using {@link #encode()}) and loaded (using {@link #decode(String)})
+ * so that syncing continues where it left off after the application restarts.
+ *
+ * <p>A cursor holds the latest modification time seen (or, if earlier, the time the sync that returned it
+ * began), and the versions of records modified shortly before it. Each sync searches again from a little
+ * before that time, so that changes made while an earlier sync was paging through results are not missed,
+ * and uses the versions already seen to skip records that have already been returned.
+ *
+ * <p>Instances are immutable.
+ */
+public final class SyncCursor {
+  // How far before modifiedAfter each sync searches again, to catch records modified while an
+  // earlier sync was paging through results.
+  static final long OVERLAP_MILLIS = 60_000L;
+  private static final ObjectMapper mapper;
+
+  static {
+    mapper = new ObjectMapper();
+    mapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+  }
+
+  private final Date modifiedAfter;
+  // Record ID and version ("ID/version") of each record returned that was modified within the
+  // overlap before modifiedAfter, with the time it was modified.
+  private final Map<String, Long> seen;
+
+  SyncCursor(Date modifiedAfter, Map<String, Long> seen) {
+    this.modifiedAfter = modifiedAfter;
+    this.seen = seen;
+  }
+
+  /**
+   * A cursor from which a sync returns every record the search matches.
+   *
+   * @return The cursor.
+   */
+  public static SyncCursor start() {
+    return new SyncCursor(null, Collections.<String, Long>emptyMap());
+  }
+
+  /**
+   * A cursor from which a sync returns the records the search matches that were modified at or after
+   * the given time.
+   *
+   * @param modifiedAfter Time from which to return records. Cannot be {@code null}.
+   * @return The cursor.
+   */
+  public static SyncCursor from(Date modifiedAfter) {
+    checkNotNull(modifiedAfter, "modifiedAfter");
+    return new SyncCursor(new Date(modifiedAfter.getTime()), Collections.<String, Long>emptyMap());
+  }
+
+  /**
+   * The latest {@link RecordMeta#lastModified()} of the records returned so far, or the time the sync that
+   * returned this cursor began, if that is earlier.
+   *
+   * @return The time, or {@code null} if no record has been returned yet.
+   */
+  public Date modifiedAfter() {
+    return modifiedAfter == null ? null : new Date(modifiedAfter.getTime());
+  }
+
+  Map<String, Long> seen() {
+    return seen;
+  }
+
+  /**
+   * Whether records modified before {@link #modifiedAfter()} must be left out: true for a cursor made
+   * by {@link #from(Date)} that no sync has advanced. A cursor returned by a sync that found records
+   * always remembers at least the latest of them, and instead searches again from a little before its time.
+   */
+  boolean isExact() {
+    return modifiedAfter != null && seen.isEmpty();
+  }
+
+  static String seenKey(RecordMeta meta) {
+    return meta.recordId() + "/" + meta.version();
+  }
+
+  /**
+   * The time from which a sync continuing from this cursor searches.
+   *
+   * @return The time, or {@code null} to search all records.
+   */
+  Date searchFrom() {
+    if (modifiedAfter == null || isExact())
+      return modifiedAfter();
+    return new Date(modifiedAfter.getTime() - OVERLAP_MILLIS);
+  }
+
+  /**
+   * Tracks a sync continuing from this cursor.
+   *
+   * @param startedAt Time at which the sync began, taken before its first page is requested.
+   */
+  Progress progress(long startedAt) {
+    return new Progress(this, startedAt);
+  }
+
+  /**
+   * The records found by a sync so far, and the cursor to continue from after it.
+   */
+  static final class Progress {
+    private final SyncCursor from;
+    private final long startedAt;
+    private final Map<String, Long> seen;
+    private long latest;
+
+    private Progress(SyncCursor from, long startedAt) {
+      this.from = from;
+      this.startedAt = startedAt;
+      this.seen = new HashMap<>(from.seen);
+      this.latest = from.modifiedAfter == null ? Long.MIN_VALUE : from.modifiedAfter.getTime();
+    }
+
+    /**
+     * Records a search result.
+     *
+     * @return {@code true} if the record has not been returned before, by this sync or an earlier one.
+     */
+    boolean add(RecordMeta meta) {
+      long modified = meta.lastModified().getTime();
+      // The overlap reaches back before the cursor; for a cursor no sync has advanced, that is
+      // before the time asked for.
+      if (from.isExact() && modified < from.modifiedAfter.getTime())
+        return false;
+      latest = Math.max(latest, modified);
+      // A record can appear on two pages if it was modified while paging, and records modified within
+      // the overlap may have been returned by the previous sync.
+      return seen.put(seenKey(meta), modified) == null;
+    }
+
+    /**
+     * The cursor to continue from once every page has been read.
+     */
+    SyncCursor cursor() {
+      if (latest == Long.MIN_VALUE)
+        return from;
+
+      // Search is ordered by creation time, so a record modified while this sync was paging may sit on a
+      // page already read. Paging can outlast the overlap, so the next sync must reach back before the
+      // time this one began, not just before the latest modification seen.
+      long next = Math.min(latest, startedAt);
+      long keepFrom = next - OVERLAP_MILLIS;
+      Iterator<Map.Entry<String, Long>> entries = seen.entrySet().iterator();
+      while (entries.hasNext())
+        if (entries.next().getValue() < keepFrom)
+          entries.remove();
+      return new SyncCursor(new Date(next), Collections.unmodifiableMap(seen));
+    }
+  }
+
+  /**
+   * Encode the cursor such that it can be decoded by {@link #decode(String)}.
+   *
+   * @return Encoded representation of the cursor.
+   */
+  public String encode() throws JsonProcessingException {
+    Map<String, Object> cursor = new HashMap<>();
+    if (modifiedAfter != null)
+      cursor.put("modified_after", modifiedAfter.getTime());
+    cursor.put("seen", seen);
+    return mapper.writeValueAsString(cursor);
+  }
+
+  /**
+   * Decode a string produced by {@link #encode()}.
+   *
+   * @param cursor Encoded cursor.
+   * @return The decoded cursor.
+   * @throws IOException If the cursor cannot be decoded.
+   */
+  public static SyncCursor decode(String cursor) throws IOException {
+    checkNotNull(cursor, "cursor");
+    JsonNode root = mapper.readTree(cursor);
+    JsonNode seenNode = root == null ? null : root.get("seen");
+    if (seenNode == null || !seenNode.isObject())
+      throw new IOException("seen field missing: " + cursor);
+
+    JsonNode modifiedAfter = root.get("modified_after");
+    if (modifiedAfter != null && !modifiedAfter.canConvertToLong())
+      throw new IOException("Invalid modified_after: " + cursor);
+
+    Map<String, Long> seen = new HashMap<>();
+    Iterator<Map.Entry<String, JsonNode>> fields = seenNode.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      if (!field.getValue().canConvertToLong())
+        throw new IOException("Invalid seen entry: " + cursor);
+      seen.put(field.getKey(), field.getValue().asLong());
+    }
+    return new SyncCursor(modifiedAfter == null ? null : new Date(modifiedAfter.asLong()), seen);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+package com.tozny.e3db;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Parses and formats the UTC timestamps used in E3DB record metadata and search
+ * requests, such as {@code 2018-03-04T05:06:07.123456Z}.
+ *
+ * <p>Unlike a shared {@code SimpleDateFormat}, these methods are thread-safe and
+ * lock-free, and they do not allocate beyond their result. {@code Date} only holds
+ * milliseconds, so fractional seconds are truncated to milliseconds when parsing,
+ * and written as microseconds (with trailing zeros) when formatting.
+ *
+ * <p>This is hand-rolled rather than built on {@code java.time}, which is not
+ * available on all supported Android versions.
+ */
+final class Timestamps {
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+  // Length of "yyyy-MM-ddTHH:mm:ss".
+  private static final int SECONDS_END = 19;
+  // Length of "yyyy-MM-ddTHH:mm:ss.SSSSSSZ".
+  private static final int FORMATTED_LENGTH = 27;
+
+  private Timestamps() {
+  }
+
+  /**
+   * Parses a timestamp of the form {@code yyyy-MM-ddTHH:mm:ss[.f...][Z]}, where
+   * the optional fraction has 1 to 9 digits. The time is always interpreted as UTC.
+   *
+   * @param timestamp Timestamp to parse. Cannot be {@code null}.
+   * @return The parsed time.
+   * @throws ParseException if the timestamp is not in the expected form.
+   */
+  static Date parse(String timestamp) throws ParseException {
+    int length = timestamp.length();
+    if (length < SECONDS_END
+        || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-' || timestamp.charAt(10) != 'T'
+        || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':')
+      throw new ParseException("Unparseable date: \"" + timestamp + "\"", 0);
+
+    int year = digits(timestamp, 0, 4);
+    int month = digits(timestamp, 5, 2);
+    int day = digits(timestamp, 8, 2);
+    int hour = digits(timestamp, 11, 2);
+    int minute = digits(timestamp, 14, 2);
+    int second = digits(timestamp, 17, 2);
+    if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59)
+      throw new ParseException("Unparseable date: \"" + timestamp + "\"", 0);
+
+    int pos = SECONDS_END;
+    int millis = 0;
+    if (pos < length && timestamp.charAt(pos) == '.') {
+      int start = ++pos;
+      while (pos < length && pos - start < 9 && isDigit(timestamp.charAt(pos))) {
+        if (pos - start < 3)
+          millis = millis * 10 + (timestamp.charAt(pos) - '0');
+        pos++;
+      }
+      int fractionDigits = pos - start;
+      if (fractionDigits == 0)
+        throw new ParseException("Unparseable date: \"" + timestamp + "\"", pos);
+      for (int i = fractionDigits; i < 3; i++)
+        millis *= 10;
+    }
+
+    if (pos < length && timestamp.charAt(pos) == 'Z')
+      pos++;
+    if (pos != length)
+      throw new ParseException("Unparseable date: \"" + timestamp + "\"", pos);
+
+    long days = daysFromCivil(year, month, day);
+    return new Date(days * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L + millis);
+  }
+
+  /**
+   * Formats the given time as {@code yyyy-MM-ddTHH:mm:ss.SSSSSSZ} in UTC.
+   *
+   * @param date Time to format. Cannot be {@code null}, and must fall between the
+   *             years 0 and 9999.
+   * @return The formatted time.
+   */
+  static String format(Date date) {
+    long time = date.getTime();
+    long days = time / MILLIS_PER_DAY;
+    long millisOfDay = time % MILLIS_PER_DAY;
+    if (millisOfDay < 0) {
+      days--;
+      millisOfDay += MILLIS_PER_DAY;
+    }
+
+    // Civil-from-days, after Howard Hinnant's "chrono-Compatible Low-Level Date Algorithms".
+    long z = days + 719_468;
+    long era = (z >= 0 ? z : z - 146_096) / 146_097;
+    long dayOfEra = z - era * 146_097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long mp = (5 * dayOfYear + 2) / 153;
+    int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+    int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    if (year < 0 || year > 9999)
+      throw new IllegalArgumentException("Year out of range: " + year);
+
+    int millis = (int) (millisOfDay % 1000);
+    int seconds = (int) (millisOfDay / 1000);
+
+    char[] out = new char[FORMATTED_LENGTH];
+    put(out, 0, (int) year, 4);
+    out[4] = '-';
+    put(out, 5, month, 2);
+    out[7] = '-';
+    put(out, 8, day, 2);
+    out[10] = 'T';
+    put(out, 11, seconds / 3600, 2);
+    out[13] = ':';
+    put(out, 14, seconds / 60 % 60, 2);
+    out[16] = ':';
+    put(out, 17, seconds % 60, 2);
+    out[19] = '.';
+    put(out, 20, millis, 3);
+    out[23] = '0';
+    out[24] = '0';
+    out[25] = '0';
+    out[26] = 'Z';
+    return new String(out);
+  }
+
+  // Days-from-civil, the inverse of the calculation in format.
+  private static long daysFromCivil(int year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146_097 + dayOfEra - 719_468;
+  }
+
+  private static int digits(String s, int start, int count) throws ParseException {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = s.charAt(i);
+      if (!isDigit(c))
+        throw new ParseException("Unparseable date: \"" + s + "\"", i);
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static void put(char[] out, int start, int value, int width) {
+    for (int i = start + width - 1; i >= start; i--) {
+      out[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+/**
+ * Bridges a {@link Client} to a distributed tracing system (such as OpenTelemetry or Zipkin).
+ *
+ * <p>Register an implementation with {@link ClientBuilder#setTracer(Tracer)}. Each asynchronous
+ * {@code Client} operation then produces one trace: a span named after the operation (such as
+ * {@code read}), covering the time from the call until the background work finishes and its
+ * result has been delivered, with child spans for the steps taken along the way. For bulk
+ * operations ({@code writeAll}, {@code shareAll} and {@code revokeAll}), the span ends once every
+ * item has completed and the completion result has been delivered:
+ *
+ * <ul>
+ *   <li>{@code refreshToken} and {@code signRequest}, when authenticating requests (children of the
+ *   {@code http} span for requests sent concurrently, such as by bulk operations);</li>
+ *   <li>{@code http <endpoint>} for each HTTP call (named as in {@link ClientMetrics#recordHttpCall(String, int, long, long, long)}),
+ *   with {@code dns}, {@code connect}, {@code tls} and {@code ttfb} (time to first byte) children;</li>
+ *   <li>{@code getEAK}, when fetching an access key that is not cached;</li>
+ *   <li>{@code encryptObject} and {@code decryptObject}, when encrypting or decrypting record data;</li>
+ *   <li>{@code callback}, while the result is delivered to the {@link ResultHandler}.</li>
+ * </ul>
+ *
+ * <p>An operation started from within a {@code callback} span (that is, from a result handler)
+ * becomes part of the same trace.
+ *
+ * <p>Methods are called on whichever thread is doing the work, so implementations must be thread-safe.
+ */
+public interface Tracer {
+  /**
+   * Starts a span.
+   *
+   * @param name   Name of the span.
+   * @param parent Span the new span is part of, or {@code null} to start a new trace.
+   * @return The started span.
+   */
+  Span startSpan(String name, Span parent);
+
+  /**
+   * A timed step of an operation, as created by {@link Tracer#startSpan(String, Span)}.
+   */
+  interface Span {
+    /**
+     * Adds an attribute to the span.
+     *
+     * @param key   key.
+     * @param value value.
+     */
+    void setAttribute(String key, String value);
+
+    /**
+     * Adds a numeric attribute to the span.
+     *
+     * @param key   key.
+     * @param value value.
+     */
+    void setAttribute(String key, long value);
+
+    /**
+     * Marks the span as failed.
+     *
+     * @param error The cause of the failure.
+     */
+    void setError(Throwable error);
+
+    /**
+     * Ends the span. Called exactly once per span.
+     */
+    void end();
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * TOZNY NON-COMMERCIAL LICENSE
+ *
+ * Tozny dual licenses this product. For commercial use, please contact
+ * info@tozny.com. For non-commercial use, the contents of this file are
+ * subject to the TOZNY NON-COMMERCIAL LICENSE (the "License") which
+ * permits use of the software only by government agencies, schools,
+ * universities, non-profit organizations or individuals on projects that
+ * do not receive external funding other than government research grants
+ * and contracts.  Any other use requires a commercial license. You may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at https://tozny.com/legal/non-commercial-license.
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations under
+ * the License. Portions of the software are Copyright (c) TOZNY LLC, 2018.
+ * All rights reserved.
+ *
+ */
+
+
+package com.tozny.e3db;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A started {@link Tracer.Span}, plus the bookkeeping that lets code anywhere in the client
+ * find the span it is running under.
+ *
+ * <p>Each thread has at most one active span (see {@link #activate()}); spans started with
+ * {@link #startChild(String)} become its children. When no span is active (including whenever
+ * no tracer is configured), {@link #NONE} is used, whose methods do nothing.
+ *
+ * <p>Work that outlives the code that started a span (such as delivering its result on another
+ * executor) can {@link #hold()} it, so that it does not end before its children.
+ */
+final class Tracing {
+  static final Tracing NONE = new Tracing(null, null);
+
+  private static final ThreadLocal<Tracing> current = new ThreadLocal<>();
+
+  private final Tracer tracer;
+  private final Tracer.Span span;
+  // Calls to end() still to come before the span ends: one for starting it, plus one per hold().
+  private final AtomicInteger open = new AtomicInteger(1);
+
+  private Tracing(Tracer tracer, Tracer.Span span) {
+    this.tracer = tracer;
+    this.span = span;
+  }
+
+  /**
+   * Starts the span for a client operation. If a span from the same tracer is active on this
+   * thread (for example, because the operation was started from a result handler), the new
+   * span is its child; otherwise it starts a new trace.
+   *
+   * @param tracer May be {@code null}, in which case {@link #NONE} is returned.
+   */
+  static Tracing start(Tracer tracer, String name) {
+    if (tracer == null)
+      return NONE;
+
+    Tracing parent = current.get();
+    return new Tracing(tracer, tracer.startSpan(name, parent != null && parent.tracer == tracer ? parent.span : null));
+  }
+
+  /**
+   * Starts a child of the span active on this thread, if any.
+   */
+  static Tracing startChild(String name) {
+    Tracing parent = current.get();
+    return parent == null ? NONE : parent.child(name);
+  }
+
+  /**
+   * @return The span active on this thread, or {@link #NONE}.
+   */
+  static Tracing current() {
+    Tracing active = current.get();
+    return active == null ? NONE : active;
+  }
+
+  /**
+   * Starts a child of this span.
+   */
+  Tracing child(String name) {
+    return this == NONE ? NONE : new Tracing(tracer, tracer.startSpan(name, span));
+  }
+
+  /**
+   * Makes this the active span on the calling thread.
+   *
+   * @return The previously active span, to pass to {@link #restore(Tracing)} afterwards.
+   */
+  Tracing activate() {
+    if (this == NONE)
+      return NONE;
+
+    Tracing previous = current.get();
+    current.set(this);
+    return previous;
+  }
+
+  /**
+   * Undoes {@link #activate()}.
+   */
+  static void restore(Tracing previous) {
+    if (previous == NONE)
+      return;
+
+    if (previous == null)
+      current.remove();
+    else
+      current.set(previous);
+  }
+
+  void setAttribute(String key, String value) {
+    if (span != null)
+      span.setAttribute(key, value);
+  }
+
+  void setAttribute(String key, long value) {
+    if (span != null)
+      span.setAttribute(key, value);
+  }
+
+  void setError(Throwable error) {
+    if (span != null)
+      span.setError(error);
+  }
+
+  /**
+   * Keeps this span from ending until {@link #end()} is called on the result, as well as for
+   * starting it.
+   *
+   * @return This span, or {@link #NONE} if it has already ended.
+   */
+  Tracing hold() {
+    if (span == null)
+      return NONE;
+
+    while (true) {
+      int count = open.get();
+      if (count == 0)
+        return NONE;
+      if (open.compareAndSet(count, count + 1))
+        return this;
+    }
+  }
+
+  /**
+   * Ends the span, or releases a {@link #hold()} on it; it ends once every hold is released.
+   */
+  void end() {
+    if (span != null && open.decrementAndGet() == 0)
+      span.end();
+  }
+
+  /**
+   * Wraps a task so that, on whatever thread it runs, it runs under the span active on
+   * the calling thread.
+   */
+  static Runnable propagate(final Runnable task) {
+    final Tracing active = current.get();
+    if (active == null)
+      return task;
+
+    return new Runnable() {
+      @Override
+      public void run() {
+        Tracing previous = active.activate();
+        try {
+          task.run();
+        } finally {
+          restore(previous);
+        }
+      }
+    };
+  }
+
+  /**
+   * As {@link #propagate(Runnable)}, for tasks with a result.
+   */
+  static <T> Callable<T> propagate(final Callable<T> task) {
+    final Tracing active = current.get();
+    if (active == null)
+      return task;
+
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        Tracing previous = active.activate();
+        try {
+          return task.call();
+        } finally {
+          restore(previous);
+        }
+      }
+    };
+  }
+}
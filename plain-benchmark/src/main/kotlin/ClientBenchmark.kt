@@ -0,0 +1,123 @@
+package com.tozny.e3db.benchmark
+
+import com.tozny.e3db.*
+import com.tozny.e3db.Base64
+import org.openjdk.jmh.annotations.*
+import java.io.File
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Blocks until the given asynchronous client operation completes, returning its value
+ * or throwing its error.
+ */
+fun <T> await(operation: (ResultHandler<T>) -> Unit): T {
+  val latch = CountDownLatch(1)
+  var result: Result<T>? = null
+
+  operation(ResultHandler {
+    result = it
+    latch.countDown()
+  })
+
+  if (!latch.await(30, TimeUnit.SECONDS))
+    throw Exception("Operation did not complete in 30 seconds.")
+
+  val r = result!!
+  if (r.isError)
+    throw Exception(r.asError().other())
+  return r.asValue()
+}
+
+/**
+ * End-to-end benchmarks of the client API against an in-process
+ * [MockE3DBServer], so results reflect the SDK (crypto, JSON, HTTP
+ * stack) rather than network latency or server load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class ClientBenchmark {
+
+  @State(Scope.Benchmark)
+  open class MockServer {
+    @Param("1", "1000", "100000")
+    var fieldSize: Int = 0
+
+    lateinit var server: MockE3DBServer
+    lateinit var writer: Client
+    lateinit var reader: Client
+    lateinit var recordType: String
+    lateinit var fileType: String
+    lateinit var data: RecordData
+    lateinit var recordId: UUID
+    lateinit var searchRequest: SearchRequest
+    lateinit var readerPublicKey: ByteArray
+    lateinit var readerPublicSigningKey: ByteArray
+    lateinit var file: File
+
+    @Setup(Level.Trial)
+    fun setup() {
+      server = MockE3DBServer()
+      writer = server.newClient()
+      reader = server.newClient()
+      recordType = "${UUID.randomUUID()}"
+      // Kept apart from recordType so file records don't show up in search results.
+      fileType = "${UUID.randomUUID()}"
+      data = RecordData(mapOf(Pair("data", randomBytes(fieldSize)!!)))
+
+      recordId = await<Record> { writer.write(recordType, data, null, it) }.meta().recordId()
+      // A page of records for search to return.
+      for (i in 1..9)
+        await<Record> { writer.write(recordType, data, null, it) }
+
+      searchRequest = SearchRequestBuilder()
+        .setIncludeData(true)
+        .setLimit(10)
+        .setMatch(listOf(SearchRequest.SearchParams(
+          SearchRequest.SearchParamCondition.OR,
+          SearchRequest.SearchParamStrategy.EXACT,
+          SearchRequest.SearchTermsBuilder().setRecordTypes(listOf(recordType)).build())))
+        .build()
+
+      readerPublicKey = Base64.decodeURL(server.publicKey(reader.clientId()))
+      readerPublicSigningKey = Base64.decodeURL(server.publicSigningKey(reader.clientId()))
+
+      file = File.createTempFile("e3db-benchmark", ".bin")
+      file.writeBytes(ByteArray(fieldSize) { it.toByte() })
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+      file.delete()
+      server.close()
+    }
+  }
+
+  @Benchmark
+  fun write(state: MockServer): Record =
+    await { state.writer.write(state.recordType, state.data, null, it) }
+
+  @Benchmark
+  fun read(state: MockServer): Record =
+    await { state.writer.read(state.recordId, it) }
+
+  @Benchmark
+  fun search(state: MockServer): SearchResponse =
+    await { state.writer.search(state.searchRequest, it) }
+
+  @Benchmark
+  fun share(state: MockServer): Void? =
+    await { state.writer.share(state.recordType, state.reader.clientId(), it) }
+
+  @Benchmark
+  fun writeNote(state: MockServer): Note =
+    await { state.writer.writeNote(state.data, state.readerPublicKey, state.readerPublicSigningKey, null, it) }
+
+  @Benchmark
+  fun writeFile(state: MockServer): RecordMeta =
+    await { state.writer.writeFile(state.fileType, state.file, null, it) }
+}
@@ -0,0 +1,134 @@
+package com.tozny.e3db.benchmark
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.tozny.e3db.*
+import org.openjdk.jmh.annotations.*
+import java.lang.invoke.MethodHandle
+import java.lang.invoke.MethodHandles
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures how a single, shared [Client] scales as threads are added: throughput
+ * plus sampled latency (JMH reports p99 for [Mode.SampleTime]).
+ *
+ * The local benchmarks (encrypt, decrypt, sign, verify, meta parsing) touch only
+ * shared client state such as the static ObjectMapper and date formatter; the
+ * remaining ones go end to end against a [MockE3DBServer], adding the EAK cache,
+ * executors and HTTP stack.
+ *
+ * Run [main] to sweep thread counts from 1 to 2x cores.
+ */
+@BenchmarkMode(Mode.Throughput, Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class ConcurrencyBenchmark {
+
+  @State(Scope.Benchmark)
+  open class SharedClient {
+    lateinit var server: MockE3DBServer
+    lateinit var client: Client
+    lateinit var reader: Client
+    lateinit var publicSigningKey: String
+    lateinit var recordType: String
+    lateinit var eakInfo: EAKInfo
+    lateinit var data: RecordData
+    lateinit var encrypted: EncryptedRecord
+    lateinit var signed: SignedDocument<LocalRecord>
+    lateinit var rawMeta: JsonNode
+    lateinit var recordId: UUID
+    lateinit var searchRequest: SearchRequest
+
+    @Setup(Level.Trial)
+    fun setup() {
+      server = MockE3DBServer()
+      client = server.newClient()
+      reader = server.newClient()
+      publicSigningKey = server.publicSigningKey(client.clientId())
+      recordType = "${UUID.randomUUID()}"
+      eakInfo = await<LocalEAKInfo> { client.createWriterKey(recordType, it) }
+      data = RecordData(mapOf(Pair("data", randomBytes(1000)!!)))
+
+      encrypted = client.encryptRecord(recordType, data, null, eakInfo)
+      signed = client.sign(client.decryptExisting(encrypted, eakInfo))
+
+      val record = await<Record> { client.write(recordType, data, null, it) }
+      recordId = record.meta().recordId()
+      rawMeta = ObjectMapper().createObjectNode()
+        .put("record_id", recordId.toString())
+        .put("writer_id", client.clientId().toString())
+        .put("user_id", client.clientId().toString())
+        .put("type", recordType)
+        .put("version", record.meta().version())
+        .put("created", "2021-03-04T05:06:07.123456Z")
+        .put("last_modified", "2021-03-04T05:06:08.654321Z")
+
+      searchRequest = SearchRequestBuilder()
+        .setIncludeData(true)
+        .setLimit(10)
+        .setMatch(listOf(SearchRequest.SearchParams(
+          SearchRequest.SearchParamCondition.OR,
+          SearchRequest.SearchParamStrategy.EXACT,
+          SearchRequest.SearchTermsBuilder().setRecordTypes(listOf(recordType)).build())))
+        .build()
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+      server.close()
+    }
+  }
+
+  @Benchmark
+  fun encryptRecord(s: SharedClient): LocalEncryptedRecord =
+    s.client.encryptRecord(s.recordType, s.data, null, s.eakInfo)
+
+  @Benchmark
+  fun decryptExisting(s: SharedClient): LocalRecord =
+    s.client.decryptExisting(s.encrypted, s.eakInfo)
+
+  @Benchmark
+  fun sign(s: SharedClient): SignedDocument<LocalRecord> =
+    s.client.sign(s.signed.document())
+
+  @Benchmark
+  fun verify(s: SharedClient): Boolean =
+    s.client.verify(s.signed, s.publicSigningKey)
+
+  @Benchmark
+  fun parseRecordMeta(s: SharedClient): RecordMeta =
+    getRecordMeta.invoke(s.rawMeta) as RecordMeta
+
+  @Benchmark
+  fun write(s: SharedClient): Record =
+    await { s.client.write(s.recordType, s.data, null, it) }
+
+  @Benchmark
+  fun read(s: SharedClient): Record =
+    await { s.client.read(s.recordId, it) }
+
+  @Benchmark
+  fun search(s: SharedClient): SearchResponse =
+    await { s.client.search(s.searchRequest, it) }
+
+  @Benchmark
+  fun share(s: SharedClient): Void? =
+    await { s.client.share(s.recordType, s.reader.clientId(), it) }
+
+  companion object {
+    // Record meta parsing is private to Client, so it is called reflectively.
+    private val getRecordMeta: MethodHandle = Class.forName("com.tozny.e3db.Client\$R")
+      .getDeclaredMethod("getRecordMeta", JsonNode::class.java)
+      .let {
+        it.isAccessible = true
+        MethodHandles.lookup().unreflect(it)
+      }
+  }
+}
+
+fun main(args: Array<String>) {
+  runThreadSweep("com\\.tozny\\.e3db\\.benchmark\\.ConcurrencyBenchmark", "concurrency", args)
+}
@@ -104,14 +104,14 @@ open class CryptoBenchmark {
     }
     val key: EAKInfo = createKey(client, recordType)
 
-    val rec1B: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(1)))), null, key)
-    val rec1KB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(1000)))), null, key)
-    val rec250KB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(250_000)))), null, key)
-    val rec500KB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(500_000)))), null, key)
-    val rec1MB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(1_000_000)))), null, key)
-    val rec2MB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(2_000_000)))), null, key)
-    val rec8MB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(8_000_000)))), null, key)
-    val rec16MB: Record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(16_000_000)))), null, key)
+    val rec1B: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(1)))), null, key)
+    val rec1KB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(1000)))), null, key)
+    val rec250KB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(250_000)))), null, key)
+    val rec500KB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(500_000)))), null, key)
+    val rec1MB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(1_000_000)))), null, key)
+    val rec2MB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(2_000_000)))), null, key)
+    val rec8MB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(8_000_000)))), null, key)
+    val rec16MB: EncryptedRecord = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", randomBytes(16_000_000)))), null, key)
 
     val signed1B = client.sign(rec1B)
     val signed1KB = client.sign(rec1KB)
@@ -124,7 +124,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt1B(setup: DecryptFixtures): Record? {
+  fun decrypt1B(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec1B, setup.key)
   }
 
@@ -134,7 +134,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt1KB(setup: DecryptFixtures): Record? {
+  fun decrypt1KB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec1KB, setup.key)
   }
 
@@ -144,7 +144,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt250KB(setup: DecryptFixtures): Record? {
+  fun decrypt250KB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec250KB, setup.key)
   }
 
@@ -154,7 +154,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt500KB(setup: DecryptFixtures): Record? {
+  fun decrypt500KB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec500KB, setup.key)
   }
 
@@ -164,7 +164,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt1MB(setup: DecryptFixtures): Record? {
+  fun decrypt1MB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec1MB, setup.key)
   }
 
@@ -174,7 +174,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt2MB(setup: DecryptFixtures): Record? {
+  fun decrypt2MB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec2MB, setup.key)
   }
 
@@ -184,7 +184,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt8MB(setup: DecryptFixtures): Record? {
+  fun decrypt8MB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec8MB, setup.key)
   }
 
@@ -194,7 +194,7 @@ open class CryptoBenchmark {
   }
 
   @Benchmark
-  fun decrypt16MB(setup: DecryptFixtures): Record? {
+  fun decrypt16MB(setup: DecryptFixtures): LocalRecord? {
     return setup.client.decryptExisting(setup.rec16MB, setup.key)
   }
 
@@ -205,83 +205,83 @@ open class CryptoBenchmark {
 
   @Benchmark
   @OutputTimeUnit(TimeUnit.MICROSECONDS)
-  fun encrypt1B(setup: Setup): Record? {
+  fun encrypt1B(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.byte))), null, setup.key)
   }
 
   @Benchmark
-  fun sign1B(setup:Setup): SignedDocument<Record> {
+  fun sign1B(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record1B)
   }
 
   @Benchmark
   @OutputTimeUnit(TimeUnit.MICROSECONDS)
-  fun encrypt1KB(setup: Setup): Record? {
+  fun encrypt1KB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes1KB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign1KB(setup:Setup): SignedDocument<Record> {
+  fun sign1KB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record1KB)
   }
 
   @Benchmark
-  fun encrypt250KB(setup: Setup): Record? {
+  fun encrypt250KB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes250KB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign250KB(setup:Setup): SignedDocument<Record> {
+  fun sign250KB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record250KB)
   }
 
   @Benchmark
-  fun encrypt500KB(setup: Setup): Record? {
+  fun encrypt500KB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes500KB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign500KB(setup:Setup): SignedDocument<Record> {
+  fun sign500KB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record500KB)
   }
 
   @Benchmark
-  fun encrypt1MB(setup: Setup): Record? {
+  fun encrypt1MB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes1MB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign1MB(setup:Setup): SignedDocument<Record> {
+  fun sign1MB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record1MB)
   }
 
   @Benchmark
-  fun encrypt2MB(setup: Setup): Record? {
+  fun encrypt2MB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes2MB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign2MB(setup:Setup): SignedDocument<Record> {
+  fun sign2MB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record2MB)
   }
 
   @Benchmark
-  fun encrypt8MB(setup: Setup): Record? {
+  fun encrypt8MB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes8MB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign8MB(setup:Setup): SignedDocument<Record> {
+  fun sign8MB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record8MB)
   }
 
   @Benchmark
-  fun encrypt16MB(setup: Setup): Record? {
+  fun encrypt16MB(setup: Setup): EncryptedRecord? {
     return setup.client.encryptRecord(setup.recordType, RecordData(mapOf(Pair("data", setup.bytes16MB))), null, setup.key)
   }
 
   @Benchmark
-  fun sign16MB(setup:Setup): SignedDocument<Record> {
+  fun sign16MB(setup:Setup): SignedDocument<LocalRecord> {
     return setup.client.sign(setup.record16MB)
   }
 }
@@ -0,0 +1,157 @@
+// PlainCrypto is package-private, so these benchmarks live in its package.
+package com.tozny.e3db
+
+import com.tozny.e3db.benchmark.runThreadSweep
+import com.tozny.e3db.crypto.Crypto
+import org.openjdk.jmh.annotations.*
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks each [Crypto] primitive of [PlainCrypto] directly, across payload
+ * sizes, to show where the per-call JNA overhead stops dominating the actual
+ * crypto work.
+ *
+ * Run [main] to repeat the suite for 1 to 2x cores threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class CryptoPrimitivesBenchmark {
+
+  @State(Scope.Benchmark)
+  open class Payload {
+    @Param("16", "256", "4096", "65536", "1048576")
+    var size: Int = 0
+
+    val crypto: Crypto = PlainCrypto()
+
+    lateinit var message: ByteArray
+    lateinit var text: String
+    lateinit var secretKey: ByteArray
+    lateinit var privateKey: ByteArray
+    lateinit var publicKey: ByteArray
+    lateinit var privateSigningKey: ByteArray
+    lateinit var publicSigningKey: ByteArray
+
+    lateinit var secretBox: CipherWithNonce
+    lateinit var box: CipherWithNonce
+    lateinit var signature: Signature
+
+    lateinit var file: File
+    lateinit var encryptedFile: File
+
+    @Setup(Level.Trial)
+    fun setup() {
+      message = crypto.randomBytes(size)
+      text = String(CharArray(size) { 'a' + it % 26 })
+      secretKey = crypto.newSecretKey()
+      privateKey = crypto.newPrivateKey()
+      publicKey = crypto.getPublicKey(privateKey)
+      privateSigningKey = crypto.newPrivateSigningKey()
+      publicSigningKey = crypto.getPublicSigningKey(privateSigningKey)
+
+      secretBox = crypto.encryptSecretBox(message, secretKey)
+      box = crypto.encryptBox(message, publicKey, privateKey)
+      signature = Signature(crypto.signature(message, privateSigningKey))
+
+      file = File.createTempFile("crypto-benchmark", ".bin")
+      file.writeBytes(message)
+      encryptedFile = crypto.encryptFile(file, secretKey)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+      file.delete()
+      encryptedFile.delete()
+    }
+  }
+
+  /**
+   * Per-thread destination for decryptFile, so threads don't write the same file.
+   */
+  @State(Scope.Thread)
+  open class Destination {
+    lateinit var file: File
+
+    @Setup(Level.Trial)
+    fun setup() {
+      file = File.createTempFile("crypto-benchmark", ".out")
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+      file.delete()
+    }
+  }
+
+  @Benchmark
+  fun encryptSecretBox(p: Payload): CipherWithNonce =
+    p.crypto.encryptSecretBox(p.message, p.secretKey)
+
+  @Benchmark
+  fun decryptSecretBox(p: Payload): ByteArray =
+    p.crypto.decryptSecretBox(p.secretBox, p.secretKey)
+
+  @Benchmark
+  fun encryptBox(p: Payload): CipherWithNonce =
+    p.crypto.encryptBox(p.message, p.publicKey, p.privateKey)
+
+  @Benchmark
+  fun decryptBox(p: Payload): ByteArray =
+    p.crypto.decryptBox(p.box, p.publicKey, p.privateKey)
+
+  @Benchmark
+  fun signature(p: Payload): ByteArray =
+    p.crypto.signature(p.message, p.privateSigningKey)
+
+  @Benchmark
+  fun verify(p: Payload): Boolean =
+    p.crypto.verify(p.signature, p.message, p.publicSigningKey)
+
+  @Benchmark
+  fun hashString(p: Payload): ByteArray =
+    p.crypto.hashString(p.text)
+
+  @Benchmark
+  fun encryptFile(p: Payload): Boolean =
+    p.crypto.encryptFile(p.file, p.secretKey).delete()
+
+  @Benchmark
+  fun decryptFile(p: Payload, d: Destination): File {
+    p.crypto.decryptFile(p.encryptedFile, p.secretKey, d.file)
+    return d.file
+  }
+
+  @Benchmark
+  fun randomBytes(p: Payload): ByteArray =
+    p.crypto.randomBytes(p.size)
+}
+
+/**
+ * Key derivation does not depend on payload size, so it is measured on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class CryptoKeyDerivationBenchmark {
+
+  @State(Scope.Benchmark)
+  open class Keys {
+    val crypto: Crypto = PlainCrypto()
+    val password = "correct horse battery staple".toCharArray()
+    val salt: ByteArray = crypto.randomBytes(16)
+  }
+
+  @Benchmark
+  fun deriveEncryptionKeypair(k: Keys): E3DBKeyPair =
+    k.crypto.deriveEncryptionKeypair(k.password, k.salt)
+}
+
+fun main(args: Array<String>) {
+  runThreadSweep("com\\.tozny\\.e3db\\.Crypto(Primitives|KeyDerivation)Benchmark", "crypto-primitives", args)
+}
@@ -0,0 +1,68 @@
+// FieldEnvelope is package-private, so these benchmarks live in its package.
+package com.tozny.e3db
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.CommandLineOptions
+import org.openjdk.jmh.runner.options.OptionsBuilder
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares [FieldEnvelope] with the string splitting and concatenation that
+ * record fields were parsed and formatted with before it. Run with
+ * `-prof gc` to see the allocation saved per field.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class FieldEnvelopeBenchmark {
+
+  @State(Scope.Benchmark)
+  open class Envelope {
+    @Param("16", "1024", "65536")
+    var size: Int = 0
+
+    lateinit var edk: CipherWithNonce
+    lateinit var ef: CipherWithNonce
+    lateinit var field: String
+
+    @Setup(Level.Trial)
+    fun setup() {
+      val random = Random(42)
+      fun bytes(length: Int) = ByteArray(length).also { random.nextBytes(it) }
+      edk = CipherWithNonce(bytes(48), bytes(24))
+      ef = CipherWithNonce(bytes(size + 16), bytes(24))
+      field = FieldEnvelope.format(edk, ef)
+    }
+  }
+
+  @Benchmark
+  fun parseSubstrings(e: Envelope): CipherWithNonce {
+    val split = e.field.indexOf(".", e.field.indexOf(".") + 1)
+    CipherWithNonce.decode(e.field.substring(0, split))
+    return CipherWithNonce.decode(e.field.substring(split + 1))
+  }
+
+  @Benchmark
+  fun parseFieldEnvelope(e: Envelope): CipherWithNonce =
+    FieldEnvelope.parse(e.field).ef
+
+  @Benchmark
+  fun formatStringBuilder(e: Envelope): String =
+    StringBuilder(e.edk.toMessage()).append(".").append(e.ef.toMessage()).toString()
+
+  @Benchmark
+  fun formatFieldEnvelope(e: Envelope): String =
+    FieldEnvelope.format(e.edk, e.ef)
+}
+
+fun main(args: Array<String>) {
+  val options = OptionsBuilder()
+    .parent(CommandLineOptions(*args))
+    .include("com\\.tozny\\.e3db\\.FieldEnvelopeBenchmark")
+    .build()
+  Runner(options).run()
+}
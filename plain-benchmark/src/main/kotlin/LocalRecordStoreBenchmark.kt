@@ -0,0 +1,79 @@
+package com.tozny.e3db.benchmark
+
+import com.tozny.e3db.*
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.CommandLineOptions
+import org.openjdk.jmh.runner.options.OptionsBuilder
+import java.io.File
+import java.nio.file.Files
+import java.util.*
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures reads from a [LocalRecordStore] holding 10,000 records: single
+ * records, still encrypted, and batches of records with decryption
+ * ([LocalRecordStore.readAll]).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class LocalRecordStoreBenchmark {
+
+  @State(Scope.Benchmark)
+  open class Store {
+    @Param("100", "10000")
+    var fieldSize: Int = 0
+
+    lateinit var server: MockE3DBServer
+    lateinit var client: Client
+    lateinit var eakInfo: EAKInfo
+    lateinit var directory: File
+    lateinit var store: LocalRecordStore
+    lateinit var record: LocalEncryptedRecord
+    lateinit var ids: List<UUID>
+    lateinit var batch: List<UUID>
+
+    @Setup(Level.Trial)
+    fun setup() {
+      server = MockE3DBServer()
+      client = server.newClient()
+      val recordType = "${UUID.randomUUID()}"
+      eakInfo = await<LocalEAKInfo> { client.createWriterKey(recordType, it) }
+      record = client.encryptRecord(recordType, RecordData(mapOf(Pair("data", "x".repeat(fieldSize)))), null, eakInfo)
+
+      directory = Files.createTempDirectory("local-record-store").toFile()
+      store = LocalRecordStore.open(directory)
+      ids = (1..10_000).map { UUID.randomUUID() }
+      for (id in ids)
+        store.put(id, record)
+      batch = ids.take(100)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+      store.close()
+      directory.deleteRecursively()
+      server.close()
+    }
+  }
+
+  @Benchmark
+  fun get(s: Store): LocalEncryptedRecord? =
+    s.store.get(s.ids[ThreadLocalRandom.current().nextInt(s.ids.size)])
+
+  @Benchmark
+  fun readAll(s: Store): Map<UUID, LocalRecord> =
+    await { s.store.readAll(s.client, s.batch, s.eakInfo, it) }
+}
+
+fun main(args: Array<String>) {
+  val options = OptionsBuilder()
+    .parent(CommandLineOptions(*args))
+    .include("com\\.tozny\\.e3db\\.benchmark\\.LocalRecordStoreBenchmark")
+    .build()
+  Runner(options).run()
+}
@@ -0,0 +1,295 @@
+package com.tozny.e3db.benchmark
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.tozny.e3db.Client
+import com.tozny.e3db.ClientBuilder
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import javax.net.ServerSocketFactory
+
+/**
+ * An in-process, in-memory stand-in for the E3DB endpoints used by the SDK: auth,
+ * records, files, access keys, client lookup, policy, search (v2) and notes (v2).
+ *
+ * Records and access keys are kept in memory exactly as the client sent
+ * them, so benchmarks measure the SDK (crypto, serialization, HTTP) against a
+ * loopback server rather than the network.
+ */
+class MockE3DBServer : Dispatcher(), AutoCloseable {
+  private val mapper = ObjectMapper()
+  private val server = MockWebServer()
+
+  private val records = ConcurrentHashMap<String, ObjectNode>()
+  private val pendingFiles = ConcurrentHashMap<String, ObjectNode>()
+  private val accessKeys = ConcurrentHashMap<String, String>()
+  // client ID -> (public encryption key, public signing key)
+  private val clients = ConcurrentHashMap<String, Pair<String, String>>()
+
+  init {
+    server.dispatcher = this
+    server.serverSocketFactory = NoDelayServerSocketFactory
+    server.start()
+  }
+
+  val host: String
+    get() = server.url("/").toString().trimEnd('/')
+
+  /**
+   * Creates a client with fresh keys that is known to this server (so other
+   * clients can look it up when sharing). `configure` can set further client options.
+   */
+  @JvmOverloads
+  fun newClient(configure: ClientBuilder.() -> Unit = {}): Client {
+    val privateKey = Client.generateKey()
+    val privateSigningKey = Client.generateSigningKey()
+    val clientId = UUID.randomUUID()
+    clients[clientId.toString()] = Pair(Client.getPublicKey(privateKey), Client.getPublicSigningKey(privateSigningKey))
+
+    return ClientBuilder()
+      .setApiKey("api-key")
+      .setApiSecret("api-secret")
+      .setClientId(clientId)
+      .setHost(host)
+      .setPrivateKey(privateKey)
+      .setPrivateSigningKey(privateSigningKey)
+      .apply(configure)
+      .build()
+  }
+
+  fun publicKey(clientId: UUID): String = clients.getValue(clientId.toString()).first
+
+  fun publicSigningKey(clientId: UUID): String = clients.getValue(clientId.toString()).second
+
+  override fun close() {
+    server.shutdown()
+  }
+
+  override fun dispatch(request: RecordedRequest): MockResponse {
+    val method = request.method!!
+    val path = request.path!!.substringBefore('?')
+    val parts = path.split('/')
+
+    return when {
+      path == "/v1/auth/token" ->
+        json(200, """{"access_token":"token","expires_in":3600}""")
+      path.startsWith("/v1/storage/records/safe/") ->
+        safeUpdate(method, parts[5], request)
+      path.startsWith("/v1/storage/records") ->
+        if (method == "POST") writeRecord(request) else readRecords(parts[4])
+      path.startsWith("/v1/storage/files/") ->
+        commitFile(parts[4])
+      path == "/v1/storage/files" ->
+        writeFile(request)
+      path.startsWith("/files/") ->
+        MockResponse().setResponseCode(200)
+      path.startsWith("/v1/storage/access_keys/") ->
+        accessKey(method, parts[4], parts[5], parts[6], parts[7], request)
+      path.startsWith("/v1/storage/clients/") ->
+        lookupClient(parts[4])
+      path.startsWith("/v1/storage/policy/") ->
+        json(201, "{}")
+      path == "/v2/search" ->
+        search(request)
+      path.startsWith("/v2/storage/notes") ->
+        note(method, request)
+      else ->
+        json(404, "{}")
+    }
+  }
+
+  private fun writeRecord(request: RecordedRequest): MockResponse {
+    val record = body(request)
+    stamp(record.get("meta") as ObjectNode, UUID.randomUUID().toString())
+    records[record.get("meta").get("record_id").asText()] = record
+    return json(201, record)
+  }
+
+  private fun readRecords(ids: String): MockResponse {
+    val split = ids.split(',')
+    if (split.size == 1)
+      return records[split[0]]?.let { json(200, it) } ?: json(404, "{}")
+
+    // As the real server does, fail the whole request if any record is missing.
+    val found = mapper.createArrayNode()
+    for (id in split)
+      found.add(records[id] ?: return json(404, "{}"))
+    return json(200, found)
+  }
+
+  private fun safeUpdate(method: String, recordId: String, request: RecordedRequest): MockResponse {
+    val record = records[recordId] ?: return json(404, "{}")
+    if (method == "DELETE") {
+      records.remove(recordId)
+      return json(204, "")
+    }
+
+    val update = body(request)
+    val meta = record.get("meta") as ObjectNode
+    meta.put("version", UUID.randomUUID().toString())
+    meta.put("last_modified", now())
+    update.get("meta")?.get("plain")?.let { meta.set<JsonNode>("plain", it) }
+    record.set<JsonNode>("data", update.get("data"))
+    return json(200, record)
+  }
+
+  private fun writeFile(request: RecordedRequest): MockResponse {
+    val pendingId = UUID.randomUUID().toString()
+    pendingFiles[pendingId] = body(request)
+    val pending = mapper.createObjectNode()
+      .put("id", pendingId)
+      .put("file_url", "$host/files/$pendingId")
+    return json(202, pending)
+  }
+
+  private fun commitFile(pendingId: String): MockResponse {
+    val record = pendingFiles.remove(pendingId) ?: return json(404, "{}")
+    stamp(record.get("meta") as ObjectNode, UUID.randomUUID().toString())
+    records[record.get("meta").get("record_id").asText()] = record
+    return json(201, record)
+  }
+
+  private fun accessKey(method: String, writerId: String, userId: String, readerId: String, type: String, request: RecordedRequest): MockResponse {
+    val key = "$writerId/$userId/$readerId/$type"
+    when (method) {
+      "PUT" -> {
+        accessKeys[key] = body(request).get("eak").asText()
+        return json(201, "{}")
+      }
+      "DELETE" -> {
+        accessKeys.remove(key)
+        return json(204, "")
+      }
+    }
+
+    val eak = accessKeys[key] ?: return json(404, "{}")
+    return json(200, eakResponse(eak, writerId))
+  }
+
+  private fun lookupClient(clientId: String): MockResponse {
+    val (publicKey, publicSigningKey) = clients[clientId] ?: return json(404, "{}")
+    val info = mapper.createObjectNode().put("client_id", clientId)
+    info.putObject("public_key").put("curve25519", publicKey)
+    info.putObject("signing_key").put("ed25519", publicSigningKey)
+    return json(200, info)
+  }
+
+  private fun search(request: RecordedRequest): MockResponse {
+    val params = body(request)
+    val limit = params.get("limit")?.asInt()?.takeIf { it > 0 } ?: 50
+    val includeData = params.get("include_data")?.asBoolean() ?: false
+    val types = params.get("match")
+      ?.flatMap { it.get("terms")?.get("content_types") ?: mapper.createArrayNode() }
+      ?.map { it.asText() }
+      ?.toSet()
+      ?: emptySet()
+
+    val results = mapper.createArrayNode()
+    records.values
+      .filter { types.isEmpty() || types.contains(it.get("meta").get("type").asText()) }
+      .take(limit)
+      .forEach {
+        val meta = it.get("meta")
+        val result = results.addObject()
+        result.set<JsonNode>("meta", meta)
+        if (includeData) {
+          val writerId = meta.get("writer_id").asText()
+          val eak = accessKeys["$writerId/${meta.get("user_id").asText()}/$writerId/${meta.get("type").asText()}"]
+          if (eak != null) {
+            result.set<JsonNode>("record_data", it.get("data"))
+            result.set<JsonNode>("access_key", eakResponse(eak, writerId))
+          }
+        }
+      }
+
+    val response = mapper.createObjectNode()
+      .put("total_results", results.size())
+      .put("search_id", UUID.randomUUID().toString())
+      .put("last_index", 0)
+    response.set<JsonNode>("results", results)
+    return json(200, response)
+  }
+
+  private fun note(method: String, request: RecordedRequest): MockResponse {
+    if (method != "POST" && method != "PUT")
+      return json(404, "{}")
+
+    val note = body(request)
+    // Dates are written by the SDK in a form it does not read back; the
+    // benchmarks do not depend on them.
+    note.remove("created_at")
+    note.remove("expiration")
+    note.put("note_id", UUID.randomUUID().toString())
+    return json(201, note)
+  }
+
+  private fun eakResponse(eak: String, authorizerId: String): ObjectNode {
+    val response = mapper.createObjectNode()
+      .put("eak", eak)
+      .put("authorizer_id", authorizerId)
+    response.putObject("authorizer_public_key").put("curve25519", clients.getValue(authorizerId).first)
+    response.putNull("signer_id")
+    response.putNull("signer_signing_key")
+    return response
+  }
+
+  private fun stamp(meta: ObjectNode, recordId: String) {
+    val now = now()
+    meta.put("record_id", recordId)
+    meta.put("created", now)
+    meta.put("last_modified", now)
+    meta.put("version", UUID.randomUUID().toString())
+  }
+
+  private fun body(request: RecordedRequest): ObjectNode =
+    mapper.readTree(request.body.readUtf8()) as ObjectNode
+
+  private fun json(code: Int, body: Any): MockResponse =
+    MockResponse()
+      .setResponseCode(code)
+      .setHeader("Content-Type", "application/json")
+      .setBody(if (body is String) body else mapper.writeValueAsString(body))
+
+  private fun now(): String {
+    val format = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'")
+    format.timeZone = TimeZone.getTimeZone("UTC")
+    return format.format(Date())
+  }
+}
+
+/**
+ * MockWebServer writes response headers and body separately; with Nagle's algorithm
+ * on, each small response then waits on the client's delayed ACK (~40ms), which would
+ * swamp everything being measured.
+ */
+private object NoDelayServerSocketFactory : ServerSocketFactory() {
+  private class NoDelayServerSocket : ServerSocket() {
+    override fun accept(): Socket {
+      val socket = Socket()
+      implAccept(socket)
+      socket.tcpNoDelay = true
+      return socket
+    }
+  }
+
+  override fun createServerSocket(): ServerSocket = NoDelayServerSocket()
+
+  override fun createServerSocket(port: Int): ServerSocket =
+    createServerSocket().apply { bind(InetSocketAddress(port)) }
+
+  override fun createServerSocket(port: Int, backlog: Int): ServerSocket =
+    createServerSocket().apply { bind(InetSocketAddress(port), backlog) }
+
+  override fun createServerSocket(port: Int, backlog: Int, address: InetAddress?): ServerSocket =
+    createServerSocket().apply { bind(InetSocketAddress(address, port), backlog) }
+}
@@ -0,0 +1,69 @@
+package com.tozny.e3db.benchmark
+
+import com.tozny.e3db.*
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.CommandLineOptions
+import org.openjdk.jmh.runner.options.OptionsBuilder
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares records encrypted with one data key per field (the default) and one
+ * data key per record ([ClientBuilder.setSingleDataKeyPerRecord]), as the number
+ * of fields grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class RecordFormatBenchmark {
+
+  @State(Scope.Benchmark)
+  open class Records {
+    @Param("1", "10", "100")
+    var fieldCount: Int = 0
+
+    @Param("false", "true")
+    var singleDataKey: Boolean = false
+
+    lateinit var server: MockE3DBServer
+    lateinit var client: Client
+    lateinit var recordType: String
+    lateinit var eakInfo: EAKInfo
+    lateinit var data: RecordData
+    lateinit var encrypted: EncryptedRecord
+
+    @Setup(Level.Trial)
+    fun setup() {
+      server = MockE3DBServer()
+      client = server.newClient { setSingleDataKeyPerRecord(singleDataKey) }
+      recordType = "${UUID.randomUUID()}"
+      eakInfo = await<LocalEAKInfo> { client.createWriterKey(recordType, it) }
+      data = RecordData((1..fieldCount).associate { Pair("field$it", "value $it") })
+      encrypted = client.encryptRecord(recordType, data, null, eakInfo)
+    }
+
+    @TearDown(Level.Trial)
+    fun tearDown() {
+      server.close()
+    }
+  }
+
+  @Benchmark
+  fun encryptRecord(r: Records): LocalEncryptedRecord =
+    r.client.encryptRecord(r.recordType, r.data, null, r.eakInfo)
+
+  @Benchmark
+  fun decryptExisting(r: Records): LocalRecord =
+    r.client.decryptExisting(r.encrypted, r.eakInfo)
+}
+
+fun main(args: Array<String>) {
+  val options = OptionsBuilder()
+    .parent(CommandLineOptions(*args))
+    .include("com\\.tozny\\.e3db\\.benchmark\\.RecordFormatBenchmark")
+    .build()
+  Runner(options).run()
+}
@@ -0,0 +1,37 @@
+package com.tozny.e3db.benchmark
+
+import org.openjdk.jmh.results.format.ResultFormatType
+import org.openjdk.jmh.runner.Runner
+import org.openjdk.jmh.runner.options.CommandLineOptions
+import org.openjdk.jmh.runner.options.OptionsBuilder
+
+/**
+ * Thread counts to sweep: powers of two from 1 up to twice the number of
+ * available processors (always including 2x cores itself).
+ */
+fun threadCounts(): List<Int> {
+  val max = 2 * Runtime.getRuntime().availableProcessors()
+  val counts = generateSequence(1) { it * 2 }.takeWhile { it < max }.toMutableList()
+  counts.add(max)
+  return counts
+}
+
+/**
+ * Runs the benchmarks matching `include` once per thread count from
+ * [threadCounts] (JMH only accepts a single `-t` per run). Any other JMH
+ * command line options in `args` are honored. Results for each thread
+ * count are written to `<resultPrefix>-t<threads>.json`.
+ */
+fun runThreadSweep(include: String, resultPrefix: String, args: Array<String>) {
+  val commandLine = CommandLineOptions(*args)
+  for (threads in threadCounts()) {
+    val options = OptionsBuilder()
+      .parent(commandLine)
+      .include(include)
+      .threads(threads)
+      .resultFormat(ResultFormatType.JSON)
+      .result("$resultPrefix-t$threads.json")
+      .build()
+    Runner(options).run()
+  }
+}
@@ -0,0 +1,50 @@
+// Timestamps is package-private, so these benchmarks live in its package.
+package com.tozny.e3db
+
+import com.tozny.e3db.benchmark.runThreadSweep
+import org.openjdk.jmh.annotations.*
+import java.text.SimpleDateFormat
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares [Timestamps] with the shared, synchronized [SimpleDateFormat] that
+ * record metadata and search ranges used before it. Every search result parses
+ * two timestamps, so run [main] to see how each behaves as threads are added.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+open class TimestampBenchmark {
+
+  @State(Scope.Benchmark)
+  open class Formats {
+    val simpleDateFormat = SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'").apply {
+      timeZone = TimeZone.getTimeZone("UTC")
+    }
+    val timestamp = "2018-03-04T05:06:07.123456Z"
+    val date = Date(1520139967123L)
+  }
+
+  @Benchmark
+  fun parseSimpleDateFormat(f: Formats): Date =
+    synchronized(f.simpleDateFormat) { f.simpleDateFormat.parse(f.timestamp) }
+
+  @Benchmark
+  fun parseTimestamps(f: Formats): Date =
+    Timestamps.parse(f.timestamp)
+
+  @Benchmark
+  fun formatSimpleDateFormat(f: Formats): String =
+    synchronized(f.simpleDateFormat) { f.simpleDateFormat.format(f.date) }
+
+  @Benchmark
+  fun formatTimestamps(f: Formats): String =
+    Timestamps.format(f.date)
+}
+
+fun main(args: Array<String>) {
+  runThreadSweep("com\\.tozny\\.e3db\\.TimestampBenchmark", "timestamps", args)
+}
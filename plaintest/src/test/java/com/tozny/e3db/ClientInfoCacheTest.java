@@ -0,0 +1,73 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ClientInfoCacheTest {
+
+  private static Client.ClientInfo info(UUID clientId) {
+    return new Client.ClientInfo(new byte[32], new byte[32], clientId);
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    ClientInfoCache cache = new ClientInfoCache(2, 0);
+    UUID first = UUID.randomUUID();
+    UUID second = UUID.randomUUID();
+    UUID third = UUID.randomUUID();
+    Client.ClientInfo firstInfo = info(first);
+
+    cache.put(first, firstInfo);
+    cache.put(second, info(second));
+    cache.get(first);
+    cache.put(third, info(third));
+
+    assertSame(firstInfo, cache.get(first));
+    assertNull("Least recently used entry should be evicted", cache.get(second));
+  }
+
+  @Test
+  public void testExpiresEntries() throws Exception {
+    ClientInfoCache cache = new ClientInfoCache(10, 1);
+    UUID clientId = UUID.randomUUID();
+    cache.put(clientId, info(clientId));
+    Thread.sleep(5);
+
+    assertNull("Entry should have expired", cache.get(clientId));
+  }
+
+  @Test
+  public void testLongTtl() throws Exception {
+    // In nanoseconds, this would overflow to under a millisecond.
+    ClientInfoCache cache = new ClientInfoCache(10, 18446744073709552L);
+    UUID clientId = UUID.randomUUID();
+    Client.ClientInfo info = info(clientId);
+    cache.put(clientId, info);
+    Thread.sleep(5);
+
+    assertSame(info, cache.get(clientId));
+  }
+
+  @Test
+  public void testInvalidate() {
+    ClientInfoCache cache = new ClientInfoCache(10, 0);
+    UUID clientId = UUID.randomUUID();
+    cache.put(clientId, info(clientId));
+    cache.invalidate(clientId);
+
+    assertNull(cache.get(clientId));
+  }
+
+  @Test
+  public void testDisabled() {
+    ClientInfoCache cache = new ClientInfoCache(0, 0);
+    UUID clientId = UUID.randomUUID();
+    cache.put(clientId, info(clientId));
+
+    assertNull(cache.get(clientId));
+  }
+}
@@ -0,0 +1,72 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FieldCompressionTest {
+  private static byte[] text(int length) {
+    String line = "{\"name\": \"value\", \"count\": 12}\n";
+    byte[] text = new byte[length];
+    for (int i = 0; i < length; i++)
+      text[i] = (byte) line.charAt(i % line.length());
+    return text;
+  }
+
+  @Test
+  public void testRoundTrip() throws E3DBDecryptionException {
+    byte[] value = text(300_000);
+    byte[] compressed = FieldCompression.compress(value, 1024);
+    assertNotNull(compressed);
+    assertTrue(compressed.length * 10 < value.length);
+    assertArrayEquals(value, FieldCompression.decompress(compressed));
+  }
+
+  @Test
+  public void testThreshold() {
+    assertNull(FieldCompression.compress(text(100_000), 0));
+    assertNull(FieldCompression.compress(text(1023), 1024));
+    assertNotNull(FieldCompression.compress(text(1024), 1024));
+  }
+
+  @Test
+  public void testIncompressible() {
+    byte[] random = new byte[10_000];
+    new Random(3).nextBytes(random);
+    assertNull(FieldCompression.compress(random, 1));
+  }
+
+  @Test(expected = E3DBDecryptionException.class)
+  public void testTruncated() throws E3DBDecryptionException {
+    byte[] compressed = FieldCompression.compress(text(100_000), 1);
+    FieldCompression.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+  }
+
+  @Test(expected = E3DBDecryptionException.class)
+  public void testTooLarge() throws E3DBDecryptionException {
+    byte[] compressed = FieldCompression.compress(text(100_000), 1);
+    FieldCompression.decompress(compressed, 99_999);
+  }
+
+  @Test
+  public void testMarker() throws E3DBDecryptionException {
+    byte[] compressed = FieldCompression.compress(text(10_000), 1);
+    FieldCompression.check(true, compressed);
+    FieldCompression.check(false, text(10_000));
+    try {
+      FieldCompression.check(false, compressed);
+      fail("Compressed value without prefix accepted.");
+    } catch (E3DBDecryptionException e) {
+      // expected
+    }
+    try {
+      FieldCompression.check(true, text(10_000));
+      fail("Uncompressed value with prefix accepted.");
+    } catch (E3DBDecryptionException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FieldEnvelopeTest {
+
+  private static byte[] bytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testMatchesCipherWithNonce() {
+    Random random = new Random(42);
+    for (int length = 1; length < 100; length++) {
+      CipherWithNonce edk = new CipherWithNonce(bytes(random, 48), bytes(random, 24));
+      CipherWithNonce ef = new CipherWithNonce(bytes(random, length), bytes(random, 24));
+      String expected = edk.toMessage() + "." + ef.toMessage();
+
+      assertEquals(expected, FieldEnvelope.format(edk, ef));
+
+      FieldEnvelope parsed = FieldEnvelope.parse(expected);
+      assertArrayEquals(edk.getCipher(), parsed.edk.getCipher());
+      assertArrayEquals(edk.getNonce(), parsed.edk.getNonce());
+      assertArrayEquals(ef.getCipher(), parsed.ef.getCipher());
+      assertArrayEquals(ef.getNonce(), parsed.ef.getNonce());
+    }
+  }
+
+  @Test
+  public void testSingleCipherMatchesCipherWithNonce() {
+    Random random = new Random(7);
+    for (int length = 1; length < 40; length++) {
+      CipherWithNonce cipher = new CipherWithNonce(bytes(random, length), bytes(random, 24));
+
+      assertEquals(cipher.toMessage(), FieldEnvelope.format(cipher));
+
+      CipherWithNonce parsed = FieldEnvelope.parseCipher("2." + cipher.toMessage(), 2);
+      assertArrayEquals(cipher.getCipher(), parsed.getCipher());
+      assertArrayEquals(cipher.getNonce(), parsed.getNonce());
+    }
+  }
+
+  @Test
+  public void testDecodesPaddingAndStandardAlphabet() {
+    byte[] bytes = new byte[]{(byte) 0xfb, (byte) 0xff, (byte) 0xbf, 0x01};
+    assertArrayEquals(bytes, FieldEnvelope.decodeURL("-_-_AQ", 0, 6));
+    assertArrayEquals(bytes, FieldEnvelope.decodeURL("+/+/AQ==", 0, 8));
+    assertArrayEquals(bytes, FieldEnvelope.decodeURL("x.-_-_AQ.x", 2, 8));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsMissingPart() {
+    FieldEnvelope.parse("AAAA.AAAA.AAAA");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsExtraPart() {
+    FieldEnvelope.parse("AAAA.AAAA.AAAA.AAAA.AAAA");
+  }
+
+  @Test
+  public void testIsCipher() {
+    assertTrue(FieldEnvelope.isCipher("2.AAAA.AAAA", 2));
+    assertTrue(FieldEnvelope.isCipher("z.AAAA.AAAA", 2));
+    assertFalse(FieldEnvelope.isCipher("AAAA.AAAA.AAAA.AAAA", 0));
+    assertFalse(FieldEnvelope.isCipher("2.AAAA", 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsFullEnvelopeAsSingleCipher() {
+    FieldEnvelope.parseCipher("AAAA.AAAA.AAAA.AAAA", 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsInvalidCharacters() {
+    FieldEnvelope.parse("AAAA.AAAA.AA*A.AAAA");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsEmptyPart() {
+    FieldEnvelope.parse("AAAA..AAAA.AAAA");
+  }
+}
@@ -0,0 +1,71 @@
+package com.tozny.e3db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileCompressionTest {
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("file-compression").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    if (files != null)
+      for (File file : files)
+        file.delete();
+    directory.delete();
+  }
+
+  private File file(String name, byte[] contents) throws IOException {
+    File file = new File(directory, name);
+    Files.write(file.toPath(), contents);
+    return file;
+  }
+
+  private static byte[] log(int lines) {
+    StringBuilder log = new StringBuilder();
+    Random random = new Random(1);
+    for (int i = 0; i < lines; i++)
+      log.append("2021-03-04T05:06:07.").append(random.nextInt(1000)).append("Z INFO request ").append(random.nextInt(100)).append(" completed\n");
+    return log.toString().getBytes();
+  }
+
+  @Test
+  public void testChoose() throws IOException {
+    byte[] random = new byte[1024 * 1024];
+    new Random(2).nextBytes(random);
+    assertEquals(Compression.RAW, FileCompression.choose(file("random.bin", random)));
+    assertEquals(Compression.RAW, FileCompression.choose(file("empty.bin", new byte[0])));
+    assertEquals(Compression.GZIP, FileCompression.choose(file("small.log", log(10))));
+    assertEquals(Compression.GZIP, FileCompression.choose(file("large.log", log(100_000))));
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    byte[] contents = log(100_000);
+    File original = file("original.log", contents);
+    File compressed = FileCompression.compress(original, Compression.GZIP, original.getParentFile());
+    assertTrue(compressed.length() * 4 < contents.length);
+
+    // As Client.writeFile and readFile do: compress, encrypt, decrypt, decompress.
+    byte[] key = Platform.crypto.newSecretKey();
+    File encrypted = Platform.crypto.encryptFile(compressed, key);
+    File decrypted = new File(directory, "decrypted.bin");
+    Platform.crypto.decryptFile(encrypted, key, decrypted);
+    File dest = new File(directory, "dest.log");
+    FileCompression.decompress(decrypted, Compression.GZIP, dest);
+    assertArrayEquals(contents, Files.readAllBytes(dest.toPath()));
+  }
+}
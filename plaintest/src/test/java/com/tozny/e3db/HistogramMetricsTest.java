@@ -0,0 +1,59 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramMetricsTest {
+
+  @Test
+  public void testBucketsCoverAllValues() {
+    for (long value = 0; value < 100_000; value++) {
+      int bucket = HistogramMetrics.Histogram.bucket(value);
+      assertTrue(HistogramMetrics.Histogram.lowestValue(bucket) <= value);
+      assertTrue(HistogramMetrics.Histogram.lowestValue(bucket + 1) > value);
+    }
+    int last = HistogramMetrics.Histogram.bucket(Long.MAX_VALUE);
+    assertTrue(HistogramMetrics.Histogram.lowestValue(last) > 0);
+  }
+
+  @Test
+  public void testPercentiles() {
+    HistogramMetrics.Histogram histogram = new HistogramMetrics.Histogram();
+    assertEquals(0, histogram.valueAtPercentile(99));
+
+    for (long value = 1; value <= 1000; value++)
+      histogram.record(value * 1000);
+
+    assertEquals(1000, histogram.count());
+    assertEquals(1_000_000, histogram.max());
+    assertEquals(500_500, histogram.mean(), 0.001);
+    assertWithin(500_000, histogram.valueAtPercentile(50));
+    assertWithin(990_000, histogram.valueAtPercentile(99));
+    assertEquals(1_000_000, histogram.valueAtPercentile(100));
+  }
+
+  @Test
+  public void testRecordsByName() {
+    HistogramMetrics metrics = new HistogramMetrics();
+    metrics.recordHttpCall("getRecord", 200, 1000, 10, 100);
+    metrics.recordHttpCall("getRecord", 404, 2000, 10, 0);
+    metrics.recordCacheAccess("eak", true);
+    metrics.recordCacheAccess("eak", false);
+    metrics.recordCacheAccess("eak", true);
+
+    assertEquals(2, metrics.httpTime("getRecord").count());
+    assertEquals(1, metrics.httpFailures("getRecord"));
+    assertEquals(20, metrics.bytesSent("getRecord"));
+    assertEquals(100, metrics.bytesReceived("getRecord"));
+    assertNull(metrics.httpTime("writeRecord"));
+    assertEquals(2, metrics.cacheHits("eak"));
+    assertEquals(1, metrics.cacheMisses("eak"));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("Expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 16);
+  }
+}
@@ -0,0 +1,103 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LocalEncryptedRecordTest {
+  private static final Random random = new Random(42);
+
+  private static CipherWithNonce cipher(int length) {
+    byte[] cipher = new byte[length];
+    byte[] nonce = new byte[24];
+    random.nextBytes(cipher);
+    random.nextBytes(nonce);
+    return new CipherWithNonce(cipher, nonce);
+  }
+
+  private static LocalEncryptedRecord record(Map<String, String> data, Map<String, String> plain, String signature) {
+    return new LocalEncryptedRecord(data, new LocalMeta(UUID.randomUUID(), UUID.randomUUID(), "type", plain), signature);
+  }
+
+  private static LocalEncryptedRecord encryptedRecord() {
+    Map<String, String> data = new HashMap<>();
+    for (int i = 0; i < 10; i++)
+      data.put("field" + i, FieldEnvelope.format(cipher(48), cipher(16 + i * 10)));
+    Map<String, String> plain = new HashMap<>();
+    plain.put("name", "value");
+    byte[] signature = new byte[64];
+    random.nextBytes(signature);
+    return record(data, plain, Base64.encodeURL(signature));
+  }
+
+  private static void assertRoundTrips(LocalEncryptedRecord record) throws IOException {
+    String json = record.encode();
+    byte[] binary = record.encodeBinary();
+    assertEquals(json, LocalEncryptedRecord.decodeBinary(binary).encode());
+    assertArrayEquals(binary, LocalEncryptedRecord.decode(json).encodeBinary());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    assertRoundTrips(encryptedRecord());
+  }
+
+  @Test
+  public void testRoundTripSingleDataKey() throws IOException {
+    Map<String, String> data = new HashMap<>();
+    data.put("_e3db_record_key", "2." + FieldEnvelope.format(cipher(48)));
+    data.put("field", FieldEnvelope.format(cipher(100)));
+    assertRoundTrips(record(data, null, "signature"));
+  }
+
+  @Test
+  public void testRoundTripUnusualValues() throws IOException {
+    List<String> values = Arrays.asList("", ".", "a..b", "abc.", ".abc", "QUJD", "QUJDRA==", "QUJDRA", "QUJDRB",
+        "ab+/", "a/b.c+d", "h\u00e9llo.w\u00f6rld", "\u2603", "2.x", "a b", "\u0000");
+    Map<String, String> data = new HashMap<>();
+    for (int i = 0; i < values.size(); i++)
+      data.put("field" + i, values.get(i));
+    Map<String, String> plain = new HashMap<>();
+    plain.put("\u00fcn\u00efcode", "v\u00e4lue");
+    plain.put("", "");
+
+    for (String value : values)
+      assertRoundTrips(record(data, plain, value));
+    assertRoundTrips(record(new HashMap<String, String>(), new HashMap<String, String>(), ""));
+
+    LocalEncryptedRecord unsigned = LocalEncryptedRecord.decodeBinary(record(data, null, null).encodeBinary());
+    assertNull(unsigned.signature());
+    assertNull(unsigned.meta().plain());
+    assertEquals(data, unsigned.data());
+  }
+
+  @Test
+  public void testSmallerThanJson() throws IOException {
+    LocalEncryptedRecord record = encryptedRecord();
+    int json = record.encode().getBytes("UTF-8").length;
+    int binary = record.encodeBinary().length;
+    assertTrue("binary " + binary + " vs JSON " + json, binary < json * 0.8);
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    byte[] binary = encryptedRecord().encodeBinary();
+    for (int length = 0; length < binary.length; length++) {
+      try {
+        LocalEncryptedRecord.decodeBinary(binary, 0, length);
+        fail("Decoded truncated record of length " + length);
+      } catch (IOException expected) {
+      }
+    }
+
+    byte[] padded = Arrays.copyOf(binary, binary.length + 1);
+    try {
+      LocalEncryptedRecord.decodeBinary(padded);
+      fail("Decoded record with trailing data");
+    } catch (IOException expected) {
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.tozny.e3db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LocalRecordStoreTest {
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("local-record-store").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = directory.listFiles();
+    if (files != null)
+      for (File file : files)
+        file.delete();
+    directory.delete();
+  }
+
+  private static LocalEncryptedRecord record(String value) {
+    Map<String, String> data = new HashMap<>();
+    data.put("field", value);
+    Map<String, String> plain = new HashMap<>();
+    plain.put("plain", "text");
+    return new LocalEncryptedRecord(data, new LocalMeta(UUID.randomUUID(), UUID.randomUUID(), "type", plain), "signature");
+  }
+
+  private static String value(LocalEncryptedRecord record) {
+    return record.data().get("field");
+  }
+
+  private List<File> segments() {
+    File[] files = directory.listFiles();
+    List<File> segments = new ArrayList<>(Arrays.asList(files == null ? new File[0] : files));
+    Collections.sort(segments);
+    return segments;
+  }
+
+  @Test
+  public void testPutGetDelete() throws IOException {
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+    try (LocalRecordStore store = LocalRecordStore.open(directory)) {
+      LocalEncryptedRecord record = record("a");
+      store.put(a, record);
+      store.put(b, record("b"));
+      store.put(b, record("b2"));
+
+      LocalEncryptedRecord read = store.get(a);
+      assertEquals(record.encode(), read.encode());
+      assertEquals("b2", value(store.get(b)));
+      assertNull(store.get(UUID.randomUUID()));
+      assertEquals(2, store.size());
+
+      assertTrue(store.delete(a));
+      assertFalse(store.delete(a));
+      assertFalse(store.contains(a));
+      assertEquals(Collections.singleton(b), store.ids());
+
+      Map<UUID, LocalEncryptedRecord> all = store.getAll(Arrays.asList(a, b));
+      assertEquals(Collections.singletonList(b), new ArrayList<>(all.keySet()));
+    }
+
+    try (LocalRecordStore store = LocalRecordStore.open(directory)) {
+      assertNull(store.get(a));
+      assertEquals("b2", value(store.get(b)));
+      assertEquals(1, store.size());
+    }
+  }
+
+  @Test
+  public void testSegmentsRollAndCompact() throws IOException {
+    List<UUID> ids = new ArrayList<>();
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      for (int i = 0; i < 100; i++) {
+        UUID id = UUID.randomUUID();
+        ids.add(id);
+        store.put(id, record("v" + i));
+      }
+      // Replace or delete all but every tenth record.
+      for (int i = 0; i < 100; i++) {
+        if (i % 10 == 0)
+          continue;
+        if (i % 2 == 0)
+          store.delete(ids.get(i));
+        else
+          store.put(ids.get(i), record("w" + i));
+      }
+
+      int before = segments().size();
+      assertTrue(before > 2);
+      store.compact();
+      assertTrue(segments().size() < before);
+      assertEquals(60, store.size());
+    }
+
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      assertEquals(60, store.size());
+      for (int i = 0; i < 100; i++) {
+        LocalEncryptedRecord record = store.get(ids.get(i));
+        if (i % 10 == 0)
+          assertEquals("v" + i, value(record));
+        else if (i % 2 == 0)
+          assertNull(record);
+        else
+          assertEquals("w" + i, value(record));
+      }
+    }
+  }
+
+  @Test
+  public void testRecoversFromTornWrite() throws IOException {
+    UUID a = UUID.randomUUID();
+    UUID b = UUID.randomUUID();
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      store.put(a, record("a"));
+      store.put(b, record("b"));
+    }
+
+    // Corrupt the last byte of the second entry.
+    File segment = segments().get(0);
+    long end;
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      end = 0;
+      while (end < file.length()) {
+        file.seek(end);
+        int length = file.readInt();
+        if (length == 0)
+          break;
+        end += 8 + length;
+      }
+      file.seek(end - 1);
+      int last = file.read();
+      file.seek(end - 1);
+      file.write(last ^ 0xff);
+    }
+
+    UUID c = UUID.randomUUID();
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      assertEquals("a", value(store.get(a)));
+      assertNull(store.get(b));
+      store.put(c, record("c"));
+    }
+
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      assertEquals("a", value(store.get(a)));
+      assertEquals("c", value(store.get(c)));
+      assertEquals(2, store.size());
+    }
+  }
+
+  @Test
+  public void testLargeRecordGetsOwnSegment() throws IOException {
+    UUID id = UUID.randomUUID();
+    char[] chars = new char[10_000];
+    Arrays.fill(chars, 'x');
+    String large = new String(chars);
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      store.put(UUID.randomUUID(), record("small"));
+      store.put(id, record(large));
+      assertEquals(large, value(store.get(id)));
+    }
+
+    try (LocalRecordStore store = LocalRecordStore.open(directory, 4096)) {
+      assertEquals(large, value(store.get(id)));
+    }
+  }
+}
@@ -0,0 +1,304 @@
+package com.tozny.e3db;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+  private File directory;
+  private Client client;
+  private MockWebServer server;
+  // Bodies of the writes received, in order, and the status to answer each with (201 once these run out).
+  private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+  private final List<Integer> statuses = Collections.synchronizedList(new ArrayList<Integer>());
+  private volatile boolean malformedToken = false;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("outbox").toFile();
+    // Nothing listens here, so every send fails and operations stay queued.
+    client = new ClientBuilder()
+        .setApiKey("api-key")
+        .setApiSecret("api-secret")
+        .setClientId(UUID.randomUUID())
+        .setHost("http://127.0.0.1:1")
+        .setPrivateKey(Client.generateKey())
+        .setPrivateSigningKey(Client.generateSigningKey())
+        .build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (server != null)
+      server.shutdown();
+    File[] files = directory.listFiles();
+    if (files != null)
+      for (File file : files)
+        file.delete();
+    directory.delete();
+  }
+
+  private static void writeNotes(Outbox outbox, int count) throws Exception {
+    byte[] publicKey = Base64.decodeURL(Client.getPublicKey(Client.generateKey()));
+    byte[] publicSigningKey = Base64.decodeURL(Client.getPublicSigningKey(Client.generateSigningKey()));
+    for (int i = 0; i < count; i++)
+      outbox.writeNote(new RecordData(Collections.singletonMap("field", "value " + i)), publicKey, publicSigningKey, null, null);
+  }
+
+  @Test
+  public void testQueuedOperationsSurviveReopening() throws Exception {
+    Outbox outbox = Outbox.open(client, directory, 10, 0);
+    writeNotes(outbox, 3);
+    outbox.close();
+    assertEquals(3, outbox.pending());
+
+    File journal = new File(directory, "outbox.journal");
+    long length = journal.length();
+    assertTrue(length > 0);
+    // The remains of an interrupted write.
+    try (FileOutputStream out = new FileOutputStream(journal, true)) {
+      out.write(new byte[]{0, 0, 1, 0, 1, 2, 3, 4, 5});
+    }
+
+    outbox = Outbox.open(client, directory, 10, 0);
+    try {
+      assertEquals(3, outbox.pending());
+      assertEquals(length, journal.length());
+      writeNotes(outbox, 2);
+    } finally {
+      outbox.close();
+    }
+
+    outbox = Outbox.open(client, directory);
+    try {
+      assertEquals(5, outbox.pending());
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosed() throws IOException {
+    Outbox outbox = Outbox.open(client, directory);
+    outbox.close();
+    outbox.write("type", new RecordData(Collections.singletonMap("field", "value")), null, null);
+  }
+
+  /**
+   * Starts a server that accepts record writes, answering with {@link #statuses}, and returns a client for it.
+   */
+  private Client serverClient() throws Exception {
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        if (request.getPath().startsWith("/v1/auth/token")) {
+          if (malformedToken) {
+            malformedToken = false;
+            return new MockResponse().setResponseCode(200).setBody("{}");
+          }
+          return new MockResponse().setResponseCode(200).setBody("{\"access_token\":\"token\",\"expires_in\":3600}");
+        }
+        received.add(request.getBody().readUtf8());
+        int status = statuses.isEmpty() ? 201 : statuses.remove(0);
+        return new MockResponse().setResponseCode(status).setBody("{}");
+      }
+    });
+    server.start();
+    return new ClientBuilder()
+        .setApiKey("api-key")
+        .setApiSecret("api-secret")
+        .setClientId(UUID.randomUUID())
+        .setHost(server.url("/").toString())
+        .setPrivateKey(Client.generateKey())
+        .setPrivateSigningKey(Client.generateSigningKey())
+        .build();
+  }
+
+  private static Outbox.Entry write(String body, final List<Integer> completed) {
+    return new Outbox.Entry(Outbox.WRITE, null, null, body.getBytes(StandardCharsets.UTF_8), completed == null ? null : new Outbox.Completion() {
+      @Override
+      public void complete(retrofit2.Response<okhttp3.ResponseBody> response) {
+        completed.add(response.code());
+        if (response.errorBody() != null)
+          response.errorBody().close();
+        if (response.body() != null)
+          response.body().close();
+      }
+
+      @Override
+      public void fail(Throwable error) {
+        throw new AssertionError(error);
+      }
+    });
+  }
+
+  private static void waitFor(Callable<Boolean> condition) throws Exception {
+    long until = System.currentTimeMillis() + 15_000;
+    while (!condition.call()) {
+      if (System.currentTimeMillis() > until)
+        fail("Timed out.");
+      Thread.sleep(10);
+    }
+  }
+
+  private static Callable<Boolean> sizeAtLeast(final List<?> list, final int count) {
+    return new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return list.size() >= count;
+      }
+    };
+  }
+
+  @Test
+  public void testSendsInOrderAndTruncates() throws Exception {
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+    Outbox outbox = Outbox.open(serverClient(), directory, 2, 0);
+    try {
+      for (int i = 0; i < 5; i++)
+        outbox.enqueue(write("{\"n\":" + i + "}", completed));
+      // Completions follow the operations being recorded as sent.
+      waitFor(sizeAtLeast(completed, 5));
+      assertEquals(0, outbox.pending());
+      assertEquals(Arrays.asList("{\"n\":0}", "{\"n\":1}", "{\"n\":2}", "{\"n\":3}", "{\"n\":4}"), received);
+      assertEquals(Arrays.asList(201, 201, 201, 201, 201), completed);
+      assertEquals(0, new File(directory, "outbox.journal").length());
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  public void testSentOperationsAreNotResent() throws Exception {
+    statuses.addAll(Arrays.asList(201, 201, 503));
+    Outbox outbox = Outbox.open(serverClient(), directory, 10, 0);
+    try {
+      for (int i = 0; i < 4; i++)
+        outbox.enqueue(write("{\"n\":" + i + "}", null));
+      waitFor(sizeAtLeast(received, 3));
+    } finally {
+      outbox.close();
+    }
+    assertEquals(2, outbox.pending());
+
+    // Nothing listens on the other client's host, so operations recovered stay queued.
+    outbox = Outbox.open(client, directory);
+    try {
+      assertEquals(2, outbox.pending());
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  public void testRetriesServerErrors() throws Exception {
+    statuses.addAll(Arrays.asList(503, 500));
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+    Outbox outbox = Outbox.open(serverClient(), directory, 10, 0);
+    try {
+      outbox.enqueue(write("{\"n\":0}", completed));
+      outbox.enqueue(write("{\"n\":1}", completed));
+      waitFor(sizeAtLeast(received, 1));
+      outbox.flush();
+      waitFor(sizeAtLeast(completed, 2));
+      assertEquals(Arrays.asList("{\"n\":0}", "{\"n\":0}", "{\"n\":0}", "{\"n\":1}"), received);
+      assertEquals(Arrays.asList(201, 201), completed);
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  public void testRetriesRuntimeExceptions() throws Exception {
+    // Reading the token response then fails with a NullPointerException.
+    malformedToken = true;
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+    Outbox outbox = Outbox.open(serverClient(), directory, 10, 0);
+    try {
+      outbox.enqueue(write("{\"n\":0}", completed));
+      waitFor(sizeAtLeast(completed, 1));
+      assertEquals(Collections.singletonList(201), completed);
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  public void testGivesUpOnRepeatedFailures() throws Exception {
+    final List<Throwable> failed = Collections.synchronizedList(new ArrayList<Throwable>());
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+    Outbox outbox = Outbox.open(serverClient(), directory, 10, 0);
+    try {
+      // Sending an operation of an unknown kind fails the same way every time.
+      outbox.enqueue(new Outbox.Entry((byte) 0x7f, null, null, "{}".getBytes(StandardCharsets.UTF_8), new Outbox.Completion() {
+        @Override
+        public void complete(retrofit2.Response<okhttp3.ResponseBody> response) {
+          throw new AssertionError("Sent " + response);
+        }
+
+        @Override
+        public void fail(Throwable error) {
+          failed.add(error);
+        }
+      }));
+      outbox.enqueue(write("{\"n\":0}", completed));
+      outbox.enqueue(write("{\"n\":1}", completed));
+      while (failed.isEmpty()) {
+        // Skip the backoff between attempts.
+        outbox.flush();
+        Thread.sleep(10);
+      }
+      waitFor(sizeAtLeast(completed, 2));
+      assertTrue(failed.get(0) instanceof IllegalArgumentException);
+      assertEquals(Arrays.asList("{\"n\":0}", "{\"n\":1}"), received);
+      assertEquals(Arrays.asList(201, 201), completed);
+      assertEquals(0, outbox.pending());
+    } finally {
+      outbox.close();
+    }
+  }
+
+  @Test
+  public void testCompactsJournal() throws Exception {
+    statuses.addAll(Arrays.asList(201, 201, 201, 201, 201, 201, 503));
+    char[] padding = new char[200_000];
+    Arrays.fill(padding, 'x');
+    Outbox outbox = Outbox.open(serverClient(), directory, 1, 0);
+    try {
+      for (int i = 0; i < 10; i++)
+        outbox.enqueue(write("{\"n\":" + i + ",\"p\":\"" + new String(padding) + "\"}", null));
+      waitFor(sizeAtLeast(received, 7));
+    } finally {
+      outbox.close();
+    }
+
+    // Ten operations were journaled, about 2MB; compaction left only those unsent at the time.
+    long length = new File(directory, "outbox.journal").length();
+    assertTrue("Journal is " + length + " bytes", length > 4 * 200_000 && length < 6 * 200_000);
+    outbox = Outbox.open(client, directory);
+    try {
+      assertEquals(4, outbox.pending());
+    } finally {
+      outbox.close();
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.tozny.e3db;
+
+import com.tozny.e3db.crypto.Crypto;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class RecordFormatTest {
+  private Client client;
+  private Client singleKeyClient;
+  private EAKInfo eakInfo;
+
+  @Before
+  public void setUp() throws Exception {
+    UUID clientId = UUID.randomUUID();
+    String privateKey = Client.generateKey();
+    String privateSigningKey = Client.generateSigningKey();
+    ClientBuilder builder = new ClientBuilder()
+        .setApiKey("api-key")
+        .setApiSecret("api-secret")
+        .setClientId(clientId)
+        .setHost("http://127.0.0.1:1")
+        .setPrivateKey(privateKey)
+        .setPrivateSigningKey(privateSigningKey);
+    client = builder.build();
+    singleKeyClient = builder.setSingleDataKeyPerRecord(true).build();
+
+    Crypto crypto = Platform.crypto;
+    CipherWithNonce eak = crypto.encryptBox(crypto.newSecretKey(), Base64.decodeURL(Client.getPublicKey(privateKey)), Base64.decodeURL(privateKey));
+    eakInfo = new LocalEAKInfo(eak.toMessage(), Client.getPublicKey(privateKey), clientId, clientId, Client.getPublicSigningKey(privateSigningKey));
+  }
+
+  private static Map<String, String> data(String... keyValues) {
+    Map<String, String> data = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2)
+      data.put(keyValues[i], keyValues[i + 1]);
+    return data;
+  }
+
+  @Test
+  public void testDefaultFormatWithRecordKeyFieldName() throws Exception {
+    // Written before records could share a data key, or by a client that doesn't.
+    Map<String, String> data = data(Client.RECORD_KEY_FIELD, "2.looks.versioned", "name", "value");
+    LocalEncryptedRecord record = client.encryptRecord("type", new RecordData(data), null, eakInfo);
+
+    assertEquals(data, client.decryptExisting(record, eakInfo).data());
+    assertEquals(data, singleKeyClient.decryptExisting(record, eakInfo).data());
+  }
+
+  @Test
+  public void testSingleDataKeyReadByDefaultClient() throws Exception {
+    Map<String, String> data = data("name", "value", "other", "");
+    LocalEncryptedRecord record = singleKeyClient.encryptRecord("type", new RecordData(data), null, eakInfo);
+
+    assertTrue(record.document().data().containsKey(Client.RECORD_KEY_FIELD));
+    assertEquals(data, client.decryptExisting(record, eakInfo).data());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSingleDataKeyRejectsRecordKeyFieldName() throws Exception {
+    singleKeyClient.encryptRecord("type", new RecordData(data(Client.RECORD_KEY_FIELD, "value")), null, eakInfo);
+  }
+}
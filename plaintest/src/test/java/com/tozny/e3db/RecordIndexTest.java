@@ -0,0 +1,131 @@
+package com.tozny.e3db;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.tozny.e3db.SearchRequest.*;
+import static org.junit.Assert.*;
+
+public class RecordIndexTest {
+  private static final UUID writer = UUID.fromString("5a0f0b56-55b4-4b7c-9e4e-0c4f8a1b2c3d");
+  private static final UUID other = UUID.fromString("d2b7a3c1-1e4f-4f3a-8b6d-7c9e0a1b2c3d");
+
+  private RecordIndex index;
+  private UUID first;
+  private UUID second;
+  private UUID third;
+  private UUID local;
+
+  private static RecordMeta meta(final UUID id, final UUID writerId, final String type, final Map<String, String> plain, final long created, final long modified) {
+    return new RecordMeta() {
+      public UUID recordId() { return id; }
+      public UUID writerId() { return writerId; }
+      public UUID userId() { return writerId; }
+      public Date created() { return new Date(created); }
+      public Date lastModified() { return new Date(modified); }
+      public String version() { return "1"; }
+      public String type() { return type; }
+      public Map<String, String> plain() { return plain; }
+      public FileMeta file() { return null; }
+    };
+  }
+
+  private static Map<String, String> plain(String... keyValues) {
+    Map<String, String> plain = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2)
+      plain.put(keyValues[i], keyValues[i + 1]);
+    return plain;
+  }
+
+  private static SearchParams params(SearchParamCondition condition, SearchParamStrategy strategy, SearchTermsBuilder terms) {
+    return new SearchParams(condition, strategy, terms.build());
+  }
+
+  private List<UUID> match(SearchParams... params) {
+    return index.search(new SearchRequestBuilder().setMatch(Arrays.asList(params)).build());
+  }
+
+  @Before
+  public void setUp() {
+    index = new RecordIndex();
+    first = new UUID(0, 1);
+    second = new UUID(0, 2);
+    third = new UUID(0, 3);
+    local = new UUID(0, 4);
+    index.add(meta(third, other, "contact", plain("status", "archived"), 3000, 3000));
+    index.add(meta(first, writer, "contact", plain("status", "active", "region", "east"), 1000, 5000));
+    index.add(meta(second, writer, "invoice", plain("status", "active"), 2000, 2000));
+    index.add(local, new LocalMeta(writer, writer, "contact", plain("status", "draft")));
+  }
+
+  @Test
+  public void testAll() {
+    assertEquals(Arrays.asList(first, second, third, local), index.search(new SearchRequestBuilder().build()));
+    assertEquals(Arrays.asList(third, second, first, local), index.search(new SearchRequestBuilder().setOrder(SearchOrder.SearchOrderDescending()).build()));
+  }
+
+  @Test
+  public void testExact() {
+    assertEquals(Arrays.asList(first, third, local), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("contact"))));
+    assertEquals(Arrays.asList(first, second, third, local), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("contact", "invoice"))));
+    assertEquals(Collections.emptyList(), match(params(SearchParamCondition.AND, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("contact", "invoice"))));
+    assertEquals(Arrays.asList(first), match(params(SearchParamCondition.AND, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("contact").setTag("status", "active"))));
+    assertEquals(Arrays.asList(third), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addWriterIds(other))));
+    assertEquals(Arrays.asList(first), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addKeys("region"))));
+    assertEquals(Arrays.asList(first, second), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addValues("active"))));
+    assertEquals(Arrays.asList(second), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordIds(second))));
+  }
+
+  @Test
+  public void testExclude() {
+    SearchRequest request = new SearchRequestBuilder()
+      .setMatch(Collections.singletonList(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("contact"))))
+      .setExclude(Collections.singletonList(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().setTag("status", "archived"))))
+      .build();
+    assertEquals(Arrays.asList(first, local), index.search(request));
+  }
+
+  @Test
+  public void testStrategies() {
+    assertEquals(Arrays.asList(first, third, local), match(params(SearchParamCondition.OR, SearchParamStrategy.WILDCARD, new SearchTermsBuilder().addRecordTypes("con*"))));
+    assertEquals(Arrays.asList(second), match(params(SearchParamCondition.OR, SearchParamStrategy.WILDCARD, new SearchTermsBuilder().addRecordTypes("i?voice"))));
+    assertEquals(Arrays.asList(third, local), match(params(SearchParamCondition.OR, SearchParamStrategy.REGEXP, new SearchTermsBuilder().setTag("status", "(archived|draft)"))));
+    assertEquals(Arrays.asList(second), match(params(SearchParamCondition.OR, SearchParamStrategy.FUZZY, new SearchTermsBuilder().addRecordTypes("invocie"))));
+    assertEquals(Collections.emptyList(), match(params(SearchParamCondition.OR, SearchParamStrategy.FUZZY, new SearchTermsBuilder().addRecordTypes("invxxxe"))));
+    assertEquals(Collections.emptyList(), match(params(SearchParamCondition.OR, SearchParamStrategy.WILDCARD, new SearchTermsBuilder().addRecordTypes("con.*"))));
+  }
+
+  @Test
+  public void testRange() {
+    assertEquals(Arrays.asList(second, third), index.search(new SearchRequestBuilder()
+      .setRange(new SearchRange(SearchRangeType.CREATED, new Date(2000), new Date(3000))).build()));
+    assertEquals(Arrays.asList(first), index.search(new SearchRequestBuilder()
+      .setRange(new SearchRange(SearchRangeType.MODIFIED, new Date(4000), null)).build()));
+    assertEquals(Arrays.asList(first), index.search(new SearchRequestBuilder()
+      .setMatch(Collections.singletonList(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("contact"))))
+      .setRange(new SearchRange(SearchRangeType.CREATED, null, new Date(2500))).build()));
+  }
+
+  @Test
+  public void testReplaceAndRemove() {
+    index.add(meta(first, writer, "invoice", plain("status", "paid"), 1000, 6000));
+    assertEquals(Arrays.asList(first, second), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addRecordTypes("invoice"))));
+    assertEquals(Collections.emptyList(), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().addKeys("region"))));
+
+    assertTrue(index.remove(first));
+    assertFalse(index.remove(first));
+    assertFalse(index.contains(first));
+    assertEquals(3, index.size());
+    assertEquals(Collections.emptyList(), match(params(SearchParamCondition.OR, SearchParamStrategy.EXACT, new SearchTermsBuilder().setTag("status", "paid"))));
+  }
+
+  @Test
+  public void testEditDistance() {
+    assertEquals(0, RecordIndex.editDistance("abc", "abc", 2));
+    assertEquals(1, RecordIndex.editDistance("abc", "acb", 2));
+    assertEquals(2, RecordIndex.editDistance("kitten", "sittin", 2));
+    assertTrue(RecordIndex.editDistance("kitten", "sitting", 2) > 2);
+  }
+}
@@ -0,0 +1,96 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class SyncCursorTest {
+  private static RecordMeta meta(final UUID id, final String version, final long modified) {
+    return new RecordMeta() {
+      public UUID recordId() { return id; }
+      public UUID writerId() { return id; }
+      public UUID userId() { return id; }
+      public Date created() { return new Date(0); }
+      public Date lastModified() { return new Date(modified); }
+      public String version() { return version; }
+      public String type() { return "contact"; }
+      public Map<String, String> plain() { return Collections.emptyMap(); }
+      public FileMeta file() { return null; }
+    };
+  }
+
+  @Test
+  public void testStart() throws IOException {
+    SyncCursor cursor = SyncCursor.decode(SyncCursor.start().encode());
+    assertNull(cursor.modifiedAfter());
+    assertTrue(cursor.seen().isEmpty());
+    assertFalse(cursor.isExact());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Map<String, Long> seen = new HashMap<>();
+    seen.put("9b2d3a9e-3f39-4c5a-9d5e-1b0b1c6f9a11/5d1f0e54-7a43-4a26-8a0f-3fce2b0d6d2c", 1500000000123L);
+    seen.put("0c1f2a3b-4d5e-4f60-8172-93a4b5c6d7e8/e2c6bb3e-0d7e-4a51-b4a7-6a9f4b2b3c1d", 1500000000456L);
+    SyncCursor cursor = SyncCursor.decode(new SyncCursor(new Date(1500000000456L), seen).encode());
+    assertEquals(new Date(1500000000456L), cursor.modifiedAfter());
+    assertEquals(seen, cursor.seen());
+    assertFalse(cursor.isExact());
+  }
+
+  @Test
+  public void testFrom() throws IOException {
+    SyncCursor cursor = SyncCursor.decode(SyncCursor.from(new Date(1234L)).encode());
+    assertEquals(new Date(1234L), cursor.modifiedAfter());
+    assertEquals(Collections.<String, Long>emptyMap(), cursor.seen());
+    assertTrue(cursor.isExact());
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalid() throws IOException {
+    SyncCursor.decode("{\"modified_after\": 1}");
+  }
+
+  @Test
+  public void testPagingLongerThanOverlap() {
+    UUID first = new UUID(0, 1);
+    UUID last = new UUID(0, 2);
+    UUID old = new UUID(0, 3);
+    long startedAt = 1500000000000L;
+    long paging = 2 * SyncCursor.OVERLAP_MILLIS;
+
+    // The first page holds the oldest records; the last is read once paging has outlasted the overlap.
+    SyncCursor.Progress progress = SyncCursor.start().progress(startedAt);
+    assertTrue(progress.add(meta(old, "1", startedAt - 5 * SyncCursor.OVERLAP_MILLIS)));
+    assertTrue(progress.add(meta(first, "1", startedAt - 10000L)));
+    assertTrue(progress.add(meta(last, "1", startedAt + paging)));
+    SyncCursor cursor = progress.cursor();
+
+    // The first record, modified again just after its page was read, is found by the next sync.
+    long modifiedWhilePaging = startedAt + 5000L;
+    assertFalse(cursor.searchFrom().after(new Date(modifiedWhilePaging)));
+    assertEquals(new Date(startedAt), cursor.modifiedAfter());
+    assertEquals(2, cursor.seen().size());
+    assertFalse(cursor.seen().containsKey(old + "/1"));
+
+    SyncCursor.Progress next = cursor.progress(startedAt + paging + 1000L);
+    assertTrue(next.add(meta(first, "2", modifiedWhilePaging)));
+    assertFalse(next.add(meta(last, "1", startedAt + paging)));
+    assertEquals(new Date(startedAt + paging), next.cursor().modifiedAfter());
+  }
+
+  @Test
+  public void testFromSkipsEarlierRecords() {
+    SyncCursor.Progress progress = SyncCursor.from(new Date(5000L)).progress(100000L);
+    assertFalse(progress.add(meta(new UUID(0, 1), "1", 4999L)));
+    assertTrue(progress.add(meta(new UUID(0, 2), "1", 5000L)));
+    assertFalse(progress.cursor().isExact());
+  }
+}
@@ -0,0 +1,55 @@
+package com.tozny.e3db;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimestampsTest {
+
+  private static SimpleDateFormat millisFormat() {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format;
+  }
+
+  @Test
+  public void testParsesMicroseconds() throws Exception {
+    assertEquals(millisFormat().parse("2018-03-04T05:06:07.123Z"), Timestamps.parse("2018-03-04T05:06:07.123456Z"));
+    assertEquals(millisFormat().parse("2018-03-04T05:06:07.100Z"), Timestamps.parse("2018-03-04T05:06:07.1Z"));
+    assertEquals(millisFormat().parse("2018-03-04T05:06:07.000Z"), Timestamps.parse("2018-03-04T05:06:07"));
+  }
+
+  @Test
+  public void testFormatsMicroseconds() throws Exception {
+    assertEquals("2018-03-04T05:06:07.123000Z", Timestamps.format(millisFormat().parse("2018-03-04T05:06:07.123Z")));
+    assertEquals("1969-12-31T23:59:59.999000Z", Timestamps.format(new Date(-1)));
+  }
+
+  @Test
+  public void testRoundTrips() throws Exception {
+    SimpleDateFormat format = millisFormat();
+    for (long time = -100_000_000_000L; time < 4_000_000_000_000L; time += 987_654_321_123L) {
+      Date date = new Date(time);
+      String formatted = Timestamps.format(date);
+      assertEquals(format.format(date), formatted.substring(0, 23) + "Z");
+      assertEquals(date, Timestamps.parse(formatted));
+    }
+    assertEquals(new Date(0), Timestamps.parse("1970-01-01T00:00:00.000000Z"));
+    assertEquals(millisFormat().parse("2020-02-29T12:00:00.000Z"), Timestamps.parse("2020-02-29T12:00:00.000000Z"));
+  }
+
+  @Test(expected = ParseException.class)
+  public void testRejectsTrailingText() throws Exception {
+    Timestamps.parse("2018-03-04T05:06:07.123456Z+01:00");
+  }
+
+  @Test(expected = ParseException.class)
+  public void testRejectsBadFields() throws Exception {
+    Timestamps.parse("2018-13-04T05:06:07.123456Z");
+  }
+}
@@ -0,0 +1,209 @@
+package com.tozny.e3db;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TracingTest {
+  private static class TestSpan implements Tracer.Span {
+    private final String name;
+    private final TestSpan parent;
+    private boolean ended;
+
+    private TestSpan(String name, TestSpan parent) {
+      this.name = name;
+      this.parent = parent;
+    }
+
+    @Override
+    public void setAttribute(String key, String value) {
+    }
+
+    @Override
+    public void setAttribute(String key, long value) {
+    }
+
+    @Override
+    public void setError(Throwable error) {
+    }
+
+    @Override
+    public void end() {
+      assertFalse(name + " ended twice", ended);
+      ended = true;
+    }
+  }
+
+  private static class TestTracer implements Tracer {
+    private final List<TestSpan> spans = new ArrayList<>();
+
+    @Override
+    public synchronized Span startSpan(String name, Span parent) {
+      TestSpan span = new TestSpan(name, (TestSpan) parent);
+      spans.add(span);
+      return span;
+    }
+  }
+
+  @Test
+  public void testNothingTracedWithoutTracer() {
+    Tracing span = Tracing.start(null, "read");
+    assertSame(Tracing.NONE, span);
+    Tracing previous = span.activate();
+    assertSame(Tracing.NONE, Tracing.startChild("callback"));
+    Tracing.restore(previous);
+    assertSame(Tracing.NONE, Tracing.current());
+  }
+
+  @Test
+  public void testChildrenOfActiveSpan() {
+    TestTracer tracer = new TestTracer();
+    Tracing span = Tracing.start(tracer, "read");
+    Tracing previous = span.activate();
+    try {
+      Tracing.startChild("decryptObject").end();
+      // An operation started while another is active joins its trace.
+      Tracing.start(tracer, "write").end();
+    } finally {
+      Tracing.restore(previous);
+      span.end();
+    }
+
+    assertSame(Tracing.NONE, Tracing.current());
+    assertEquals(3, tracer.spans.size());
+    TestSpan read = tracer.spans.get(0);
+    assertNull(read.parent);
+    assertSame(read, tracer.spans.get(1).parent);
+    assertSame(read, tracer.spans.get(2).parent);
+    for (TestSpan s : tracer.spans)
+      assertEquals(true, s.ended);
+  }
+
+  @Test
+  public void testPropagateAcrossThreads() throws Exception {
+    TestTracer tracer = new TestTracer();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Tracing span = Tracing.start(tracer, "writeAll");
+      Tracing previous = span.activate();
+      try {
+        executor.submit(Tracing.propagate(new Runnable() {
+          @Override
+          public void run() {
+            Tracing.startChild("encryptObject").end();
+          }
+        })).get();
+        // Not propagated, so not part of the trace.
+        executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            Tracing.startChild("encryptObject").end();
+          }
+        }).get();
+      } finally {
+        Tracing.restore(previous);
+        span.end();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(2, tracer.spans.size());
+    assertEquals("encryptObject", tracer.spans.get(1).name);
+    assertSame(tracer.spans.get(0), tracer.spans.get(1).parent);
+  }
+
+  @Test
+  public void testHoldDelaysEnd() {
+    TestTracer tracer = new TestTracer();
+    Tracing span = Tracing.start(tracer, "read");
+    Tracing held = span.hold();
+    assertSame(span, held);
+    span.end();
+    assertFalse(tracer.spans.get(0).ended);
+    held.end();
+    assertTrue(tracer.spans.get(0).ended);
+
+    // Once ended, a span can't be held again.
+    assertSame(Tracing.NONE, span.hold());
+    assertSame(Tracing.NONE, Tracing.NONE.hold());
+  }
+
+  @Test
+  public void testInterceptorOfEnqueuedCall() throws Exception {
+    final TestTracer tracer = new TestTracer();
+    MockWebServer server = new MockWebServer();
+    server.enqueue(new MockResponse().setBody("ok"));
+    server.start();
+    try {
+      OkHttpClient client = new OkHttpClient.Builder()
+          .eventListenerFactory(HttpEventListener.factory(null))
+          .addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+              HttpEventListener.startChild(chain.call(), "signRequest").end();
+              return chain.proceed(chain.request());
+            }
+          })
+          .build();
+
+      final CountDownLatch done = new CountDownLatch(1);
+      Tracing span = Tracing.start(tracer, "writeAll");
+      Tracing previous = span.activate();
+      try {
+        client.newCall(new Request.Builder().url(server.url("/")).build()).enqueue(new Callback() {
+          @Override
+          public void onFailure(Call call, IOException e) {
+            done.countDown();
+          }
+
+          @Override
+          public void onResponse(Call call, Response response) {
+            response.close();
+            done.countDown();
+          }
+        });
+      } finally {
+        Tracing.restore(previous);
+        span.end();
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+    } finally {
+      server.shutdown();
+    }
+
+    // The interceptor ran on one of OkHttp's threads, with no span active.
+    synchronized (tracer) {
+      TestSpan http = null;
+      TestSpan sign = null;
+      for (TestSpan s : tracer.spans) {
+        if (s.name.startsWith("http "))
+          http = s;
+        else if (s.name.equals("signRequest"))
+          sign = s;
+      }
+      assertSame(tracer.spans.get(0), http.parent);
+      assertSame(http, sign.parent);
+    }
+  }
+}